@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.backup.hbase1_2_1;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.DifferentialTableBackupClient;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.FullTableBackupClient;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.IncrementalTableBackupClient;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.TableBackupClient;
@@ -45,7 +46,9 @@ public class BackupClientFactory {
         }
 
         BackupType type = request.getBackupType();
-        if (type == BackupType.FULL) {
+        if (type == BackupType.FULL && request.isDifferential()) {
+            return new DifferentialTableBackupClient(conn, backupId, request);
+        } else if (type == BackupType.FULL) {
             return new FullTableBackupClient(conn, backupId, request);
         } else {
             return new IncrementalTableBackupClient(conn, backupId, request);
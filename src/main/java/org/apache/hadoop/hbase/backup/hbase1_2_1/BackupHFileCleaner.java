@@ -23,7 +23,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.Abortable;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.TableName;
@@ -44,6 +43,10 @@ import java.util.*;
 @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.CONFIG)
 public class BackupHFileCleaner extends BaseHFileCleanerDelegate implements Abortable {
     private static final Log LOG = LogFactory.getLog(BackupHFileCleaner.class);
+    // records written by a region server are read again for this long after a read, a write
+    // stamped before the read may become visible after it
+    private static final long REFRESH_OVERLAP_MS = 60000;
+
     private boolean stopped = false;
     private boolean aborted;
     private Configuration conf;
@@ -52,35 +55,77 @@ public class BackupHFileCleaner extends BaseHFileCleanerDelegate implements Abor
             secondPrevReadFromBackupTbl = 0; // timestamp of 2nd most recent read from backup:system table
     //used by unit test to skip reading backup:system
     private boolean checkForFullyBackedUpTables = true;
-    private List<TableName> fullyBackedUpTables = null;
+    private final Set<TableName> fullyBackedUpTables = new HashSet<>();
+    // sorted names of the bulk loaded hfiles of every table
+    private final Map<TableName, String[]> hfileRefs = new HashMap<>();
+    // start time of the last read and of the last read of all the records, -1 if none
+    private long lastRefresh = -1;
+    private long lastFullRefresh = -1;
 
-    private Set<String> getFilenameFromBulkLoad(Map<byte[], List<Path>>[] maps) {
-        Set<String> filenames = new HashSet<>();
-        for (Map<byte[], List<Path>> map : maps) {
-            if (map == null) {
-                continue;
-            }
+    /**
+     * Read the records written since the previous read into the cached references, or all the
+     * records once per {@link BackupRestoreConstants#BACKUP_HFILE_CLEANER_FULL_REFRESH_MS_KEY}
+     */
+    private void refreshHFileRefs() throws IOException {
+        if (connection == null) {
+            connection = ConnectionFactory.createConnection(conf);
+        }
+        long start = EnvironmentEdgeManager.currentTime();
+        long fullRefreshPeriod = conf.getLong(
+                BackupRestoreConstants.BACKUP_HFILE_CLEANER_FULL_REFRESH_MS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_HFILE_CLEANER_FULL_REFRESH_MS);
+        boolean full = lastFullRefresh < 0 || start - lastFullRefresh >= fullRefreshPeriod;
+        long minTimestamp = full ? 0 : Math.max(0, lastRefresh - REFRESH_OVERLAP_MS);
 
-            for (List<Path> paths : map.values()) {
-                for (Path p : paths) {
-                    filenames.add(p.getName());
-                }
+        List<TableName> tables = null;
+        Map<TableName, Set<String>> names;
+        try (BackupSystemTable tbl = new BackupSystemTable(connection)) {
+            if (checkForFullyBackedUpTables) {
+                tables = tbl.getTablesForBackupType(BackupType.FULL, minTimestamp);
             }
+            names = tbl.readBulkLoadedFileNames(minTimestamp);
+        }
+        if (full) {
+            fullyBackedUpTables.clear();
+            hfileRefs.clear();
+        }
+        if (tables != null) {
+            fullyBackedUpTables.addAll(tables);
+        }
+        int added = 0;
+        for (Map.Entry<TableName, Set<String>> entry : names.entrySet()) {
+            String[] refs = hfileRefs.get(entry.getKey());
+            if (refs != null) {
+                entry.getValue().addAll(Arrays.asList(refs));
+            }
+            String[] merged = entry.getValue().toArray(new String[entry.getValue().size()]);
+            Arrays.sort(merged);
+            added += merged.length - (refs == null ? 0 : refs.length);
+            hfileRefs.put(entry.getKey(), merged);
+        }
+        lastRefresh = start;
+        if (full) {
+            lastFullRefresh = start;
+        }
+        secondPrevReadFromBackupTbl = prevReadFromBackupTbl;
+        prevReadFromBackupTbl = EnvironmentEdgeManager.currentTime();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug((full ? "Loaded " : "Refreshed ") + added + " hfile references in "
+                    + (prevReadFromBackupTbl - start) + " ms");
         }
-        return filenames;
     }
 
-    private Set<String> loadHFileRefs(List<TableName> tableList) throws IOException {
-        if (connection == null) {
-            connection = ConnectionFactory.createConnection(conf);
-        }
-        try (BackupSystemTable tbl = new BackupSystemTable(connection)) {
-            Map<byte[], List<Path>>[] res =
-                    tbl.readBulkLoadedFiles(null, tableList);
-            secondPrevReadFromBackupTbl = prevReadFromBackupTbl;
-            prevReadFromBackupTbl = EnvironmentEdgeManager.currentTime();
-            return getFilenameFromBulkLoad(res);
+    private boolean isReferenced(String hfile) {
+        // without the check of the fully backed up tables, the references of all tables count
+        Collection<TableName> tables =
+                checkForFullyBackedUpTables ? fullyBackedUpTables : hfileRefs.keySet();
+        for (TableName table : tables) {
+            String[] refs = hfileRefs.get(table);
+            if (refs != null && Arrays.binarySearch(refs, hfile) >= 0) {
+                return true;
+            }
         }
+        return false;
     }
 
     @VisibleForTesting
@@ -93,24 +138,13 @@ public class BackupHFileCleaner extends BaseHFileCleanerDelegate implements Abor
         if (conf == null) {
             return files;
         }
-        // obtain the Set of TableName's which have been fully backed up
-        // so that we filter BulkLoad to be returned from server
-        if (checkForFullyBackedUpTables) {
-            if (connection == null) {
-                return files;
-            }
-
-            try (BackupSystemTable tbl = new BackupSystemTable(connection)) {
-                fullyBackedUpTables = tbl.getTablesForBackupType(BackupType.FULL);
-            } catch (IOException ioe) {
-                LOG.error("Failed to get tables which have been fully backed up, skipping checking", ioe);
-                return Collections.emptyList();
-            }
-            Collections.sort(fullyBackedUpTables);
+        // the fully backed up tables are read with the references, so that only their bulk loads
+        // are kept
+        if (checkForFullyBackedUpTables && connection == null) {
+            return files;
         }
-        final Set<String> hfileRefs;
         try {
-            hfileRefs = loadHFileRefs(fullyBackedUpTables);
+            refreshHFileRefs();
         } catch (IOException ioe) {
             LOG.error("Failed to read hfile references, skipping checking deletable files", ioe);
             return Collections.emptyList();
@@ -121,7 +155,7 @@ public class BackupHFileCleaner extends BaseHFileCleanerDelegate implements Abor
                 return false;
             }
             String hfile = file.getPath().getName();
-            boolean foundHFileRef = hfileRefs.contains(hfile);
+            boolean foundHFileRef = isReferenced(hfile);
             return !foundHFileRef;
         });
         return deletables;
@@ -137,6 +171,8 @@ public class BackupHFileCleaner extends BaseHFileCleanerDelegate implements Abor
     public void setConf(Configuration config) {
         this.conf = config;
         this.connection = null;
+        // the cached references may come from another cluster
+        this.lastFullRefresh = -1;
         try {
             this.connection = ConnectionFactory.createConnection(conf);
         } catch (IOException ioe) {
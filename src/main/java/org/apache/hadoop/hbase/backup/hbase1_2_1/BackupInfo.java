@@ -285,6 +285,19 @@ public class BackupInfo implements Comparable<BackupInfo> {
         return this.backupTableInfoMap.get(table).getSnapshotName();
     }
 
+    public void setSnapshotLatency(TableName table, long latency) {
+        this.backupTableInfoMap.get(table).setSnapshotLatency(latency);
+    }
+
+    /**
+     * Get the time it took to snapshot the table during this backup session
+     * @param table table
+     * @return snapshot latency in ms, -1 if unknown
+     */
+    public long getSnapshotLatency(TableName table) {
+        return this.backupTableInfoMap.get(table).getSnapshotLatency();
+    }
+
     public List<String> getSnapshotNames() {
         List<String> snapshotNames = new ArrayList<>();
         for (BackupTableInfo backupStatus : this.backupTableInfoMap.values()) {
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.backup.hbase1_2_1;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -26,19 +27,30 @@ import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManager;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.master.cleaner.BaseLogCleanerDelegate;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceStability;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of a log cleaner that checks if a log is still scheduled for
  * incremental backup before deleting it when its TTL is over.
+ * <p>
+ * The cleaner keeps its connection to the backup system table between two runs of the cleaner
+ * chore and checks the files in batches. The names of the WAL files found deletable are kept
+ * for {@link BackupRestoreConstants#BACKUP_LOG_CLEANER_CACHE_TTL_MS_KEY}, another cleaner of the
+ * chain may keep them for a while: a backed up WAL file stays backed up.
  */
 @InterfaceStability.Evolving
 @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.CONFIG)
@@ -46,6 +58,14 @@ public class BackupLogCleaner extends BaseLogCleanerDelegate {
     private static final Log LOG = LogFactory.getLog(BackupLogCleaner.class);
 
     private boolean stopped = false;
+    private Connection conn;
+    private BackupSystemTable table;
+    // WAL file name -> time it was found deletable
+    private final Map<String, Long> deletableCache = new ConcurrentHashMap<>();
+
+    private final AtomicLong filesChecked = new AtomicLong();
+    private final AtomicLong filesDeletable = new AtomicLong();
+    private final AtomicLong timeSpentMs = new AtomicLong();
 
     public BackupLogCleaner() {
     }
@@ -62,41 +82,145 @@ public class BackupLogCleaner extends BaseLogCleanerDelegate {
             return files;
         }
 
+        long start = EnvironmentEdgeManager.currentTime();
         List<FileStatus> list = new ArrayList<>();
-        // TODO: LogCleaners do not have a way to get the Connection from Master. We should find a
-        // way to pass it down here, so that this connection is not re-created every time.
-        // It is expensive
-        try (final Connection conn = ConnectionFactory.createConnection(getConf());
-             final BackupSystemTable table = new BackupSystemTable(conn)) {
+        int checked = 0;
+        try {
+            BackupSystemTable table = getBackupSystemTable();
             // If we do not have recorded backup sessions
             if (!table.hasBackupSessions()) {
                 LOG.debug("BackupLogCleaner has no backup sessions");
-                return files;
+                for (FileStatus file : files) {
+                    list.add(file);
+                }
+                checked = list.size();
+                return list;
             }
 
+            long ttl = getConf().getLong(BackupRestoreConstants.BACKUP_LOG_CLEANER_CACHE_TTL_MS_KEY,
+                    BackupRestoreConstants.DEFAULT_BACKUP_LOG_CLEANER_CACHE_TTL_MS);
+            evictExpired(start - ttl);
+            List<FileStatus> toCheck = new ArrayList<>();
             for (FileStatus file : files) {
-                String wal = file.getPath().toString();
-                boolean logInSystemTable = table.isWALFileDeletable(wal);
-                if (LOG.isDebugEnabled()) {
-                    if (logInSystemTable) {
-                        LOG.debug("Found log file in hbase:backup, deleting: " + wal);
+                checked++;
+                String name = BackupUtils.getUniqueWALFileNamePart(file.getPath());
+                if (deletableCache.containsKey(name)) {
+                    list.add(file);
+                } else {
+                    toCheck.add(file);
+                }
+            }
+
+            if (!toCheck.isEmpty()) {
+                Map<FileStatus, Boolean> deletable = table.areWALFilesDeletable(toCheck);
+                for (FileStatus file : toCheck) {
+                    String wal = file.getPath().toString();
+                    if (Boolean.TRUE.equals(deletable.get(file))) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Found log file in hbase:backup, deleting: " + wal);
+                        }
                         list.add(file);
-                    } else {
+                        if (ttl > 0) {
+                            deletableCache.put(BackupUtils.getUniqueWALFileNamePart(file.getPath()),
+                                    start);
+                        }
+                    } else if (LOG.isDebugEnabled()) {
                         LOG.debug("Didn't find this log in hbase:backup, keeping: " + wal);
                     }
                 }
             }
+            if (!list.isEmpty() && getConf().getBoolean(
+                    BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY,
+                    BackupRestoreConstants.DEFAULT_BACKUP_WAL_CATALOG_ENABLED)) {
+                // deleted WALs are of no use to later backups
+                List<String> wals = new ArrayList<>(list.size());
+                for (FileStatus file : list) {
+                    wals.add(file.getPath().toString());
+                }
+                table.deleteWALCatalogEntries(wals);
+            }
             return list;
         } catch (IOException e) {
             LOG.error("Failed to get hbase:backup table, therefore will keep all files", e);
+            list.clear();
             // nothing to delete
             return Collections.emptyList();
+        } finally {
+            long spent = EnvironmentEdgeManager.currentTime() - start;
+            filesChecked.addAndGet(checked);
+            filesDeletable.addAndGet(list.size());
+            timeSpentMs.addAndGet(spent);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("BackupLogCleaner checked " + checked + " files, " + list.size()
+                        + " deletable, in " + spent + " ms (totals: " + filesChecked.get()
+                        + " checked, " + filesDeletable.get() + " deletable, " + timeSpentMs.get()
+                        + " ms)");
+            }
         }
     }
 
+    private BackupSystemTable getBackupSystemTable() throws IOException {
+        if (conn == null || conn.isClosed() || conn.isAborted()) {
+            closeConnection();
+            conn = ConnectionFactory.createConnection(getConf());
+            table = new BackupSystemTable(conn);
+        }
+        return table;
+    }
+
+    private void closeConnection() {
+        table = null;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (IOException ioe) {
+                LOG.debug("Got " + ioe + " when closing connection");
+            }
+            conn = null;
+        }
+    }
+
+    private void evictExpired(long oldest) {
+        Iterator<Map.Entry<String, Long>> it = deletableCache.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() < oldest) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return number of files checked since the cleaner started
+     */
+    public long getFilesCheckedCount() {
+        return filesChecked.get();
+    }
+
+    /**
+     * @return number of files found deletable since the cleaner started
+     */
+    public long getFilesDeletableCount() {
+        return filesDeletable.get();
+    }
+
+    /**
+     * @return time spent checking files since the cleaner started, in milliseconds
+     */
+    public long getTimeSpentMs() {
+        return timeSpentMs.get();
+    }
+
+    @VisibleForTesting
+    int getDeletableCacheSize() {
+        return deletableCache.size();
+    }
+
     @Override
     public void setConf(Configuration config) {
         super.setConf(config);
+        // a new configuration may point to another cluster
+        closeConnection();
+        deletableCache.clear();
         // If backup is disabled, keep all members null
         if (!config.getBoolean(HConstants.BACKUP_ENABLE_KEY, HConstants.BACKUP_ENABLE_DEFAULT)) {
             LOG.warn("Backup is disabled - allowing all wals to be deleted");
@@ -110,6 +234,7 @@ public class BackupLogCleaner extends BaseLogCleanerDelegate {
             return;
         }
         this.stopped = true;
+        closeConnection();
         LOG.info("Stopping BackupLogCleaner");
     }
 
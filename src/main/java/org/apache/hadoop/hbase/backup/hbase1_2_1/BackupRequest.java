@@ -72,6 +72,11 @@ public final class BackupRequest {
       return this;
     }
 
+    public Builder withDifferential(boolean differential) {
+      request.setDifferential(differential);
+      return this;
+    }
+
     public BackupRequest build() {
       return request;
     }
@@ -85,6 +90,7 @@ public final class BackupRequest {
   private long bandwidth = -1L;
   private String backupSetName;
   private String yarnPoolName;
+  private boolean differential = false;
 
   private BackupRequest() {
   }
@@ -150,4 +156,18 @@ public final class BackupRequest {
   public void setYarnPoolName(String yarnPoolName) {
     this.yarnPoolName = yarnPoolName;
   }
+
+  /**
+   * A differential backup is a full backup which only copies the store files added since the
+   * previous full backup of the table, the other ones are kept by the previous image.
+   * @return true for a differential full backup
+   */
+  public boolean isDifferential() {
+    return differential;
+  }
+
+  private BackupRequest setDifferential(boolean differential) {
+    this.differential = differential;
+    return this;
+  }
 }
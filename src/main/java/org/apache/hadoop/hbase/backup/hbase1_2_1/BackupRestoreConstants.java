@@ -45,6 +45,170 @@ public interface BackupRestoreConstants {
   String BACKUP_ATTEMPTS_PAUSE_MS_KEY = "hbase.backup.attempts.pause.ms";
   int DEFAULT_BACKUP_ATTEMPTS_PAUSE_MS = 10000;
 
+  /*
+   * Maximum number of snapshot export jobs running at the same time during a full backup.
+   * The default (1) exports the table snapshots one after another.
+   */
+  String BACKUP_EXPORT_MAX_CONCURRENCY_KEY = "hbase.backup.export.concurrency.max";
+  int DEFAULT_BACKUP_EXPORT_MAX_CONCURRENCY = 1;
+
+  /*
+   * Maximum number of table snapshots taken at the same time during a full backup.
+   */
+  String BACKUP_SNAPSHOT_MAX_CONCURRENCY_KEY = "hbase.backup.snapshot.concurrency.max";
+  int DEFAULT_BACKUP_SNAPSHOT_MAX_CONCURRENCY = 10;
+
+  /*
+   * Full backups only copy the store files which are not already stored under the backup root
+   * by a previous full backup.
+   */
+  String BACKUP_FULL_DEDUP_ENABLED_KEY = "hbase.backup.full.dedup.enabled";
+  boolean DEFAULT_BACKUP_FULL_DEDUP_ENABLED = false;
+
+  /*
+   * Previous full backup of the table a differential full backup is based on, set on the
+   * snapshot export job by the differential backup client.
+   */
+  String BACKUP_FULL_DIFFERENTIAL_BASE_KEY = "hbase.backup.full.differential.base";
+
+  /*
+   * Region servers record their WAL files in the backup system table, incremental backups look
+   * them up there instead of listing the WAL directories. Must be set on the master and all the
+   * region servers.
+   */
+  String BACKUP_WAL_CATALOG_ENABLED_KEY = "hbase.backup.wal.catalog.enabled";
+  boolean DEFAULT_BACKUP_WAL_CATALOG_ENABLED = false;
+
+  String BACKUP_WAL_CATALOG_FLUSH_INTERVAL_MS_KEY = "hbase.backup.wal.catalog.flush.interval.ms";
+  long DEFAULT_BACKUP_WAL_CATALOG_FLUSH_INTERVAL_MS = 30000;
+
+  /*
+   * Maximum time a region server waits at startup for its first WAL file to be recorded in the
+   * WAL catalog, the recording goes on in background past it.
+   */
+  String BACKUP_WAL_CATALOG_START_TIMEOUT_MS_KEY = "hbase.backup.wal.catalog.start.timeout.ms";
+  long DEFAULT_BACKUP_WAL_CATALOG_START_TIMEOUT_MS = 10000;
+
+  /*
+   * Incremental backups whose WAL files do not exceed this size are converted to HFiles inside the
+   * backup client instead of a WALPlayer MapReduce job, 0 to always run the job.
+   */
+  String BACKUP_INCREMENTAL_LOCAL_MAX_BYTES_KEY = "hbase.backup.incremental.local.max.bytes";
+  long DEFAULT_BACKUP_INCREMENTAL_LOCAL_MAX_BYTES = 0;
+
+  /*
+   * Region servers whose current WAL file is empty or younger than this age skip the log roll of
+   * a backup and report the last WAL file they closed instead, 0 to always roll.
+   */
+  String BACKUP_LOG_ROLL_MAX_AGE_MS_KEY = "hbase.backup.logroll.max.age.ms";
+  long DEFAULT_BACKUP_LOG_ROLL_MAX_AGE_MS = 0;
+
+  /*
+   * Backups only roll the WALs of the region servers hosting their tables, the other region
+   * servers report the last WAL file they closed.
+   */
+  String BACKUP_LOG_ROLL_TARGETED_KEY = "hbase.backup.logroll.targeted";
+  boolean DEFAULT_BACKUP_LOG_ROLL_TARGETED = true;
+
+  /*
+   * Region servers return their log roll result to the master, which writes the results of all
+   * of them in one batch.
+   */
+  String BACKUP_LOG_ROLL_BATCH_RESULTS_KEY = "hbase.backup.logroll.batch.results";
+  boolean DEFAULT_BACKUP_LOG_ROLL_BATCH_RESULTS = false;
+
+  /*
+   * Time the WAL cleaner remembers the WAL files it found backed up, without looking them up in
+   * the backup system table again, 0 to look them up on every run.
+   */
+  String BACKUP_LOG_CLEANER_CACHE_TTL_MS_KEY = "hbase.backup.logcleaner.cache.ttl.ms";
+  long DEFAULT_BACKUP_LOG_CLEANER_CACHE_TTL_MS = 600000;
+
+  /*
+   * The hfile cleaner reads the bulk load records written since its previous read only, and all
+   * of them once per period, which also forgets the records deleted since.
+   */
+  String BACKUP_HFILE_CLEANER_FULL_REFRESH_MS_KEY = "hbase.backup.hfile.cleaner.full.refresh.ms";
+  long DEFAULT_BACKUP_HFILE_CLEANER_FULL_REFRESH_MS = 3600000;
+
+  /*
+   * Continuous backup: delay between two conversions of the WAL files closed since the last
+   * backup, and maximum number of WAL files converted per mini-increment
+   */
+  String BACKUP_CONTINUOUS_INTERVAL_MS_KEY = "hbase.backup.continuous.interval.ms";
+  long DEFAULT_BACKUP_CONTINUOUS_INTERVAL_MS = 60000;
+
+  String BACKUP_CONTINUOUS_BATCH_MAX_FILES_KEY = "hbase.backup.continuous.batch.max.files";
+  int DEFAULT_BACKUP_CONTINUOUS_BATCH_MAX_FILES = 16;
+
+  /*
+   * Compression, data block encoding and block size of the HFiles written by incremental backups
+   * and merges, the live table family settings by default. Suffixed by ".<table>;<family>" the
+   * setting only applies to a single column family, e.g.
+   * hbase.backup.hfile.compression.ns:t1;f1=gz
+   */
+  String BACKUP_HFILE_COMPRESSION_KEY = "hbase.backup.hfile.compression";
+  String BACKUP_HFILE_DATABLOCK_ENCODING_KEY = "hbase.backup.hfile.datablock.encoding";
+  String BACKUP_HFILE_BLOCKSIZE_KEY = "hbase.backup.hfile.blocksize";
+
+  /*
+   * Restore keeps the HFile settings recorded in the backup instead of re-encoding the data with
+   * the settings of the live table.
+   */
+  String BACKUP_RESTORE_KEEP_HFILE_SETTINGS_KEY = "hbase.backup.restore.keep.hfile.settings";
+  boolean DEFAULT_BACKUP_RESTORE_KEEP_HFILE_SETTINGS = false;
+
+  /*
+   * A full restore into a new table split at the boundaries of the backed up store files bulk
+   * loads a copy of the store files as they are, instead of rewriting them with the HFile
+   * splitter job. Store file copies run on a pool of the given size.
+   */
+  String BACKUP_RESTORE_DIRECT_BULKLOAD_KEY = "hbase.backup.restore.direct.bulkload";
+  boolean DEFAULT_BACKUP_RESTORE_DIRECT_BULKLOAD = true;
+
+  String BACKUP_RESTORE_DIRECT_COPY_THREADS_KEY = "hbase.backup.restore.direct.copy.threads";
+  int DEFAULT_BACKUP_RESTORE_DIRECT_COPY_THREADS = 8;
+
+  /*
+   * Number of threads reading the first and last rows of the store files of a full image, to
+   * split a restored table when the backup did not record the region boundaries of the table,
+   * and of the HFiles of the incremental images merged by a chain merge restore.
+   */
+  String BACKUP_RESTORE_BOUNDARY_THREADS_KEY = "hbase.backup.restore.boundary.threads";
+  int DEFAULT_BACKUP_RESTORE_BOUNDARY_THREADS = 16;
+
+  /*
+   * An incremental restore merges the HFiles of all the incremental images region by region in a
+   * single map only job, keeping a cell once and only the versions the families keep, instead of
+   * shuffling every cell of every image through the HFile splitter job.
+   */
+  String BACKUP_RESTORE_CHAIN_MERGE_KEY = "hbase.backup.restore.chain.merge";
+  boolean DEFAULT_BACKUP_RESTORE_CHAIN_MERGE = false;
+
+  /*
+   * A full restore into a new table clones the snapshot exported with the image: the restored
+   * table links to the store files, only the ones missing from the cluster are copied. Fits a
+   * backup root sharing its file system with hbase.rootdir. The snapshot and the missing store
+   * files are written in hbase.rootdir by the restoring user: a user without write access there
+   * falls back to the HFile splitter job.
+   */
+  String BACKUP_RESTORE_SNAPSHOT_CLONE_KEY = "hbase.backup.restore.snapshot.clone";
+  boolean DEFAULT_BACKUP_RESTORE_SNAPSHOT_CLONE = false;
+
+  /*
+   * Maximum number of tables restored at the same time. The default (1) restores the tables one
+   * after another.
+   */
+  String BACKUP_RESTORE_MAX_CONCURRENCY_KEY = "hbase.backup.restore.concurrency.max";
+  int DEFAULT_BACKUP_RESTORE_MAX_CONCURRENCY = 1;
+
+  /*
+   * A failed table restore does not stop the restore of the other tables, the restore fails
+   * once all of them are done. By default no table is started after the first failure.
+   */
+  String BACKUP_RESTORE_CONTINUE_ON_FAILURE_KEY = "hbase.backup.restore.continue.on.failure";
+  boolean DEFAULT_BACKUP_RESTORE_CONTINUE_ON_FAILURE = false;
+
   /*
    *  Drivers option list
    */
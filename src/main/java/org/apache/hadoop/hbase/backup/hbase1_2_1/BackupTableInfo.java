@@ -38,6 +38,12 @@ public class BackupTableInfo  {
    */
   private String snapshotName = null;
 
+  /*
+   *  Time taken to snapshot the table, in ms. Not part of the protobuf message, the backup system
+   *  table stores it next to the backup info
+   */
+  private long snapshotLatency = -1;
+
   public BackupTableInfo() {
   }
 
@@ -53,6 +59,14 @@ public class BackupTableInfo  {
     this.snapshotName = snapshotName;
   }
 
+  public long getSnapshotLatency() {
+    return snapshotLatency;
+  }
+
+  public void setSnapshotLatency(long snapshotLatency) {
+    this.snapshotLatency = snapshotLatency;
+  }
+
   public TableName getTable() {
     return table;
   }
@@ -27,6 +27,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.*;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupState;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileIndex;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupSet;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
 import org.apache.hadoop.hbase.client.Admin;
@@ -214,6 +215,9 @@ public class BackupAdminImpl implements BackupAdmin {
         int totalDeleted = 0;
         if (backupInfo != null) {
             LOG.info("Deleting backup " + backupInfo.getBackupId() + " ...");
+            // Step 0: hand over the store files later full backups share with this one
+            BackupHFileIndex.releaseBackup(conn.getConfiguration(), backupInfo,
+                    sysTable.getBackupHistory(backupInfo.getBackupRootDir()));
             // Step 1: clean up data for backup session (idempotent)
             BackupUtils.cleanupBackupData(backupInfo, conn.getConfiguration());
             // List of tables in this backup;
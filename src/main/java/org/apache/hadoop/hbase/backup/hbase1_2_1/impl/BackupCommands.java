@@ -77,8 +77,12 @@ public final class BackupCommands {
             "Usage: hbase backup create <type> <backup_path> [options]\n"
                     + "  type           \"full\" to create a full backup image\n"
                     + "                 \"incremental\" to create an incremental backup image\n"
+                    + "                 \"differential\" to create a full backup image copying only the\n"
+                    + "                 store files added since the previous full backup\n"
                     + "  backup_path     Full path to store the backup image\n";
 
+    public static final String DIFFERENTIAL = "differential";
+
     public static final String PROGRESS_CMD_USAGE = "Usage: hbase backup progress <backup_id>\n"
             + "  backup_id       Backup image id (optional). If no id specified, the command will show\n"
             + "                  progress for currently running backup session.";
@@ -266,8 +270,9 @@ public final class BackupCommands {
                 throw new IOException(INCORRECT_USAGE);
             }
 
+            boolean differential = DIFFERENTIAL.equalsIgnoreCase(args[1]);
             if (!BackupType.FULL.toString().equalsIgnoreCase(args[1])
-                    && !BackupType.INCREMENTAL.toString().equalsIgnoreCase(args[1])) {
+                    && !BackupType.INCREMENTAL.toString().equalsIgnoreCase(args[1]) && !differential) {
                 System.out.println("ERROR: invalid backup type: " + args[1]);
                 printUsage();
                 throw new IOException(INCORRECT_USAGE);
@@ -326,7 +331,9 @@ public final class BackupCommands {
                 BackupRequest.Builder builder = new BackupRequest.Builder();
                 BackupRequest request =
                         builder
-                                .withBackupType(BackupType.valueOf(args[1].toUpperCase()))
+                                .withBackupType(differential ? BackupType.FULL
+                                        : BackupType.valueOf(args[1].toUpperCase()))
+                                .withDifferential(differential)
                                 .withTableList(
                                         tables != null ? Lists.newArrayList(BackupUtils.parseTableNames(tables)) : null)
                                 .withTargetRootDir(targetBackupDir).withTotalTasks(workers)
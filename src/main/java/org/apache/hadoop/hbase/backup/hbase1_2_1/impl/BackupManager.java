@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.backup.hbase1_2_1.impl;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HConstants;
@@ -60,6 +61,8 @@ public class BackupManager implements Closeable {
     protected BackupInfo backupInfo = null;
     protected BackupSystemTable systemTable;
     protected final Connection conn;
+    // master server name and master time when the log roll of the current backup started
+    protected Pair<String, Long> logRollBoundary;
 
     /**
      * Backup manager constructor.
@@ -441,9 +444,62 @@ public class BackupManager implements Closeable {
      * @throws IOException exception
      */
     public HashMap<String, Long> readRegionServerLastLogRollResult() throws IOException {
+        // the boundary of the roll this backup just ran, recorded with the backup on success
+        logRollBoundary = systemTable.readLogRollBoundary(backupInfo.getBackupRootDir());
         return systemTable.readRegionServerLastLogRollResult(backupInfo.getBackupRootDir());
     }
 
+    /**
+     * Get the log roll boundary of the last successful backup of tables
+     * @param tables tables
+     * @return master server name and master time when the roll of the backup started, null if
+     * unknown
+     * @throws IOException exception
+     */
+    public Pair<String, Long> readTableLogRollBoundary(Set<TableName> tables) throws IOException {
+        return systemTable.readTableLogRollBoundary(tables, backupInfo.getBackupRootDir());
+    }
+
+    /**
+     * Get the properties of the log roll procedure of the current backup
+     * @param targetTables tables whose region servers are rolled, null for all the region servers
+     * @return procedure properties
+     */
+    public Map<String, String> getLogRollProcedureProps(Collection<TableName> targetTables) {
+        Map<String, String> props = new HashMap<>();
+        props.put(LogRollMasterProcedureManager.ROLLLOG_BACKUP_ROOT_PROP,
+                backupInfo.getBackupRootDir());
+        // servers which rolled their WAL recently report it instead of rolling again
+        props.put(LogRollMasterProcedureManager.ROLLLOG_MAX_AGE_MS_PROP,
+                String.valueOf(conf.getLong(BackupRestoreConstants.BACKUP_LOG_ROLL_MAX_AGE_MS_KEY,
+                        BackupRestoreConstants.DEFAULT_BACKUP_LOG_ROLL_MAX_AGE_MS)));
+        // the master writes the roll results of all the servers at once
+        boolean batchResults = conf.getBoolean(BackupRestoreConstants.BACKUP_LOG_ROLL_BATCH_RESULTS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_LOG_ROLL_BATCH_RESULTS);
+        props.put(LogRollMasterProcedureManager.ROLLLOG_BARRIER_RESULT_PROP,
+                String.valueOf(batchResults));
+        if (targetTables != null) {
+            props.put(LogRollMasterProcedureManager.ROLLLOG_TABLES_PROP,
+                    StringUtils.join(targetTables, ","));
+        }
+        return props;
+    }
+
+    /**
+     * Get the properties of the log roll procedure of the current backup, rolling only the region
+     * servers hosting regions of tables which did not move since the previous backup
+     * @param targetTables tables whose region servers are rolled
+     * @param since        log roll boundary of the previous backup of the tables
+     * @return procedure properties
+     */
+    public Map<String, String> getLogRollProcedureProps(Collection<TableName> targetTables,
+                                                        Pair<String, Long> since) {
+        Map<String, String> props = getLogRollProcedureProps(targetTables);
+        props.put(LogRollMasterProcedureManager.ROLLLOG_SINCE_MASTER_PROP, since.getFirst());
+        props.put(LogRollMasterProcedureManager.ROLLLOG_SINCE_PROP, String.valueOf(since.getSecond()));
+        return props;
+    }
+
     public Pair<Map<TableName, Map<String, Map<String, List<Pair<String, Boolean>>>>>, List<byte[]>>
     readBulkloadRows(List<TableName> tableList) throws IOException {
         return systemTable.readBulkloadRows(tableList);
@@ -476,6 +532,10 @@ public class BackupManager implements Closeable {
     public void writeRegionServerLogTimestamp(Set<TableName> tables,
                                               HashMap<String, Long> newTimestamps) throws IOException {
         systemTable.writeRegionServerLogTimestamp(tables, newTimestamps, backupInfo.getBackupRootDir());
+        if (logRollBoundary != null) {
+            systemTable.writeTableLogRollBoundary(tables, logRollBoundary,
+                    backupInfo.getBackupRootDir());
+        }
     }
 
     /**
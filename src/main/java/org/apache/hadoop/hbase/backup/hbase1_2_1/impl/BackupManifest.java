@@ -28,6 +28,8 @@ import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.HBackupFileSystem;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.protobuf.generated.BackupProtos;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupRegionBoundaries;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
 import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos;
@@ -368,6 +370,10 @@ public class BackupManifest {
     // backup image directory
     private String tableBackupDir = null;
     private BackupImage backupImage;
+    // settings of the HFiles written by the backup, stored next to the manifest
+    private BackupHFileSettings hfileSettings;
+    // region boundaries of the tables of a full backup, stored next to the manifest
+    private BackupRegionBoundaries regionBoundaries;
 
     /**
      * Construct manifest for a ongoing backup.
@@ -454,6 +460,9 @@ public class BackupManifest {
                         throw new BackupException(e);
                     }
                     this.backupImage = BackupImage.fromProto(proto);
+                    this.hfileSettings = BackupHFileSettings.load(fs, subFile.getPath().getParent());
+                    this.regionBoundaries =
+                            BackupRegionBoundaries.load(fs, subFile.getPath().getParent());
                     LOG.debug("Loaded manifest instance from manifest file: "
                             + BackupUtils.getPath(subFile.getPath()));
                     return;
@@ -495,6 +504,12 @@ public class BackupManifest {
         try (FSDataOutputStream out =
                      manifestFilePath.getFileSystem(conf).create(manifestFilePath, true)) {
             out.write(data);
+            if (hfileSettings != null) {
+                hfileSettings.store(manifestFilePath.getFileSystem(conf), manifestFilePath.getParent());
+            }
+            if (regionBoundaries != null) {
+                regionBoundaries.store(manifestFilePath.getFileSystem(conf), manifestFilePath.getParent());
+            }
         } catch (IOException e) {
             throw new BackupException(e.getMessage());
         }
@@ -502,6 +517,32 @@ public class BackupManifest {
         LOG.info("Manifest file stored to " + manifestFilePath);
     }
 
+    /**
+     * Get the compression, encoding and block size of the HFiles written by the backup.
+     *
+     * @return the settings, null if they were not recorded
+     */
+    public BackupHFileSettings getHFileSettings() {
+        return hfileSettings;
+    }
+
+    public void setHFileSettings(BackupHFileSettings hfileSettings) {
+        this.hfileSettings = hfileSettings;
+    }
+
+    /**
+     * Get the region boundaries of the tables of a full backup.
+     *
+     * @return the boundaries, null if they were not recorded
+     */
+    public BackupRegionBoundaries getRegionBoundaries() {
+        return regionBoundaries;
+    }
+
+    public void setRegionBoundaries(BackupRegionBoundaries regionBoundaries) {
+        this.regionBoundaries = regionBoundaries;
+    }
+
     /**
      * Get this backup image.
      *
@@ -56,12 +56,16 @@ import java.util.stream.Collectors;
  * <li>5. RS - WAL ts map rowkey="rslogts:"+backupRoot +server; value = last WAL timestamp</li>
  * <li>6. WALs recorded rowkey="wals:"+WAL unique file name;
  * value = backupId and full WAL file name</li>
+ * <li>7. WALs recorded by backup root rowkey="walsidx:"+backupRoot+server+WAL timestamp
+ * +WAL unique file name; value = backupId and full WAL file name</li>
+ * <li>8. Mini-increments of the continuous backup rowkey="mini:"+backupRoot+creation time;
+ * value = converted WAL files, tables and HFile directory</li>
  * </ul></p>
  */
 public final class BackupSystemTable implements Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(BackupSystemTable.class);
 
-    static class WALItem {
+    public static class WALItem {
         String backupId;
         String walFile;
         String backupRoot;
@@ -90,6 +94,45 @@ public final class BackupSystemTable implements Closeable {
         }
     }
 
+    /**
+     * WAL files converted to HFiles by the continuous backup, not yet sealed in an incremental
+     * backup image
+     */
+    public static class MiniIncrement {
+        long id;
+        List<String> walFiles;
+        List<TableName> tables;
+        String dir;
+
+        public MiniIncrement(long id, List<String> walFiles, List<TableName> tables, String dir) {
+            this.id = id;
+            this.walFiles = walFiles;
+            this.tables = tables;
+            this.dir = dir;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public List<String> getWalFiles() {
+            return walFiles;
+        }
+
+        public List<TableName> getTables() {
+            return tables;
+        }
+
+        public String getDir() {
+            return dir;
+        }
+
+        @Override
+        public String toString() {
+            return "mini-increment " + id + " " + dir + " (" + walFiles.size() + " WAL files)";
+        }
+    }
+
     /**
      * Backup system table (main) name
      */
@@ -118,6 +161,7 @@ public final class BackupSystemTable implements Closeable {
     private final Connection connection;
 
     private final static String BACKUP_INFO_PREFIX = "session:";
+    private final static String SNAPSHOT_LATENCY_COL_PREFIX = "snapshot.latency:";
     private final static String START_CODE_ROW = "startcode:";
     private final static byte[] ACTIVE_SESSION_ROW = "activesession:".getBytes();
     private final static byte[] ACTIVE_SESSION_COL = "c".getBytes();
@@ -128,6 +172,11 @@ public final class BackupSystemTable implements Closeable {
     private final static String INCR_BACKUP_SET = "incrbackupset:";
     private final static String TABLE_RS_LOG_MAP_PREFIX = "trslm:";
     private final static String RS_LOG_TS_PREFIX = "rslogts:";
+    private final static byte[] RS_LOG_TS_COL = Bytes.toBytes("rs-log-ts");
+    private final static String LOG_ROLL_BOUNDARY_PREFIX = "rollboundary:";
+    private final static String TABLE_LOG_ROLL_BOUNDARY_PREFIX = "trollboundary:";
+    private final static byte[] LOG_ROLL_MASTER_COL = Bytes.toBytes("master");
+    private final static byte[] LOG_ROLL_TS_COL = Bytes.toBytes("ts");
 
     private final static String BULK_LOAD_PREFIX = "bulk:";
     private final static byte[] BULK_LOAD_PREFIX_BYTES = BULK_LOAD_PREFIX.getBytes();
@@ -143,6 +192,16 @@ public final class BackupSystemTable implements Closeable {
     final static byte[] BL_COMMIT = Bytes.toBytes("D");
 
     private final static String WALS_PREFIX = "wals:";
+    private final static String WALS_INDEX_PREFIX = "walsidx:";
+    private final static byte[] WALS_INDEX_MIGRATED_ROW = Bytes.toBytes("walsidx_migrated");
+    private final static String WAL_CATALOG_PREFIX = "walcat:";
+    private final static String WAL_CATALOG_SINCE_PREFIX = "walcatsince:";
+    private final static byte[] WAL_CATALOG_FILE_COL = Bytes.toBytes("file");
+    private final static byte[] WAL_CATALOG_SINCE_COL = Bytes.toBytes("since");
+    private final static String MINI_INCREMENT_PREFIX = "mini:";
+    private final static byte[] MINI_INCREMENT_WALS_COL = Bytes.toBytes("wals");
+    private final static byte[] MINI_INCREMENT_TABLES_COL = Bytes.toBytes("tables");
+    private final static byte[] MINI_INCREMENT_DIR_COL = Bytes.toBytes("dir");
     private final static String SET_KEY_PREFIX = "backupset:";
 
     // separator between BULK_LOAD_PREFIX and ordinals
@@ -317,6 +376,41 @@ public final class BackupSystemTable implements Closeable {
         }
     }
 
+    /**
+     * Reads the names of the bulk loaded hfiles recorded since the given time, original bulk loads
+     * and bulk loaded files copied by incremental backups alike. Used by the hfile cleaner.
+     * @param minTimestamp oldest write time of the records, inclusive
+     * @return map of table to the file names (without directory) of its bulk loaded hfiles
+     * @throws IOException exception
+     */
+    public Map<TableName, Set<String>> readBulkLoadedFileNames(long minTimestamp)
+            throws IOException {
+        Scan scan = BackupSystemTable.createScanForBulkLoadedFiles(null);
+        scan.addColumn(BackupSystemTable.META_FAMILY, TBL_COL);
+        scan.addColumn(BackupSystemTable.META_FAMILY, PATH_COL);
+        scan.setTimeRange(minTimestamp, Long.MAX_VALUE);
+        Map<TableName, Set<String>> names = new HashMap<>();
+        try (Table table = connection.getTable(bulkLoadTableName);
+             ResultScanner scanner = table.getScanner(scan)) {
+            Result res;
+            while ((res = scanner.next()) != null) {
+                byte[] tbl = res.getValue(BackupSystemTable.META_FAMILY, TBL_COL);
+                byte[] path = res.getValue(BackupSystemTable.META_FAMILY, PATH_COL);
+                if (tbl == null || path == null) {
+                    continue;
+                }
+                TableName tn = TableName.valueOf(tbl);
+                Set<String> files = names.get(tn);
+                if (files == null) {
+                    files = new HashSet<>();
+                    names.put(tn, files);
+                }
+                files.add(new Path(Bytes.toString(path)).getName());
+            }
+        }
+        return names;
+    }
+
     /**
      * Deletes backup status from backup system table table
      * @param backupId backup id
@@ -624,6 +718,23 @@ public final class BackupSystemTable implements Closeable {
         }
     }
 
+    /**
+     * Get the log information of a single Region Server after its last log roll
+     * @param server     Region Server name (host:port)
+     * @param backupRoot root directory path to backup
+     * @return last log timestamp, null if the server never rolled for this backup root
+     * @throws IOException exception
+     */
+    public Long readRegionServerLastLogRollResult(String server, String backupRoot)
+            throws IOException {
+        Get get = new Get(rowkey(RS_LOG_TS_PREFIX, backupRoot, NULL, server));
+        get.addColumn(BackupSystemTable.META_FAMILY, RS_LOG_TS_COL);
+        try (Table table = connection.getTable(tableName)) {
+            byte[] data = table.get(get).getValue(BackupSystemTable.META_FAMILY, RS_LOG_TS_COL);
+            return data == null ? null : Bytes.toLong(data);
+        }
+    }
+
     /**
      * Writes Region Server last roll log result (timestamp) to backup system table table
      * @param server     Region Server name
@@ -641,6 +752,117 @@ public final class BackupSystemTable implements Closeable {
         }
     }
 
+    /**
+     * Writes the last roll log results (timestamps) of Region Servers in one batch
+     * @param results    last log timestamp by Region Server name (host:port)
+     * @param backupRoot root directory path to backup
+     * @throws IOException exception
+     */
+    public void writeRegionServerLastLogRollResults(Map<String, Long> results, String backupRoot)
+            throws IOException {
+        if (results.isEmpty()) {
+            return;
+        }
+        List<Put> puts = new ArrayList<>(results.size());
+        for (Map.Entry<String, Long> entry : results.entrySet()) {
+            puts.add(createPutForRegionServerLastLogRollResult(entry.getKey(), entry.getValue(),
+                    backupRoot));
+        }
+        try (Table table = connection.getTable(tableName)) {
+            table.put(puts);
+        }
+    }
+
+    /**
+     * Writes the boundary of the last log roll, taken on the clock of the master which ran it
+     * @param backupRoot root directory path to backup
+     * @param master     master server name
+     * @param ts         master time when the roll started
+     * @throws IOException exception
+     */
+    public void writeLogRollBoundary(String backupRoot, String master, long ts) throws IOException {
+        Put put = new Put(rowkey(LOG_ROLL_BOUNDARY_PREFIX, backupRoot));
+        put.addColumn(META_FAMILY, LOG_ROLL_MASTER_COL, Bytes.toBytes(master));
+        put.addColumn(META_FAMILY, LOG_ROLL_TS_COL, Bytes.toBytes(ts));
+        try (Table table = connection.getTable(tableName)) {
+            table.put(put);
+        }
+    }
+
+    /**
+     * Read the boundary of the last log roll
+     * @param backupRoot root directory path to backup
+     * @return master server name and master time when the roll started, null if not recorded
+     * @throws IOException exception
+     */
+    public Pair<String, Long> readLogRollBoundary(String backupRoot) throws IOException {
+        try (Table table = connection.getTable(tableName)) {
+            return toLogRollBoundary(table.get(new Get(rowkey(LOG_ROLL_BOUNDARY_PREFIX, backupRoot))));
+        }
+    }
+
+    /**
+     * Writes the log roll boundary of a successful full or incremental backup of tables
+     * @param tables     tables
+     * @param boundary   master server name and master time when the roll of the backup started
+     * @param backupRoot root directory path to backup
+     * @throws IOException exception
+     */
+    public void writeTableLogRollBoundary(Set<TableName> tables, Pair<String, Long> boundary,
+                                          String backupRoot) throws IOException {
+        List<Put> puts = new ArrayList<>(tables.size());
+        for (TableName table : tables) {
+            Put put = new Put(rowkey(TABLE_LOG_ROLL_BOUNDARY_PREFIX, backupRoot, NULL,
+                    table.getNameAsString()));
+            put.addColumn(META_FAMILY, LOG_ROLL_MASTER_COL, Bytes.toBytes(boundary.getFirst()));
+            put.addColumn(META_FAMILY, LOG_ROLL_TS_COL, Bytes.toBytes(boundary.getSecond()));
+            puts.add(put);
+        }
+        try (Table table = connection.getTable(tableName)) {
+            table.put(puts);
+        }
+    }
+
+    /**
+     * Read the log roll boundary of the last successful backup of tables
+     * @param tables     tables
+     * @param backupRoot root directory path to backup
+     * @return master server name and the earliest boundary of the tables, null if a table has no
+     * boundary or if the boundaries were taken by different masters
+     * @throws IOException exception
+     */
+    public Pair<String, Long> readTableLogRollBoundary(Set<TableName> tables, String backupRoot)
+            throws IOException {
+        List<Get> gets = new ArrayList<>(tables.size());
+        for (TableName table : tables) {
+            gets.add(new Get(rowkey(TABLE_LOG_ROLL_BOUNDARY_PREFIX, backupRoot, NULL,
+                    table.getNameAsString())));
+        }
+        Pair<String, Long> boundary = null;
+        try (Table table = connection.getTable(tableName)) {
+            for (Result result : table.get(gets)) {
+                Pair<String, Long> tableBoundary = toLogRollBoundary(result);
+                if (tableBoundary == null || (boundary != null
+                        && !boundary.getFirst().equals(tableBoundary.getFirst()))) {
+                    return null;
+                }
+                if (boundary == null || tableBoundary.getSecond() < boundary.getSecond()) {
+                    boundary = tableBoundary;
+                }
+            }
+        }
+        return boundary;
+    }
+
+    private static Pair<String, Long> toLogRollBoundary(Result result) {
+        byte[] master = result.getValue(META_FAMILY, LOG_ROLL_MASTER_COL);
+        byte[] ts = result.getValue(META_FAMILY, LOG_ROLL_TS_COL);
+        if (master == null || ts == null) {
+            return null;
+        }
+        return new Pair<>(Bytes.toString(master), Bytes.toLong(ts));
+    }
+
     /**
      * Get all completed backup information (in desc order by time)
      * @param onlyCompleted true, if only successfully completed sessions
@@ -727,6 +949,33 @@ public final class BackupSystemTable implements Closeable {
         return new ArrayList<>(names);
     }
 
+    /**
+     * Retrieve the tables of the completed backups of given type whose backup info was updated
+     * since the given time
+     * @param type         backup type
+     * @param minTimestamp oldest update time of the backup info, inclusive
+     * @return List of table names
+     * @throws IOException exception
+     */
+    public List<TableName> getTablesForBackupType(BackupType type, long minTimestamp)
+            throws IOException {
+        Scan scan = createScanForBackupHistory();
+        scan.setTimeRange(minTimestamp, Long.MAX_VALUE);
+        Set<TableName> names = new HashSet<>();
+        try (Table table = connection.getTable(tableName);
+             ResultScanner scanner = table.getScanner(scan)) {
+            Result res;
+            while ((res = scanner.next()) != null) {
+                res.advance();
+                BackupInfo info = cellToBackupInfo(res.current());
+                if (info.getState() == BackupState.COMPLETE && info.getType() == type) {
+                    names.addAll(info.getTableNames());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
     /**
      * Get history for backup destination
      * @param backupRoot backup destination path
@@ -1059,6 +1308,86 @@ public final class BackupSystemTable implements Closeable {
         };
     }
 
+    /**
+     * Get the WAL files of a region server backed up to a backup destination, created in a time
+     * range. Only the rows of the range are scanned.
+     * @param backupRoot root directory path to backup destination
+     * @param server     region server (host:port)
+     * @param fromTs     exclusive lower bound of the WAL creation time, negative for no bound
+     * @param toTs       exclusive upper bound of the WAL creation time, Long.MAX_VALUE for no bound
+     * @return WAL items, ordered by creation time
+     * @throws IOException exception
+     */
+    public List<WALItem> getWALFiles(String backupRoot, String server, long fromTs, long toTs)
+            throws IOException {
+        List<WALItem> items = new ArrayList<>();
+        Scan scan = new Scan();
+        scan.setStartRow(fromTs < 0 ? rowkey(WALS_INDEX_PREFIX, backupRoot, NULL, server, NULL)
+                : rowkey(WALS_INDEX_PREFIX, backupRoot, NULL, server, NULL, tsKey(fromTs + 1)));
+        scan.setStopRow(toTs == Long.MAX_VALUE
+                ? rowkey(WALS_INDEX_PREFIX, backupRoot, NULL, server, "\u0001")
+                : rowkey(WALS_INDEX_PREFIX, backupRoot, NULL, server, NULL, tsKey(toTs)));
+        scan.addFamily(BackupSystemTable.META_FAMILY);
+        scan.setMaxVersions(1);
+        try (Table table = connection.getTable(tableName);
+             ResultScanner scanner = table.getScanner(scan)) {
+            Result res;
+            while ((res = scanner.next()) != null) {
+                String backupId = Bytes.toString(res.getValue(META_FAMILY, Bytes.toBytes("backupId")));
+                String walFile = Bytes.toString(res.getValue(META_FAMILY, Bytes.toBytes("file")));
+                items.add(new WALItem(backupId, walFile, backupRoot));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Index the WAL files recorded before the backup root index existed. Runs once, the following
+     * calls only check the migration marker.
+     * @throws IOException exception
+     */
+    public void migrateWALIndex() throws IOException {
+        final int BUF_SIZE = 1000;
+
+        try (Table table = connection.getTable(tableName)) {
+            if (table.exists(new Get(WALS_INDEX_MIGRATED_ROW))) {
+                return;
+            }
+            LOG.info("Migrating the recorded WAL files to the backup root index");
+            long count = 0;
+            List<Put> puts = new ArrayList<>();
+            try (ResultScanner scanner = table.getScanner(createScanForGetWALs(null))) {
+                Result res;
+                while ((res = scanner.next()) != null) {
+                    String backupId = Bytes.toString(res.getValue(META_FAMILY, Bytes.toBytes("backupId")));
+                    String file = Bytes.toString(res.getValue(META_FAMILY, Bytes.toBytes("file")));
+                    String root = Bytes.toString(res.getValue(META_FAMILY, Bytes.toBytes("root")));
+                    if (backupId == null || file == null || root == null) {
+                        continue;
+                    }
+                    Put put = createPutForWALIndex(file, backupId, root);
+                    if (put == null) {
+                        continue;
+                    }
+                    puts.add(put);
+                    count++;
+                    if (puts.size() >= BUF_SIZE) {
+                        table.put(puts);
+                        puts.clear();
+                    }
+                }
+            }
+            if (!puts.isEmpty()) {
+                table.put(puts);
+            }
+            // the marker goes last, an interrupted migration is run again
+            Put marker = new Put(WALS_INDEX_MIGRATED_ROW);
+            marker.addColumn(BackupSystemTable.META_FAMILY, Bytes.toBytes("c"), EMPTY_VALUE);
+            table.put(marker);
+            LOG.info("Migrated " + count + " recorded WAL files to the backup root index");
+        }
+    }
+
     /**
      * Check if WAL file is eligible for deletion Future: to support all backup destinations
      * @param file name of a file to check
@@ -1119,6 +1448,204 @@ public final class BackupSystemTable implements Closeable {
         return ret;
     }
 
+    /**
+     * Record WAL files of a region server in the WAL catalog. A WAL file recorded again (once
+     * archived) replaces the previous location.
+     * @param server region server (host:port)
+     * @param files  WAL file paths
+     * @throws IOException exception
+     */
+    public void addWALCatalogEntries(String server, List<String> files) throws IOException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("add WAL catalog entries for " + server + " [" + StringUtils.join(files, ",")
+                    + "]");
+        }
+        // one put per row, the last location of a file wins
+        Map<Long, Put> puts = new LinkedHashMap<>();
+        for (String file : files) {
+            long ts = BackupUtils.getCreationTime(new Path(file));
+            Put put = new Put(rowkey(WAL_CATALOG_PREFIX, server, NULL, tsKey(ts)));
+            put.addColumn(BackupSystemTable.META_FAMILY, WAL_CATALOG_FILE_COL, Bytes.toBytes(file));
+            puts.put(ts, put);
+        }
+        try (Table table = connection.getTable(tableName)) {
+            table.put(new ArrayList<>(puts.values()));
+        }
+    }
+
+    /**
+     * Record the creation time of the first WAL file recorded in the WAL catalog by the current
+     * instance of a region server: the catalog has all the WAL files of the server since then.
+     * @param server region server (host:port)
+     * @param ts     creation time of the first recorded WAL file
+     * @throws IOException exception
+     */
+    public void writeWALCatalogSince(String server, long ts) throws IOException {
+        try (Table table = connection.getTable(tableName)) {
+            Put put = new Put(rowkey(WAL_CATALOG_SINCE_PREFIX, server));
+            put.addColumn(BackupSystemTable.META_FAMILY, WAL_CATALOG_SINCE_COL, Bytes.toBytes(ts));
+            table.put(put);
+        }
+    }
+
+    /**
+     * Read the WAL catalog start time of all the region servers ever recorded
+     * @return map of start time by region server (host:port)
+     * @throws IOException exception
+     */
+    public Map<String, Long> readWALCatalogSince() throws IOException {
+        Map<String, Long> since = new HashMap<>();
+        try (Table table = connection.getTable(tableName);
+             ResultScanner scanner = table.getScanner(createScanForPrefix(WAL_CATALOG_SINCE_PREFIX))) {
+            Result res;
+            while ((res = scanner.next()) != null) {
+                String server = Bytes.toString(res.getRow()).substring(WAL_CATALOG_SINCE_PREFIX.length());
+                since.put(server, Bytes.toLong(res.getValue(META_FAMILY, WAL_CATALOG_SINCE_COL)));
+            }
+        }
+        return since;
+    }
+
+    /**
+     * Get the WAL files of a region server created in a time range from the WAL catalog
+     * @param server region server (host:port)
+     * @param fromTs exclusive lower bound of the WAL creation time
+     * @param toTs   inclusive upper bound of the WAL creation time
+     * @return WAL file paths, ordered by creation time
+     * @throws IOException exception
+     */
+    public List<String> readWALCatalog(String server, long fromTs, long toTs) throws IOException {
+        List<String> files = new ArrayList<>();
+        if (fromTs >= toTs) {
+            return files;
+        }
+        Scan scan = new Scan();
+        scan.setStartRow(rowkey(WAL_CATALOG_PREFIX, server, NULL, tsKey(fromTs + 1)));
+        scan.setStopRow(toTs == Long.MAX_VALUE ? rowkey(WAL_CATALOG_PREFIX, server, "\u0001")
+                : rowkey(WAL_CATALOG_PREFIX, server, NULL, tsKey(toTs + 1)));
+        scan.addColumn(BackupSystemTable.META_FAMILY, WAL_CATALOG_FILE_COL);
+        scan.setMaxVersions(1);
+        try (Table table = connection.getTable(tableName);
+             ResultScanner scanner = table.getScanner(scan)) {
+            Result res;
+            while ((res = scanner.next()) != null) {
+                files.add(Bytes.toString(res.getValue(META_FAMILY, WAL_CATALOG_FILE_COL)));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Remove WAL files from the WAL catalog, once deleted
+     * @param files WAL file paths
+     * @throws IOException exception
+     */
+    public void deleteWALCatalogEntries(List<String> files) throws IOException {
+        List<Delete> deletes = new ArrayList<>(files.size());
+        for (String file : files) {
+            Path p = new Path(file);
+            String server = BackupUtils.parseHostNameFromLogFile(p);
+            if (server == null) {
+                continue;
+            }
+            deletes.add(new Delete(rowkey(WAL_CATALOG_PREFIX, server, NULL,
+                    tsKey(BackupUtils.getCreationTime(p)))));
+        }
+        if (deletes.isEmpty()) {
+            return;
+        }
+        try (Table table = connection.getTable(tableName)) {
+            table.delete(deletes);
+        }
+    }
+
+    /**
+     * Record a mini-increment of the continuous backup of a backup root
+     * @param backupRoot root directory path to backup
+     * @param mini       mini-increment, its HFiles already written
+     * @throws IOException exception
+     */
+    public void addMiniIncrement(String backupRoot, MiniIncrement mini) throws IOException {
+        List<String> tables = new ArrayList<>(mini.getTables().size());
+        for (TableName table : mini.getTables()) {
+            tables.add(table.getNameAsString());
+        }
+        Put put = new Put(rowkey(MINI_INCREMENT_PREFIX, backupRoot, NULL, tsKey(mini.getId())));
+        put.addColumn(META_FAMILY, MINI_INCREMENT_WALS_COL,
+                Bytes.toBytes(StringUtils.join(mini.getWalFiles(), "\n")));
+        put.addColumn(META_FAMILY, MINI_INCREMENT_TABLES_COL,
+                Bytes.toBytes(StringUtils.join(tables, ",")));
+        put.addColumn(META_FAMILY, MINI_INCREMENT_DIR_COL, Bytes.toBytes(mini.getDir()));
+        try (Table table = connection.getTable(tableName)) {
+            table.put(put);
+        }
+    }
+
+    /**
+     * Get the mini-increments of the continuous backup of a backup root
+     * @param backupRoot root directory path to backup
+     * @return mini-increments, oldest first
+     * @throws IOException exception
+     */
+    public List<MiniIncrement> getMiniIncrements(String backupRoot) throws IOException {
+        List<MiniIncrement> minis = new ArrayList<>();
+        String prefix = MINI_INCREMENT_PREFIX + backupRoot + NULL;
+        try (Table table = connection.getTable(tableName);
+             ResultScanner scanner = table.getScanner(createScanForPrefix(prefix))) {
+            Result res;
+            while ((res = scanner.next()) != null) {
+                long id = Long.parseLong(Bytes.toString(res.getRow()).substring(prefix.length()));
+                List<TableName> tables = new ArrayList<>();
+                for (String name : Bytes.toString(res.getValue(META_FAMILY, MINI_INCREMENT_TABLES_COL))
+                        .split(",")) {
+                    tables.add(TableName.valueOf(name));
+                }
+                minis.add(new MiniIncrement(id, Arrays.asList(Bytes.toString(
+                        res.getValue(META_FAMILY, MINI_INCREMENT_WALS_COL)).split("\n")), tables,
+                        Bytes.toString(res.getValue(META_FAMILY, MINI_INCREMENT_DIR_COL))));
+            }
+        }
+        return minis;
+    }
+
+    /**
+     * Remove mini-increments of the continuous backup of a backup root
+     * @param backupRoot root directory path to backup
+     * @param minis      mini-increments, sealed or obsolete
+     * @throws IOException exception
+     */
+    public void deleteMiniIncrements(String backupRoot, List<MiniIncrement> minis) throws IOException {
+        List<Delete> deletes = new ArrayList<>(minis.size());
+        for (MiniIncrement mini : minis) {
+            deletes.add(new Delete(rowkey(MINI_INCREMENT_PREFIX, backupRoot, NULL, tsKey(mini.getId()))));
+        }
+        if (deletes.isEmpty()) {
+            return;
+        }
+        try (Table table = connection.getTable(tableName)) {
+            table.delete(deletes);
+        }
+    }
+
+    /**
+     * WAL creation time in row keys, fixed width so that keys sort by time
+     */
+    private static String tsKey(long ts) {
+        return String.format("%019d", ts);
+    }
+
+    private Scan createScanForPrefix(String prefix) {
+        Scan scan = new Scan();
+        byte[] startRow = Bytes.toBytes(prefix);
+        byte[] stopRow = Arrays.copyOf(startRow, startRow.length);
+        stopRow[stopRow.length - 1] = (byte) (stopRow[stopRow.length - 1] + 1);
+        scan.setStartRow(startRow);
+        scan.setStopRow(stopRow);
+        scan.addFamily(BackupSystemTable.META_FAMILY);
+        scan.setMaxVersions(1);
+        return scan;
+    }
+
     /**
      * Checks if we have at least one backup session in backup system table This API is used by
      * BackupLogCleaner
@@ -1354,6 +1881,15 @@ public final class BackupSystemTable implements Closeable {
         Put put = new Put(rowkey(BACKUP_INFO_PREFIX, context.getBackupId()));
         put.addColumn(BackupSystemTable.SESSIONS_FAMILY, Bytes.toBytes("context"),
                 context.toByteArray());
+        // the snapshot latencies are not part of the protobuf message, they go next to it
+        for (TableName table : context.getTableNames()) {
+            long latency = context.getSnapshotLatency(table);
+            if (latency >= 0) {
+                put.addColumn(BackupSystemTable.META_FAMILY,
+                        Bytes.toBytes(SNAPSHOT_LATENCY_COL_PREFIX + table.getNameAsString()),
+                        Bytes.toBytes(latency));
+            }
+        }
         return put;
     }
 
@@ -1366,6 +1902,7 @@ public final class BackupSystemTable implements Closeable {
     private Get createGetForBackupInfo(String backupId) throws IOException {
         Get get = new Get(rowkey(BACKUP_INFO_PREFIX, backupId));
         get.addFamily(BackupSystemTable.SESSIONS_FAMILY);
+        get.addFamily(BackupSystemTable.META_FAMILY);
         get.setMaxVersions(1);
         return get;
     }
@@ -1378,6 +1915,7 @@ public final class BackupSystemTable implements Closeable {
     private Delete createDeleteForBackupInfo(String backupId) {
         Delete del = new Delete(rowkey(BACKUP_INFO_PREFIX, backupId));
         del.addFamily(BackupSystemTable.SESSIONS_FAMILY);
+        del.addFamily(BackupSystemTable.META_FAMILY);
         return del;
     }
 
@@ -1388,9 +1926,23 @@ public final class BackupSystemTable implements Closeable {
      * @throws IOException exception
      */
     private BackupInfo resultToBackupInfo(Result res) throws IOException {
-        res.advance();
-        Cell cell = res.current();
-        return cellToBackupInfo(cell);
+        BackupInfo info = BackupInfo.fromByteArray(
+                res.getValue(BackupSystemTable.SESSIONS_FAMILY, Bytes.toBytes("context")));
+        NavigableMap<byte[], byte[]> meta = res.getFamilyMap(BackupSystemTable.META_FAMILY);
+        if (meta != null) {
+            byte[] prefix = Bytes.toBytes(SNAPSHOT_LATENCY_COL_PREFIX);
+            for (Map.Entry<byte[], byte[]> e : meta.entrySet()) {
+                if (!Bytes.startsWith(e.getKey(), prefix)) {
+                    continue;
+                }
+                TableName table = TableName.valueOf(Bytes.toString(e.getKey(), prefix.length,
+                        e.getKey().length - prefix.length));
+                if (info.getBackupTableInfo(table) != null) {
+                    info.setSnapshotLatency(table, Bytes.toLong(e.getValue()));
+                }
+            }
+        }
+        return info;
     }
 
     /**
@@ -1529,8 +2081,7 @@ public final class BackupSystemTable implements Closeable {
     private Put createPutForRegionServerLastLogRollResult(String server, Long timestamp,
                                                           String backupRoot) {
         Put put = new Put(rowkey(RS_LOG_TS_PREFIX, backupRoot, NULL, server));
-        put.addColumn(BackupSystemTable.META_FAMILY, Bytes.toBytes("rs-log-ts"),
-                Bytes.toBytes(timestamp));
+        put.addColumn(BackupSystemTable.META_FAMILY, RS_LOG_TS_COL, Bytes.toBytes(timestamp));
         return put;
     }
 
@@ -1885,10 +2436,42 @@ public final class BackupSystemTable implements Closeable {
             put.addColumn(BackupSystemTable.META_FAMILY, Bytes.toBytes("root"),
                     Bytes.toBytes(backupRoot));
             puts.add(put);
+            Put indexPut = createPutForWALIndex(file, backupId, backupRoot);
+            if (indexPut != null) {
+                puts.add(indexPut);
+            }
         }
         return puts;
     }
 
+    /**
+     * Creates put for the backup root index of a WAL file
+     * @param file       WAL file path
+     * @param backupId   backup id
+     * @param backupRoot root directory path to backup destination
+     * @return put operation, null if the server or the timestamp can not be parsed from the path
+     */
+    private Put createPutForWALIndex(String file, String backupId, String backupRoot) {
+        Path p = new Path(file);
+        String server = BackupUtils.parseHostNameFromLogFile(p);
+        if (server == null) {
+            return null;
+        }
+        long ts;
+        try {
+            ts = BackupUtils.getCreationTime(p);
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Skip WAL index of " + file + ": can't parse the timestamp");
+            return null;
+        }
+        Put put = new Put(rowkey(WALS_INDEX_PREFIX, backupRoot, NULL, server, NULL, tsKey(ts), NULL,
+                BackupUtils.getUniqueWALFileNamePart(file)));
+        put.addColumn(BackupSystemTable.META_FAMILY, Bytes.toBytes("backupId"),
+                Bytes.toBytes(backupId));
+        put.addColumn(BackupSystemTable.META_FAMILY, Bytes.toBytes("file"), Bytes.toBytes(file));
+        return put;
+    }
+
     /**
      * Creates Scan operation to load WALs
      * @param backupRoot path to backup destination
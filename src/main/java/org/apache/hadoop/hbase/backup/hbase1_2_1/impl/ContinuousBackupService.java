@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.backup.hbase1_2_1.impl;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable.MiniIncrement;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.LocalWALPlayer;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.hbase.backup.hbase1_2_1.util.AbstractFSWALProviderUtils.isMetaFile;
+
+/**
+ * Continuous backup of the incremental backup table set of a backup root, between two scheduled
+ * incremental backups.
+ * <p>
+ * The service follows the WAL files closed since the previous backup in the WAL catalog of the
+ * backup system table, converts them to HFiles in small batches and records every batch as a
+ * mini-increment under "backupRoot/.continuous/id". The next incremental backup of the same table
+ * set seals the mini-increments into its image instead of reading their WAL files again, see
+ * {@link IncrementalTableBackupClient#convertWALsToHFiles()}. Mini-increments made obsolete by a
+ * backup which did not seal them are removed. The service holds the backup exclusive lock while
+ * converting a batch and skips the batch while a backup, merge or delete holds it.
+ * <p>
+ * Requires {@link BackupRestoreConstants#BACKUP_WAL_CATALOG_ENABLED_KEY}.
+ */
+@InterfaceAudience.Private
+public class ContinuousBackupService implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ContinuousBackupService.class);
+
+    public static final String CONTINUOUS_DIR = ".continuous";
+
+    private final Connection conn;
+    private final Configuration conf;
+    private final String backupRoot;
+    private ScheduledExecutorService executor;
+
+    public ContinuousBackupService(Connection conn, String backupRoot) {
+        this.conn = conn;
+        this.conf = conn.getConfiguration();
+        this.backupRoot = backupRoot;
+    }
+
+    /**
+     * Start converting the closed WAL files in background
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        long interval = conf.getLong(BackupRestoreConstants.BACKUP_CONTINUOUS_INTERVAL_MS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_CONTINUOUS_INTERVAL_MS);
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("backup-continuous-"));
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce();
+            } catch (Exception e) {
+                LOG.warn("Continuous backup of " + backupRoot + " failed, will retry", e);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+        LOG.info("Started the continuous backup of " + backupRoot + " every " + interval + " ms");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Convert the next batch of closed WAL files of the incremental backup table set
+     * @return the mini-increment written, null if there was nothing to convert
+     * @throws IOException exception
+     */
+    public MiniIncrement runOnce() throws IOException {
+        if (!conf.getBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_WAL_CATALOG_ENABLED)) {
+            throw new IOException("Continuous backup requires "
+                    + BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY);
+        }
+        try (BackupSystemTable table = new BackupSystemTable(conn)) {
+            // no backup, merge or delete changes the backup state while converting
+            try {
+                table.startBackupExclusiveOperation();
+            } catch (ExclusiveOperationException e) {
+                LOG.debug("A backup exclusive operation is running, skipping the continuous backup of "
+                        + backupRoot);
+                return null;
+            }
+            try {
+                return convertNextBatch(table);
+            } finally {
+                table.finishBackupExclusiveOperation();
+            }
+        }
+    }
+
+    private MiniIncrement convertNextBatch(BackupSystemTable table) throws IOException {
+        Set<TableName> tableSet = table.getIncrementalBackupTableSet(backupRoot);
+        HashMap<String, Long> boundaries =
+                BackupUtils.getRSLogTimestampMins(table.readLogTimestampMap(backupRoot));
+        if (tableSet.isEmpty() || boundaries == null) {
+            LOG.debug("No full backup in " + backupRoot + " yet, nothing to convert");
+            return null;
+        }
+
+        Set<String> converted = new HashSet<>();
+        List<MiniIncrement> obsolete = new ArrayList<>();
+        for (MiniIncrement mini : table.getMiniIncrements(backupRoot)) {
+            if (isObsolete(mini, boundaries)) {
+                obsolete.add(mini);
+            } else {
+                for (String file : mini.getWalFiles()) {
+                    converted.add(new Path(file).getName());
+                }
+            }
+        }
+        deleteMiniIncrements(table, obsolete);
+
+        List<String> files = getClosedWALFiles(table, boundaries, converted);
+        if (files.isEmpty()) {
+            return null;
+        }
+        List<TableName> tables = new ArrayList<>(tableSet.size());
+        try (Admin admin = conn.getAdmin()) {
+            for (TableName tableName : tableSet) {
+                if (admin.tableExists(tableName)) {
+                    tables.add(tableName);
+                }
+            }
+        }
+
+        long id = EnvironmentEdgeManager.currentTime();
+        Path dir = new Path(new Path(backupRoot, CONTINUOUS_DIR), Long.toString(id));
+        new LocalWALPlayer(conf, conn).run(files, tables, dir);
+        // the row makes the mini-increment visible, only once its HFiles are complete
+        MiniIncrement mini = new MiniIncrement(id, files, new ArrayList<>(tableSet), dir.toString());
+        table.addMiniIncrement(backupRoot, mini);
+        LOG.info("Continuous backup of " + backupRoot + ": " + mini);
+        return mini;
+    }
+
+    /**
+     * A mini-increment is obsolete once a backup covered all its WAL files without sealing it
+     */
+    private boolean isObsolete(MiniIncrement mini, Map<String, Long> boundaries) throws IOException {
+        for (String file : mini.getWalFiles()) {
+            Path p = new Path(file);
+            Long boundary = boundaries.get(BackupUtils.parseHostNameFromLogFile(p));
+            if (boundary == null || BackupUtils.getCreationTime(p) > boundary) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteMiniIncrements(BackupSystemTable table, List<MiniIncrement> minis)
+            throws IOException {
+        if (minis.isEmpty()) {
+            return;
+        }
+        table.deleteMiniIncrements(backupRoot, minis);
+        for (MiniIncrement mini : minis) {
+            Path dir = new Path(mini.getDir());
+            FileSystem fs = dir.getFileSystem(conf);
+            if (!fs.delete(dir, true)) {
+                LOG.warn("Could not delete " + dir);
+            }
+            LOG.debug("Deleted obsolete " + mini);
+        }
+    }
+
+    /**
+     * Get the WAL files closed since the previous backup and not converted yet, at most
+     * {@link BackupRestoreConstants#BACKUP_CONTINUOUS_BATCH_MAX_FILES_KEY}. The newest WAL file of
+     * every region server is still written.
+     */
+    private List<String> getClosedWALFiles(BackupSystemTable table, Map<String, Long> boundaries,
+                                           Set<String> converted) throws IOException {
+        int maxFiles = conf.getInt(BackupRestoreConstants.BACKUP_CONTINUOUS_BATCH_MAX_FILES_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_CONTINUOUS_BATCH_MAX_FILES);
+        List<String> files = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : boundaries.entrySet()) {
+            List<String> serverFiles = table.readWALCatalog(entry.getKey(), entry.getValue(),
+                    Long.MAX_VALUE);
+            for (int i = 0; i < serverFiles.size() - 1 && files.size() < maxFiles; i++) {
+                Path p = new Path(serverFiles.get(i));
+                if (!isMetaFile(p) && !converted.contains(p.getName())) {
+                    files.add(serverFiles.get(i));
+                }
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: " + ContinuousBackupService.class.getName() + " <backup_root>");
+            System.exit(1);
+        }
+        Configuration conf = HBaseConfiguration.create();
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             ContinuousBackupService service = new ContinuousBackupService(conn, args[0])) {
+            service.start();
+            Thread.currentThread().join();
+        }
+    }
+}
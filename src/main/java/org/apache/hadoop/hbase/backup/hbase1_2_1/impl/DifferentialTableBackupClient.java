@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.backup.hbase1_2_1.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRequest;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants.BACKUP_FULL_DIFFERENTIAL_BASE_KEY;
+
+/**
+ * Differential full table backup implementation: the table snapshot is diffed against the
+ * snapshot manifest of the previous full backup image of the table, and only the new store files
+ * are exported. The image is a regular full backup image, the unchanged store files are listed
+ * in the image and kept by the previous one.
+ *
+ */
+@InterfaceAudience.Private
+public class DifferentialTableBackupClient extends FullTableBackupClient {
+    private static final Log LOG = LogFactory.getLog(DifferentialTableBackupClient.class);
+
+    // previous full backup id by table, tables without previous full backup are exported as is
+    private final Map<TableName, String> baseBackupIds = new HashMap<>();
+
+    public DifferentialTableBackupClient() {
+    }
+
+    public DifferentialTableBackupClient(final Connection conn, final String backupId,
+                                         BackupRequest request) throws IOException {
+        super(conn, backupId, request);
+    }
+
+    @Override
+    protected void snapshotCopy(BackupInfo backupInfo) throws Exception {
+        List<BackupInfo> history = backupManager.getBackupHistory(true);
+        for (TableName table : backupInfo.getTableNames()) {
+            BackupInfo base = null;
+            for (BackupInfo info : history) {
+                if (info.getType() == BackupType.FULL
+                        && info.getBackupRootDir().equals(backupInfo.getBackupRootDir())
+                        && info.getTableNames().contains(table)
+                        && !info.getBackupId().equals(backupInfo.getBackupId())
+                        && (base == null || info.getStartTs() > base.getStartTs())) {
+                    base = info;
+                }
+            }
+            if (base != null) {
+                LOG.info("Differential backup of " + table + " based on " + base.getBackupId());
+                baseBackupIds.put(table, base.getBackupId());
+            } else {
+                LOG.info("No previous full backup of " + table + ", all of its store files are copied");
+            }
+        }
+        super.snapshotCopy(backupInfo);
+    }
+
+    @Override
+    protected Configuration createExportConf(TableName table) throws IOException {
+        Configuration jobConf = super.createExportConf(table);
+        String base = baseBackupIds.get(table);
+        if (base != null) {
+            jobConf.set(BACKUP_FULL_DIFFERENTIAL_BASE_KEY, base);
+        }
+        return jobConf;
+    }
+}
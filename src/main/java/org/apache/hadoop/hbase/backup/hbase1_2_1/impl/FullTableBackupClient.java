@@ -20,10 +20,14 @@ package org.apache.hadoop.hbase.backup.hbase1_2_1.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.*;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupPhase;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupState;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceBackupCopyJob;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupRegionBoundaries;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.SafeRestoreTool;
 import org.apache.hadoop.hbase.client.Admin;
@@ -32,9 +36,18 @@ import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceAudience;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants.*;
 
@@ -55,7 +68,8 @@ public class FullTableBackupClient extends TableBackupClient {
     }
 
     /**
-     * Do snapshot copy.
+     * Do snapshot copy. Up to {@link BackupRestoreConstants#BACKUP_EXPORT_MAX_CONCURRENCY_KEY}
+     * export jobs are running at the same time, the first failed export fails the whole copy.
      * @param backupInfo backup info
      * @throws Exception exception
      */
@@ -66,7 +80,7 @@ public class FullTableBackupClient extends TableBackupClient {
         backupInfo.setPhase(BackupPhase.SNAPSHOTCOPY);
 
         // call ExportSnapshot to copy files based on hbase snapshot for backup
-        // ExportSnapshot only support single snapshot export, need loop for multiple tables case
+        // ExportSnapshot only support single snapshot export, need one job per table
         BackupCopyJob copyService = BackupRestoreFactory.getBackupCopyJob(conf);
 
         // number of snapshots matches number of tables
@@ -74,37 +88,153 @@ public class FullTableBackupClient extends TableBackupClient {
 
         LOG.debug("There are " + (int) numOfSnapshots + " snapshots to be copied.");
 
-        for (TableName table : backupInfo.getTables()) {
-            // Currently we simply set the sub copy tasks by counting the table snapshot number, we can
-            // calculate the real files' size for the percentage in the future.
-            // backupCopier.setSubTaskPercntgInWholeTask(1f / numOfSnapshots);
-            int res;
-            String[] args = new String[4];
-            args[0] = "-snapshot";
-            args[1] = backupInfo.getSnapshotName(table);
-            args[2] = "-copy-to";
-            args[3] = backupInfo.getTableBackupDir(table);
-
-            String jobname = "Full-Backup_" + backupInfo.getBackupId() + "_" + table.getNameAsString();
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Setting snapshot copy job name to : " + jobname);
-            }
-            conf.set(JOB_NAME_CONF_KEY, jobname);
+        // Currently we simply set the sub copy tasks by counting the table snapshot number, we can
+        // calculate the real files' size for the percentage in the future.
+        if (copyService instanceof MapReduceBackupCopyJob) {
+            ((MapReduceBackupCopyJob) copyService).setSubTaskPercntgInWholeTask(1f / numOfSnapshots);
+        }
+
+        int maxConcurrency =
+                conf.getInt(BACKUP_EXPORT_MAX_CONCURRENCY_KEY, DEFAULT_BACKUP_EXPORT_MAX_CONCURRENCY);
+        // if one snapshot export failed, do not wait for remained snapshots
+        runForEachTable("export", maxConcurrency, backupInfo.getTableNames(),
+                table -> exportSnapshot(copyService, backupInfo, table));
+    }
 
-            LOG.debug("Copy snapshot " + args[1] + " to " + args[3]);
-            res = copyService.copy(backupInfo, backupManager, conf, BackupType.FULL, args);
+    /**
+     * Take the snapshots of all the tables of the backup. Up to
+     * {@link BackupRestoreConstants#BACKUP_SNAPSHOT_MAX_CONCURRENCY_KEY} snapshots are taken at the
+     * same time, each of them retried as in {@link #snapshotTable(Admin, TableName, String)}. The
+     * region boundaries of the tables are recorded from their snapshots for the restore.
+     * @param tables tables to snapshot
+     * @throws Exception if one of the snapshots can not be taken
+     */
+    protected void snapshotTables(List<TableName> tables) throws Exception {
+        int maxConcurrency =
+                conf.getInt(BACKUP_SNAPSHOT_MAX_CONCURRENCY_KEY, DEFAULT_BACKUP_SNAPSHOT_MAX_CONCURRENCY);
+        regionBoundaries = new BackupRegionBoundaries();
+        runForEachTable("snapshot", maxConcurrency, tables, tableName -> {
+            String snapshotName =
+                    "snapshot_" + Long.toString(EnvironmentEdgeManager.currentTime()) + "_"
+                            + tableName.getNamespaceAsString() + "_" + tableName.getQualifierAsString();
+
+            long startTs = EnvironmentEdgeManager.currentTime();
+            // Admin instances are not thread safe, use one per snapshot
+            try (Admin admin = conn.getAdmin()) {
+                snapshotTable(admin, tableName, snapshotName);
+            }
+            long latency = EnvironmentEdgeManager.currentTime() - startTs;
+            backupInfo.setSnapshotName(tableName, snapshotName);
+            backupInfo.setSnapshotLatency(tableName, latency);
+            LOG.info("Snapshot " + snapshotName + " of " + tableName + " took " + latency + "ms");
+            try {
+                regionBoundaries.addFromSnapshot(conf, tableName, snapshotName);
+            } catch (IOException e) {
+                // the restore falls back to the boundaries of the store files of the image
+                LOG.warn("Could not record the region boundaries of " + tableName + " from "
+                        + snapshotName, e);
+            }
+        });
+    }
 
-            // if one snapshot export failed, do not continue for remained snapshots
-            if (res != 0) {
-                LOG.error("Exporting Snapshot " + args[1] + " failed with return code: " + res + ".");
+    /**
+     * Task run for a single table of the backup
+     */
+    protected interface TableTask {
+        void run(TableName table) throws IOException;
+    }
 
-                throw new IOException("Failed of exporting snapshot " + args[1] + " to " + args[3]
-                        + " with reason code " + res);
+    /**
+     * Run a task for each of the tables on a bounded pool. The first failed task cancels the
+     * remaining ones and its exception is rethrown.
+     * @param name name of the pool threads
+     * @param maxConcurrency maximum number of tasks running at the same time
+     * @param tables tables
+     * @param task task to run for each table
+     * @throws Exception exception of the first failed task
+     */
+    protected void runForEachTable(String name, int maxConcurrency, Collection<TableName> tables,
+                                   TableTask task) throws Exception {
+        int threads = Math.max(1, Math.min(maxConcurrency, tables.size()));
+        LOG.debug("Running " + name + " for " + tables.size() + " table(s) with " + threads
+                + " thread(s)");
+
+        ExecutorService executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("backup-" + backupId + "-" + name));
+        ExecutorCompletionService<TableName> completion = new ExecutorCompletionService<>(executor);
+        List<Future<TableName>> futures = new ArrayList<>(tables.size());
+        try {
+            for (TableName table : tables) {
+                futures.add(completion.submit(() -> {
+                    task.run(table);
+                    return table;
+                }));
             }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            for (Future<TableName> f : futures) {
+                if (!f.isDone()) {
+                    f.cancel(true);
+                }
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create the configuration of the snapshot export job of a table.
+     * @param table table to export
+     * @return a new configuration, private to the export job
+     * @throws IOException exception
+     */
+    protected Configuration createExportConf(TableName table) throws IOException {
+        return new Configuration(conf);
+    }
+
+    /**
+     * Export the snapshot of a single table to the backup destination.
+     * @param copyService copy job
+     * @param backupInfo backup info
+     * @param table table to export
+     * @throws IOException if the export fails
+     */
+    private void exportSnapshot(BackupCopyJob copyService, BackupInfo backupInfo,
+                                     TableName table) throws IOException {
+        String[] args = new String[4];
+        args[0] = "-snapshot";
+        args[1] = backupInfo.getSnapshotName(table);
+        args[2] = "-copy-to";
+        args[3] = backupInfo.getTableBackupDir(table);
+
+        String jobname = "Full-Backup_" + backupInfo.getBackupId() + "_" + table.getNameAsString();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Setting snapshot copy job name to : " + jobname);
+        }
+        // Each export gets its own configuration, jobs may be running concurrently
+        Configuration jobConf = createExportConf(table);
+        jobConf.set(JOB_NAME_CONF_KEY, jobname);
+
+        LOG.debug("Copy snapshot " + args[1] + " to " + args[3]);
+        int res = copyService.copy(backupInfo, backupManager, jobConf, BackupType.FULL, args);
 
-            conf.unset(JOB_NAME_CONF_KEY);
-            LOG.info("Snapshot copy " + args[1] + " finished.");
+        if (res != 0) {
+            LOG.error("Exporting Snapshot " + args[1] + " failed with return code: " + res + ".");
+
+            throw new IOException("Failed of exporting snapshot " + args[1] + " to " + args[3]
+                    + " with reason code " + res);
         }
+
+        LOG.info("Snapshot copy " + args[1] + " finished.");
     }
 
     /**
@@ -117,9 +247,9 @@ public class FullTableBackupClient extends TableBackupClient {
         try (Admin admin = conn.getAdmin()) {
 
 
-            for (TableName tableName : tableList) {
-                SafeRestoreTool.snapshotOnBackup(conn, tableName);
-            }
+            runForEachTable("safe-snapshot", conf.getInt(BACKUP_SNAPSHOT_MAX_CONCURRENCY_KEY,
+                    DEFAULT_BACKUP_SNAPSHOT_MAX_CONCURRENCY), tableList,
+                    tableName -> SafeRestoreTool.snapshotOnBackup(conn, tableName));
 
             // Begin BACKUP
             beginBackup(backupManager, backupInfo);
@@ -141,8 +271,10 @@ public class FullTableBackupClient extends TableBackupClient {
             // the snapshot.
             LOG.info("Execute roll log procedure for full backup ...");
 
-            Map<String, String> props = new HashMap<>();
-            props.put("backupRoot", backupInfo.getBackupRootDir());
+            // the snapshots have the edits of the WALs which are not rolled
+            Map<String, String> props = backupManager.getLogRollProcedureProps(
+                    conf.getBoolean(BackupRestoreConstants.BACKUP_LOG_ROLL_TARGETED_KEY,
+                            BackupRestoreConstants.DEFAULT_BACKUP_LOG_ROLL_TARGETED) ? tableList : null);
             admin.execProcedure(LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_SIGNATURE,
                     LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_NAME, props);
 
@@ -159,14 +291,7 @@ public class FullTableBackupClient extends TableBackupClient {
 
             // SNAPSHOT_TABLES:
             backupInfo.setPhase(BackupPhase.SNAPSHOT);
-            for (TableName tableName : tableList) {
-                String snapshotName =
-                        "snapshot_" + Long.toString(EnvironmentEdgeManager.currentTime()) + "_"
-                                + tableName.getNamespaceAsString() + "_" + tableName.getQualifierAsString();
-
-                snapshotTable(admin, tableName, snapshotName);
-                backupInfo.setSnapshotName(tableName, snapshotName);
-            }
+            snapshotTables(tableList);
 
             // SNAPSHOT_COPY:
             // do snapshot copy
@@ -213,7 +338,7 @@ public class FullTableBackupClient extends TableBackupClient {
 
         while (attempts++ < maxAttempts) {
             try {
-                admin.snapshot(snapshotName, tableName);
+                takeSnapshot(admin, tableName, snapshotName);
                 return;
             } catch (IOException ee) {
                 LOG.warn("Snapshot attempt " + attempts + " failed for table " + tableName
@@ -230,4 +355,12 @@ public class FullTableBackupClient extends TableBackupClient {
         }
         throw new IOException("Failed to snapshot table " + tableName);
     }
+
+    /**
+     * Take a single snapshot attempt, retried by {@link #snapshotTable(Admin, TableName, String)}
+     */
+    protected void takeSnapshot(Admin admin, TableName tableName, String snapshotName)
+            throws IOException {
+        admin.snapshot(snapshotName, tableName);
+    }
 }
@@ -23,14 +23,18 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hbase.ClusterStatus;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.LogRollMasterProcedureManager;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable.WALItem;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.CommonFSUtils;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,8 +89,21 @@ public class IncrementalBackupManager extends BackupManager {
         }
 
         LOG.info("Execute roll log procedure for incremental backup ...");
-        HashMap<String, String> props = new HashMap<>();
-        props.put("backupRoot", backupInfo.getBackupRootDir());
+        // a region moved since the previous backup left edits in the WALs of its former server,
+        // the master checks it against the boundary of the previous backup
+        Map<String, String> props = null;
+        if (conf.getBoolean(BackupRestoreConstants.BACKUP_LOG_ROLL_TARGETED_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_LOG_ROLL_TARGETED)) {
+            Pair<String, Long> since = readTableLogRollBoundary(backupInfo.getTables());
+            if (since != null) {
+                props = getLogRollProcedureProps(backupInfo.getTables(), since);
+            } else {
+                LOG.info("No log roll boundary of the previous backup, rolling all the region servers");
+            }
+        }
+        if (props == null) {
+            props = getLogRollProcedureProps(null);
+        }
 
         try (Admin admin = conn.getAdmin()) {
             admin.execProcedure(LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_SIGNATURE,
@@ -97,7 +114,7 @@ public class IncrementalBackupManager extends BackupManager {
         logList = getLogFilesForNewBackup(previousTimestampMins, newTimestamps, conf, savedStartCode);
         List<WALItem> logFromSystemTable =
                 getLogFilesFromBackupSystem(previousTimestampMins, newTimestamps, getBackupInfo()
-                        .getBackupRootDir());
+                        .getBackupRootDir(), logList);
         logList = excludeAlreadyBackedUpWALs(logList, logFromSystemTable);
         backupInfo.setIncrBackupFileList(logList);
 
@@ -139,7 +156,7 @@ public class IncrementalBackupManager extends BackupManager {
         logList = getLogFilesForNewBackup(previousTimestampMins, newTimestamps, conf, savedStartCode);
         List<WALItem> logFromSystemTable =
                 getLogFilesFromBackupSystem(previousTimestampMins, newTimestamps, getBackupInfo()
-                        .getBackupRootDir());
+                        .getBackupRootDir(), logList);
 
         logList = excludeAlreadyBackedUpWALs(logList, logFromSystemTable);
         backupInfo.setIncrBackupFileList(logList);
@@ -180,50 +197,40 @@ public class IncrementalBackupManager extends BackupManager {
     }
 
     /**
-     * For each region server: get all log files newer than the last timestamps, but not newer than
-     * the newest timestamps.
+     * For each region server of the candidate log files: get the log files already backed up to the
+     * backup root, newer than the last timestamps but not newer than the newest timestamps.
      * @param olderTimestamps timestamp map for each region server of the last backup.
      * @param newestTimestamps timestamp map for each region server that the backup should lead to.
+     * @param backupRoot root directory path to backup destination
+     * @param logList candidate log files of the new backup
      * @return list of log files which needs to be added to this backup
      * @throws IOException if getting the WAL files from the backup system fails
      */
     private List<WALItem> getLogFilesFromBackupSystem(HashMap<String, Long> olderTimestamps,
-                                                      HashMap<String, Long> newestTimestamps, String backupRoot) throws IOException {
+                                                      HashMap<String, Long> newestTimestamps, String backupRoot,
+                                                      List<String> logList) throws IOException {
         List<WALItem> logFiles = new ArrayList<>();
-        Iterator<WALItem> it = getWALFilesFromBackupSystem();
-        while (it.hasNext()) {
-            WALItem item = it.next();
-            String rootDir = item.getBackupRoot();
-            if (!rootDir.equals(backupRoot)) {
-                continue;
-            }
-            String walFileName = item.getWalFile();
-            String server = BackupUtils.parseHostNameFromLogFile(new Path(walFileName));
-            if (server == null) {
-                continue;
+        // only the log files of the candidate servers can be excluded
+        Set<String> servers = new HashSet<>();
+        for (String log : logList) {
+            String server = BackupUtils.parseHostNameFromLogFile(new Path(log));
+            if (server != null) {
+                servers.add(server);
             }
-            Long tss = getTimestamp(walFileName);
+        }
+        if (servers.isEmpty()) {
+            return logFiles;
+        }
+        systemTable.migrateWALIndex();
+        for (String server : servers) {
             Long oldTss = olderTimestamps.get(server);
             Long newTss = newestTimestamps.get(server);
-            if (oldTss == null) {
-                logFiles.add(item);
-                continue;
-            }
-            if (newTss == null) {
-                newTss = Long.MAX_VALUE;
-            }
-            if (tss > oldTss && tss < newTss) {
-                logFiles.add(item);
-            }
+            logFiles.addAll(systemTable.getWALFiles(backupRoot, server,
+                    oldTss == null ? -1 : oldTss, oldTss == null || newTss == null ? Long.MAX_VALUE : newTss));
         }
         return logFiles;
     }
 
-    private Long getTimestamp(String walFileName) {
-        int index = walFileName.lastIndexOf(BackupUtils.LOGNAME_SEPARATOR);
-        return Long.parseLong(walFileName.substring(index + 1));
-    }
-
     /**
      * For each region server: get all log files newer than the last timestamps but not newer than the
      * newest timestamps.
@@ -240,6 +247,15 @@ public class IncrementalBackupManager extends BackupManager {
         LOG.debug("In getLogFilesForNewBackup()\n" + "olderTimestamps: " + olderTimestamps
                 + "\n newestTimestamps: " + newestTimestamps);
 
+        if (conf.getBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_WAL_CATALOG_ENABLED)) {
+            List<String> logFiles = getLogFilesFromWALCatalog(olderTimestamps, newestTimestamps,
+                    Long.parseLong(savedStartCode));
+            if (logFiles != null) {
+                return logFiles;
+            }
+        }
+
         Path walRootDir = CommonFSUtils.getWALRootDir(conf);
         Path logDir = new Path(walRootDir, HConstants.HREGION_LOGDIR_NAME);
         Path oldLogDir = new Path(walRootDir, HConstants.HREGION_OLDLOGDIR_NAME);
@@ -359,6 +375,90 @@ public class IncrementalBackupManager extends BackupManager {
         return resultLogFiles;
     }
 
+    /**
+     * Same as {@link #getLogFilesForNewBackup}, with range scans on the WAL catalog recorded by the
+     * region servers instead of listing the WAL directories. The catalog is only known to be
+     * complete when the region servers are the ones of the previous backup and all of them were
+     * already recording their WAL files at that time.
+     * @param olderTimestamps the timestamp for each region server of the last backup.
+     * @param newestTimestamps the timestamp for each region server that the backup should lead to.
+     * @param savedStartCode the startcode (timestamp) of last successful backup.
+     * @return a list of log files to be backed up, null if the catalog can not be used
+     * @throws IOException exception
+     */
+    private List<String> getLogFilesFromWALCatalog(HashMap<String, Long> olderTimestamps,
+                                                   HashMap<String, Long> newestTimestamps,
+                                                   long savedStartCode) throws IOException {
+        if (!olderTimestamps.keySet().equals(newestTimestamps.keySet())) {
+            LOG.info("Region servers changed since the previous backup, listing the WAL directories");
+            return null;
+        }
+        Map<String, Long> since = systemTable.readWALCatalogSince();
+        for (Map.Entry<String, Long> entry : since.entrySet()) {
+            // a region server came and went since the previous backup
+            if (!newestTimestamps.containsKey(entry.getKey()) && entry.getValue() >= savedStartCode) {
+                LOG.info("WAL catalog has unknown region server " + entry.getKey()
+                        + ", listing the WAL directories");
+                return null;
+            }
+        }
+
+        if (!isWALCatalogComplete(since, savedStartCode)) {
+            return null;
+        }
+
+        List<String> resultLogFiles = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : newestTimestamps.entrySet()) {
+            String host = entry.getKey();
+            long oldTimeStamp = olderTimestamps.get(host);
+            Long start = since.get(host);
+            if (start == null || start > oldTimeStamp) {
+                LOG.info("WAL catalog of " + host + " starts after the previous backup, listing the"
+                        + " WAL directories");
+                return null;
+            }
+            for (String file : systemTable.readWALCatalog(host, oldTimeStamp, entry.getValue())) {
+                if (!isMetaFile(new Path(file))) {
+                    resultLogFiles.add(file);
+                }
+            }
+        }
+        LOG.debug("Found " + resultLogFiles.size() + " log files in the WAL catalog");
+        return resultLogFiles;
+    }
+
+    /**
+     * Check that every region server the master knows of, online or dead, and started since the
+     * previous backup recorded its WAL files in the catalog. A region server dying before its
+     * first catalog flush left its edits in WAL files the catalog does not know.
+     * @param since WAL catalog start time by region server (host:port)
+     * @param savedStartCode the startcode (timestamp) of last successful backup.
+     * @return false if the WAL directories must be listed
+     * @throws IOException exception
+     */
+    private boolean isWALCatalogComplete(Map<String, Long> since, long savedStartCode)
+            throws IOException {
+        List<ServerName> servers = new ArrayList<>();
+        try (Admin admin = conn.getAdmin()) {
+            ClusterStatus status = admin.getClusterStatus();
+            servers.addAll(status.getServers());
+            servers.addAll(status.getDeadServerNames());
+        }
+        for (ServerName server : servers) {
+            if (server.getStartcode() < savedStartCode) {
+                continue;
+            }
+            // the catalog start of a host is the first WAL of its last recording incarnation
+            Long start = since.get(server.getHostAndPort());
+            if (start == null || start < server.getStartcode()) {
+                LOG.info("Region server " + server + " started since the previous backup is not in"
+                        + " the WAL catalog, listing the WAL directories");
+                return false;
+            }
+        }
+        return true;
+    }
+
     static class NewestLogFilter implements PathFilter {
         private Long lastBackupTS = 0L;
 
@@ -20,15 +20,22 @@ package org.apache.hadoop.hbase.backup.hbase1_2_1.impl;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupCopyJob;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupPhase;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRequest;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreFactory;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceBackupCopyJob;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.LocalWALPlayer;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALPlayer;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
@@ -57,6 +64,9 @@ import static org.apache.hadoop.hbase.backup.hbase1_2_1.util.AbstractFSWALProvid
 public class IncrementalTableBackupClient extends TableBackupClient {
     private static final Logger LOG = LoggerFactory.getLogger(IncrementalTableBackupClient.class);
 
+    // mini-increments of the continuous backup sealed in this backup
+    protected List<BackupSystemTable.MiniIncrement> sealedMinis = Collections.emptyList();
+
     protected IncrementalTableBackupClient() {
     }
 
@@ -315,6 +325,7 @@ public class IncrementalTableBackupClient extends TableBackupClient {
             handleBulkLoad(backupInfo.getTableNames());
             // backup complete
             completeBackup(conn, backupInfo, backupManager, BackupType.INCREMENTAL, conf);
+            deleteSealedMiniIncrements();
 
         } catch (IOException e) {
             failBackup(conn, backupInfo, backupManager, e, "Unexpected Exception : ",
@@ -380,8 +391,131 @@ public class IncrementalTableBackupClient extends TableBackupClient {
                 LOG.warn("Table " + table + " does not exists. Skipping in WAL converter");
             }
         }
-        walToHFiles(incrBackupFileList, tableList);
+        // the converters resolve the same settings from the configuration
+        List<HTableDescriptor> tableDescriptors = new ArrayList<>(tableList.size());
+        try (Admin admin = conn.getAdmin()) {
+            for (String table : tableList) {
+                tableDescriptors.add(admin.getTableDescriptor(TableName.valueOf(table)));
+            }
+        }
+        hfileSettings = BackupHFileSettings.create(conf, tableDescriptors);
+        LOG.debug("Backup HFile settings: " + hfileSettings);
+
+        List<BackupSystemTable.MiniIncrement> minis = claimMiniIncrements(incrBackupFileList, tableSet);
+        if (!minis.isEmpty()) {
+            Set<String> converted = new HashSet<>();
+            for (BackupSystemTable.MiniIncrement mini : minis) {
+                for (String file : mini.getWalFiles()) {
+                    converted.add(new Path(file).getName());
+                }
+            }
+            List<String> remaining = new ArrayList<>();
+            for (String file : incrBackupFileList) {
+                if (!converted.contains(new Path(file).getName())) {
+                    remaining.add(file);
+                }
+            }
+            LOG.info("Sealing " + minis.size() + " mini-increments of the continuous backup, "
+                    + remaining.size() + " of " + incrBackupFileList.size() + " WAL files left");
+            incrBackupFileList = remaining;
+        }
+        if (!incrBackupFileList.isEmpty() || minis.isEmpty()) {
+            walToHFiles(incrBackupFileList, tableList);
+        }
+        sealMiniIncrements(minis);
+        sealedMinis = minis;
+    }
+
+    /**
+     * Claim the mini-increments of the continuous backup which can be sealed in this backup: same
+     * table set and all their WAL files in the backup. The claimed mini-increments are removed
+     * once the backup completed, see {@link #deleteSealedMiniIncrements()}: they are claimed again
+     * by the next backup if this one fails.
+     *
+     * @param incrBackupFileList WAL files of the backup
+     * @param tableSet           incremental backup table set
+     * @return mini-increments to seal
+     * @throws IOException exception
+     */
+    protected List<BackupSystemTable.MiniIncrement> claimMiniIncrements(List<String> incrBackupFileList,
+                                                                        Set<TableName> tableSet)
+            throws IOException {
+        Set<String> names = new HashSet<>();
+        for (String file : incrBackupFileList) {
+            names.add(new Path(file).getName());
+        }
+        List<BackupSystemTable.MiniIncrement> minis = new ArrayList<>();
+        try (BackupSystemTable table = new BackupSystemTable(conn)) {
+            for (BackupSystemTable.MiniIncrement mini : table.getMiniIncrements(
+                    backupInfo.getBackupRootDir())) {
+                if (!new HashSet<>(mini.getTables()).equals(tableSet)) {
+                    continue;
+                }
+                boolean covered = true;
+                for (String file : mini.getWalFiles()) {
+                    covered &= names.contains(new Path(file).getName());
+                }
+                if (covered) {
+                    minis.add(mini);
+                }
+            }
+        }
+        return minis;
+    }
+
+    /**
+     * Copy the HFiles of the claimed mini-increments to the bulk output directory, copied with the
+     * HFiles converted by this backup. The mini-increments are left intact until the backup
+     * completed.
+     *
+     * @param minis claimed mini-increments
+     * @throws IOException exception
+     */
+    protected void sealMiniIncrements(List<BackupSystemTable.MiniIncrement> minis) throws IOException {
+        Path bulkOutputDir = getBulkOutputDir();
+        FileSystem tgtFs = bulkOutputDir.getFileSystem(conf);
+        for (BackupSystemTable.MiniIncrement mini : minis) {
+            Path dir = new Path(mini.getDir());
+            if (!tgtFs.exists(dir)) {
+                throw new IOException("Missing HFiles of " + mini);
+            }
+            String prefix = tgtFs.makeQualified(dir).toUri().getPath();
+            RemoteIterator<LocatedFileStatus> it = tgtFs.listFiles(dir, true);
+            while (it.hasNext()) {
+                Path file = it.next().getPath();
+                if (file.getName().startsWith("_") || file.getName().startsWith(".")) {
+                    continue;
+                }
+                Path target = new Path(bulkOutputDir,
+                        file.toUri().getPath().substring(prefix.length() + 1));
+                tgtFs.mkdirs(target.getParent());
+                if (!FileUtil.copy(tgtFs, file, tgtFs, target, false, conf)) {
+                    throw new IOException("Could not copy " + file + " to " + target);
+                }
+            }
+            LOG.debug("Sealed " + mini);
+        }
+    }
 
+    /**
+     * Remove the mini-increments sealed by this backup, once it completed. A mini-increment left
+     * behind is removed by the continuous backup service as obsolete.
+     */
+    protected void deleteSealedMiniIncrements() {
+        if (sealedMinis.isEmpty()) {
+            return;
+        }
+        try (BackupSystemTable table = new BackupSystemTable(conn)) {
+            table.deleteMiniIncrements(backupInfo.getBackupRootDir(), sealedMinis);
+            for (BackupSystemTable.MiniIncrement mini : sealedMinis) {
+                Path dir = new Path(mini.getDir());
+                if (!dir.getFileSystem(conf).delete(dir, true)) {
+                    LOG.warn("Could not delete " + dir);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not delete the sealed mini-increments " + sealedMinis, e);
+        }
     }
 
     protected boolean tableExists(TableName table, Connection conn) throws IOException {
@@ -391,7 +525,22 @@ public class IncrementalTableBackupClient extends TableBackupClient {
     }
 
     protected void walToHFiles(List<String> dirPaths, List<String> tableList) throws IOException {
-        Tool player = new WALPlayer();
+        long localMaxBytes = conf.getLong(BackupRestoreConstants.BACKUP_INCREMENTAL_LOCAL_MAX_BYTES_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_INCREMENTAL_LOCAL_MAX_BYTES);
+        if (localMaxBytes > 0) {
+            long size = LocalWALPlayer.getTotalSize(conf, dirPaths);
+            if (size <= localMaxBytes) {
+                // small enough: job submission and container startup would dominate
+                LOG.info("Converting " + size + " bytes of WAL files in process");
+                List<TableName> tables = new ArrayList<>(tableList.size());
+                for (String table : tableList) {
+                    tables.add(TableName.valueOf(table));
+                }
+                createLocalWALPlayer().run(dirPaths, tables, getBulkOutputDir());
+                return;
+            }
+        }
+        Tool player = createWALPlayer();
 
         // Player reads all files in arbitrary directory structure and creates
         // a Map task for each file. We use ';' as separator
@@ -422,6 +571,20 @@ public class IncrementalTableBackupClient extends TableBackupClient {
         }
     }
 
+    /**
+     * @return the in process converter of the WAL files small enough
+     */
+    protected LocalWALPlayer createLocalWALPlayer() {
+        return new LocalWALPlayer(conf, conn);
+    }
+
+    /**
+     * @return the MapReduce job converting the WAL files
+     */
+    protected Tool createWALPlayer() {
+        return new WALPlayer();
+    }
+
     protected Path getBulkOutputDirForTable(TableName table) {
         Path tablePath = getBulkOutputDir();
         tablePath = new Path(tablePath, table.getNamespaceAsString());
@@ -26,7 +26,9 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.HBackupFileSystem;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.RestoreRequest;
@@ -38,21 +40,45 @@ import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.yetus.audience.InterfaceAudience;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants.JOB_NAME_CONF_KEY;
 
 /**
  * Restore table implementation
- *
+ * <p>
+ * The tables are restored independently of each other, up to
+ * {@link BackupRestoreConstants#BACKUP_RESTORE_MAX_CONCURRENCY_KEY} at the same time. Each table
+ * is rolled back on its own when its restore fails, see {@link RestoreTool}.
  */
 @InterfaceAudience.Private
 public class RestoreTablesClient {
     private static final Log LOG = LogFactory.getLog(RestoreTablesClient.class);
 
+    /**
+     * Restore status of a table
+     */
+    public enum TableRestoreStatus {
+        PENDING, RUNNING, SUCCEEDED, FAILED, SKIPPED
+    }
+
     private Configuration conf;
     private Connection conn;
     private String backupId;
@@ -60,6 +86,7 @@ public class RestoreTablesClient {
     private TableName[] tTableArray;
     private String targetRootDir;
     private boolean isOverwrite;
+    private final Map<TableName, TableRestoreStatus> tableStatus = new ConcurrentHashMap<>();
 
     public RestoreTablesClient(Connection conn, RestoreRequest request) throws IOException {
         this.targetRootDir = request.getBackupRootDir();
@@ -133,6 +160,8 @@ public class RestoreTablesClient {
 
     private void restoreImages(BackupImage[] images, TableName sTable, TableName tTable,
                                boolean truncateIfExists) throws IOException {
+        // tables may be restored concurrently, the job settings are private to this table
+        Configuration conf = new Configuration(this.conf);
         // First image MUST be image of a FULL backup
         BackupImage image = images[0];
         String rootDir = image.getRootDir();
@@ -150,8 +179,6 @@ public class RestoreTablesClient {
 
             restoreTool.fullRestoreTable(conn, tableBackupPath, sTable, tTable, truncateIfExists,
                     lastIncrBackupId);
-
-            conf.unset(JOB_NAME_CONF_KEY);
         } else { // incremental Backup
             throw new IOException("Unexpected backup type " + image.getType());
         }
@@ -162,12 +189,19 @@ public class RestoreTablesClient {
         }
 
         List<Path> dirList = new ArrayList<>();
+        // the chain merge reads the image directories, oldest first
+        boolean chainMerge = conf.getBoolean(BackupRestoreConstants.BACKUP_RESTORE_CHAIN_MERGE_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_CHAIN_MERGE);
         // add full backup path
         // full backup path comes first
         for (int i = 1; i < images.length; i++) {
             BackupImage im = images[i];
             String fileBackupDir =
                     HBackupFileSystem.getTableBackupDir(im.getRootDir(), im.getBackupId(), sTable);
+            if (chainMerge) {
+                dirList.add(new Path(fileBackupDir));
+                continue;
+            }
             List<Path> list = getFilesRecursively(fileBackupDir);
             dirList.addAll(list);
 
@@ -198,43 +232,134 @@ public class RestoreTablesClient {
     }
 
     /**
-     * Restore operation. Stage 2: resolved Backup Image dependency
+     * Restore operation. Stage 2: resolved Backup Image dependency. Up to
+     * {@link BackupRestoreConstants#BACKUP_RESTORE_MAX_CONCURRENCY_KEY} tables are restored at the
+     * same time. The first failure stops starting new tables unless
+     * {@link BackupRestoreConstants#BACKUP_RESTORE_CONTINUE_ON_FAILURE_KEY} is set, the tables
+     * being restored are completed or rolled back.
      * @param backupManifestMap : tableName, Manifest
      * @param sTableArray The array of tables to be restored
      * @param tTableArray The array of mapping tables to restore to
-     * @throws IOException exception
+     * @throws IOException exception of the failed table, or listing the failed tables
      */
     private void restore(HashMap<TableName, BackupManifest> backupManifestMap,
                          TableName[] sTableArray, TableName[] tTableArray, boolean isOverwrite) throws IOException {
-        TreeSet<BackupImage> restoreImageSet = new TreeSet<>();
-
-        for (int i = 0; i < sTableArray.length; i++) {
-            TableName table = sTableArray[i];
-
-            BackupManifest manifest = backupManifestMap.get(table);
-            // Get the image list of this backup for restore in time order from old
-            // to new.
-            List<BackupImage> list = new ArrayList<>();
-            list.add(manifest.getBackupImage());
-            TreeSet<BackupImage> set = new TreeSet<>(list);
-            List<BackupImage> depList = manifest.getDependentListByTable(table);
-            set.addAll(depList);
-            BackupImage[] arr = new BackupImage[set.size()];
-            set.toArray(arr);
-            restoreImages(arr, table, tTableArray[i], isOverwrite);
-            restoreImageSet.addAll(list);
-            if (restoreImageSet != null && !restoreImageSet.isEmpty()) {
-                LOG.info("Restore includes the following image(s):");
-                for (BackupImage image : restoreImageSet) {
-                    LOG.info("Backup: " + image.getBackupId() + " "
-                            + HBackupFileSystem.getTableBackupDir(image.getRootDir(), image.getBackupId(),
-                            table));
+        int maxConcurrency = conf.getInt(BackupRestoreConstants.BACKUP_RESTORE_MAX_CONCURRENCY_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_MAX_CONCURRENCY);
+        boolean continueOnFailure = conf.getBoolean(
+                BackupRestoreConstants.BACKUP_RESTORE_CONTINUE_ON_FAILURE_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_CONTINUE_ON_FAILURE);
+        int threads = Math.max(1, Math.min(maxConcurrency, sTableArray.length));
+        LOG.info("Restoring " + sTableArray.length + " table(s) with " + threads + " thread(s)");
+        for (TableName table : sTableArray) {
+            tableStatus.put(table, TableRestoreStatus.PENDING);
+        }
+
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        AtomicInteger finished = new AtomicInteger();
+        Map<TableName, Exception> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+        ExecutorService executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("restore-" + backupId + "-"));
+        List<Future<?>> futures = new ArrayList<>(sTableArray.length);
+        try {
+            for (int i = 0; i < sTableArray.length; i++) {
+                TableName table = sTableArray[i];
+                TableName tTable = tTableArray[i];
+                futures.add(executor.submit(() -> {
+                    if (aborted.get()) {
+                        setStatus(table, tTable, TableRestoreStatus.SKIPPED, finished);
+                        return;
+                    }
+                    setStatus(table, tTable, TableRestoreStatus.RUNNING, null);
+                    try {
+                        restoreTable(backupManifestMap.get(table), table, tTable, isOverwrite);
+                        setStatus(table, tTable, TableRestoreStatus.SUCCEEDED, finished);
+                    } catch (Exception e) {
+                        LOG.error("Failed to restore " + table + " to " + tTable, e);
+                        failures.put(table, e);
+                        if (!continueOnFailure) {
+                            aborted.set(true);
+                        }
+                        setStatus(table, tTable, TableRestoreStatus.FAILED, finished);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            // no new table is started, the running ones are interrupted
+            aborted.set(true);
+            throw (InterruptedIOException) new InterruptedIOException(
+                    "Interrupted while restoring " + backupId).initCause(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            LOG.error("Restore of " + backupId + " failed, restore status: " + getTableStatus());
+            if (failures.size() == 1) {
+                Exception e = failures.values().iterator().next();
+                if (e instanceof IOException) {
+                    throw (IOException) e;
                 }
+                if (e instanceof RuntimeException) {
+                    throw (RuntimeException) e;
+                }
+                throw new IOException(e);
             }
+            throw new IOException("Failed to restore table(s) " + failures.keySet() + " of "
+                    + backupId, failures.values().iterator().next());
         }
         LOG.debug("restoreStage finished");
     }
 
+    /**
+     * Restore a single table from its image and the images it depends on
+     */
+    private void restoreTable(BackupManifest manifest, TableName table, TableName tTable,
+                              boolean isOverwrite) throws IOException {
+        // Get the image list of this backup for restore in time order from old
+        // to new.
+        List<BackupImage> list = new ArrayList<>();
+        list.add(manifest.getBackupImage());
+        TreeSet<BackupImage> set = new TreeSet<>(list);
+        List<BackupImage> depList = manifest.getDependentListByTable(table);
+        set.addAll(depList);
+        BackupImage[] arr = new BackupImage[set.size()];
+        set.toArray(arr);
+        restoreImages(arr, table, tTable, isOverwrite);
+        LOG.info("Restore includes the following image(s):");
+        for (BackupImage image : list) {
+            LOG.info("Backup: " + image.getBackupId() + " "
+                    + HBackupFileSystem.getTableBackupDir(image.getRootDir(), image.getBackupId(),
+                    table));
+        }
+    }
+
+    private void setStatus(TableName table, TableName tTable, TableRestoreStatus status,
+                           AtomicInteger finished) {
+        tableStatus.put(table, status);
+        if (finished == null) {
+            LOG.info("Restore of " + table + " to " + tTable + ": " + status);
+        } else {
+            LOG.info("Restore of " + table + " to " + tTable + ": " + status + " ("
+                    + finished.incrementAndGet() + "/" + tableStatus.size() + " tables done)");
+        }
+    }
+
+    /**
+     * Get the restore status of the tables, updated as the restore runs
+     * @return status of every source table of the restore
+     */
+    public Map<TableName, TableRestoreStatus> getTableStatus() {
+        return new TreeMap<>(tableStatus);
+    }
+
     static long getTsFromBackupId(String backupId) {
         if (backupId == null) {
             return 0;
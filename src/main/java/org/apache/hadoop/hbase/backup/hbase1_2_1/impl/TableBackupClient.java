@@ -29,6 +29,8 @@ import org.apache.hadoop.hbase.backup.hbase1_2_1.*;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupPhase;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupState;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManifest.BackupImage;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupRegionBoundaries;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
@@ -60,6 +62,10 @@ public abstract class TableBackupClient {
     protected String backupId;
     protected List<TableName> tableList;
     protected HashMap<String, Long> newTimestamps = null;
+    // settings of the HFiles written by the backup, recorded in the manifest when set
+    protected BackupHFileSettings hfileSettings = null;
+    // region boundaries of the tables of a full backup, recorded in the manifest when set
+    protected BackupRegionBoundaries regionBoundaries = null;
 
     protected BackupManager backupManager;
     protected BackupInfo backupInfo;
@@ -292,6 +298,8 @@ public abstract class TableBackupClient {
         // we'll store its manifest with the table directory.
         for (TableName table : backupInfo.getTables()) {
             manifest = new BackupManifest(backupInfo, table);
+            manifest.setHFileSettings(hfileSettings);
+            manifest.setRegionBoundaries(regionBoundaries);
             ArrayList<BackupImage> ancestors = backupManager.getAncestors(backupInfo, table);
             for (BackupImage image : ancestors) {
                 manifest.addDependentImage(image);
@@ -316,6 +324,7 @@ public abstract class TableBackupClient {
         // This is used when created the next incremental backup
         if (type == BackupType.INCREMENTAL) {
             manifest = new BackupManifest(backupInfo);
+            manifest.setHFileSettings(hfileSettings);
             // set the table region server start and end timestamps for incremental backup
             manifest.setIncrTimestampMap(backupInfo.getIncrTimestampMap());
             ArrayList<BackupImage> ancestors = backupManager.getAncestors(backupInfo);
@@ -22,14 +22,29 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupCopyJob;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.HBackupFileSystem;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManager;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileIndex;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.io.HFileLink;
+import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.SnapshotDescription;
+import org.apache.hadoop.hbase.protobuf.generated.SnapshotProtos.SnapshotRegionManifest;
 import org.apache.hadoop.hbase.snapshot.ExportSnapshot;
+import org.apache.hadoop.hbase.snapshot.SnapshotDescriptionUtils;
+import org.apache.hadoop.hbase.snapshot.SnapshotReferenceUtil;
+import org.apache.hadoop.hbase.util.FSUtils;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Cluster;
@@ -48,10 +63,17 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+import static org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants.BACKUP_FULL_DEDUP_ENABLED_KEY;
+import static org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants.BACKUP_FULL_DIFFERENTIAL_BASE_KEY;
+import static org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants.DEFAULT_BACKUP_FULL_DEDUP_ENABLED;
+
 /**
  * Map-Reduce implementation of {@link BackupCopyJob}. Basically, there are 2 types of copy
  * operation: one is copying from snapshot, which bases on extending ExportSnapshot's function, the
@@ -144,6 +166,29 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
                 + "\" has been updated to backup system table for " + backupInfo.getBackupId());
     }
 
+    /**
+     * Add the progress of a finished copy sub task to the ongoing backup. Copy tasks may run
+     * concurrently on the same copy job, so the sub task percentages are accumulated here instead
+     * of each task reporting its own percentage.
+     *
+     * @param backupInfo      backup info
+     * @param backupManager   backup manager
+     * @param subTaskProgress progress of the finished sub task within the whole task
+     * @param subTaskBytes    bytes copied by the finished sub task
+     * @throws IOException exception
+     */
+    protected synchronized void addSubTaskProgress(BackupInfo backupInfo,
+                                                   BackupManager backupManager, float subTaskProgress,
+                                                   long subTaskBytes) throws IOException {
+        progressDone = Math.min(1f, progressDone + subTaskProgress * (1 - INIT_PROGRESS));
+        bytesCopied += subTaskBytes;
+
+        BigDecimal progressData =
+                new BigDecimal(progressDone * 100).setScale(1, BigDecimal.ROUND_HALF_UP);
+        LOG.info("Progress: " + progressData + "%");
+        updateProgress(backupInfo, backupManager, progressData.intValue(), bytesCopied);
+    }
+
     /**
      * Extends DistCp for progress updating to backup system table
      * during backup. Using DistCpV2 (MAPREDUCE-2765).
@@ -157,6 +202,7 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
 
         private BackupInfo backupInfo;
         private BackupManager backupManager;
+        private boolean reportProgress = true;
 
         public BackupDistCp(Configuration conf, DistCpOptions options, BackupInfo backupInfo,
                             BackupManager backupManager) throws Exception {
@@ -165,6 +211,16 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
             this.backupManager = backupManager;
         }
 
+        /**
+         * Whether the copy progress is reported to the backup system table, true by default. The
+         * caller reports it otherwise.
+         *
+         * @param reportProgress report progress
+         */
+        void setReportProgress(boolean reportProgress) {
+            this.reportProgress = reportProgress;
+        }
+
 
         @Override
         public Job execute() throws Exception {
@@ -205,7 +261,7 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
                     float newProgress =
                             progressDone + job.mapProgress() * subTaskPercntgInWholeTask * (1 - INIT_PROGRESS);
 
-                    if (newProgress > lastProgress) {
+                    if (reportProgress && newProgress > lastProgress) {
 
                         BigDecimal progressData =
                                 new BigDecimal(newProgress * 100).setScale(1, BigDecimal.ROUND_HALF_UP);
@@ -228,13 +284,15 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
                 LOG.info("Progress: " + newProgressStr + " subTask: " + subTaskPercntgInWholeTask
                         + " mapProgress: " + job.mapProgress());
 
-                // accumulate the overall backup progress
-                progressDone = newProgress;
-                bytesCopied += totalSrcLgth;
+                if (reportProgress) {
+                    // accumulate the overall backup progress
+                    progressDone = newProgress;
+                    bytesCopied += totalSrcLgth;
 
-                updateProgress(backupInfo, backupManager, progressData.intValue(), bytesCopied);
-                LOG.debug("Backup progress data updated to backup system table: \"Progress: "
-                        + newProgressStr + " - " + bytesCopied + " bytes copied.\"");
+                    updateProgress(backupInfo, backupManager, progressData.intValue(), bytesCopied);
+                    LOG.debug("Backup progress data updated to backup system table: \"Progress: "
+                            + newProgressStr + " - " + bytesCopied + " bytes copied.\"");
+                }
             } catch (Throwable t) {
                 LOG.error(t.toString(), t);
                 throw t;
@@ -295,7 +353,7 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
         @Override
         protected Path createInputFileListing(Job job) throws IOException {
 
-            if (conf.get(NUMBER_OF_LEVELS_TO_PRESERVE_KEY) == null) {
+            if (getConf().get(NUMBER_OF_LEVELS_TO_PRESERVE_KEY) == null) {
                 return super.createInputFileListing(job);
             }
             long totalBytesExpected = 0;
@@ -331,7 +389,7 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
         }
 
         private Text getKey(Path path) {
-            int level = conf.getInt(NUMBER_OF_LEVELS_TO_PRESERVE_KEY, 1);
+            int level = getConf().getInt(NUMBER_OF_LEVELS_TO_PRESERVE_KEY, 1);
             int count = 0;
             String relPath = "";
             while (count++ < level) {
@@ -381,12 +439,19 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
         int res = 0;
 
         try {
-            if (copyType == BackupType.FULL) {
+            if (copyType == BackupType.FULL && (conf.get(BACKUP_FULL_DIFFERENTIAL_BASE_KEY) != null
+                    || conf.getBoolean(BACKUP_FULL_DEDUP_ENABLED_KEY, DEFAULT_BACKUP_FULL_DEDUP_ENABLED))) {
+                LOG.debug("Doing deduplicated SNAPSHOT_COPY");
+                res = copySnapshotDeduplicated(context, backupManager, conf, options);
+            } else if (copyType == BackupType.FULL) {
                 SnapshotCopy snapshotCp = new SnapshotCopy(context, context.getTableBySnapshot(options[1]));
                 LOG.debug("Doing SNAPSHOT_COPY");
                 // Make a new instance of conf to be used by the snapshot copy class.
                 snapshotCp.setConf(new Configuration(conf));
                 res = snapshotCp.run(options);
+                if (res == 0) {
+                    addSubTaskProgress(context, backupManager, subTaskPercntgInWholeTask, 0);
+                }
 
             } else if (copyType == BackupType.INCREMENTAL) {
                 LOG.debug("Doing COPY_TYPE_DISTCP");
@@ -416,6 +481,200 @@ public class MapReduceBackupCopyJob implements BackupCopyJob {
         }
     }
 
+    /**
+     * Visits the store files of a snapshot and splits them into the ones already stored under the
+     * backup root, according to the given {@link BackupHFileIndex} entries, and the ones to copy.
+     */
+    private static class StoreFileSelector implements SnapshotReferenceUtil.StoreFileVisitor {
+        private final Configuration conf;
+        private final FileSystem fs;
+        private final FileSystem backupFs;
+        private final Path backupRoot;
+        private final TableName table;
+        private final String backupId;
+        private final Map<String, BackupHFileIndex.Entry> index;
+        private final boolean checksums;
+
+        private final List<BackupHFileIndex.Entry> newIndex = new ArrayList<>();
+        private final List<BackupHFileIndex.Entry> shared = new ArrayList<>();
+        private final List<Pair<HFileLink, BackupHFileIndex.Entry>> toCopy = new ArrayList<>();
+        private long bytesToCopy = 0;
+        private long bytesShared = 0;
+
+        StoreFileSelector(Configuration conf, FileSystem fs, FileSystem backupFs, Path backupRoot,
+                          TableName table, String backupId, Map<String, BackupHFileIndex.Entry> index,
+                          boolean checksums) {
+            this.conf = conf;
+            this.fs = fs;
+            this.backupFs = backupFs;
+            this.backupRoot = backupRoot;
+            this.table = table;
+            this.backupId = backupId;
+            this.index = index;
+            this.checksums = checksums;
+        }
+
+        @Override
+        public void storeFile(HRegionInfo regionInfo, String family,
+                              SnapshotRegionManifest.StoreFile storeFile) throws IOException {
+            String region = regionInfo.getEncodedName();
+            String name = storeFile.getName();
+            HFileLink link = HFileLink.build(conf, table, region, family, name);
+            FileStatus status = link.getFileStatus(fs);
+
+            if (storeFile.hasReference()) {
+                // reference files are tiny and only make sense with their own image
+                toCopy.add(new Pair<>(link, new BackupHFileIndex.Entry(region, family, name,
+                        status.getLen(), BackupHFileIndex.NO_CHECKSUM, backupId)));
+                bytesToCopy += status.getLen();
+                return;
+            }
+
+            // store file names are unique, the checksum only guards the index against reused names
+            String checksum = checksums ? BackupHFileIndex.getChecksum(fs, status.getPath())
+                    : BackupHFileIndex.NO_CHECKSUM;
+            BackupHFileIndex.Entry entry = index.get(name);
+            if (entry != null && entry.isSameFile(status.getLen(), checksum)
+                    && backupFs.exists(entry.getPath(backupRoot, table))) {
+                shared.add(entry);
+                newIndex.add(entry);
+                bytesShared += status.getLen();
+            } else {
+                entry = new BackupHFileIndex.Entry(region, family, name, status.getLen(), checksum,
+                        backupId);
+                toCopy.add(new Pair<>(link, entry));
+                newIndex.add(entry);
+                bytesToCopy += status.getLen();
+            }
+        }
+    }
+
+    /**
+     * Copy a table snapshot to the backup destination, without the store files which are already
+     * stored under the backup root by a previous full backup: either the base image of a
+     * differential backup, or any image recorded in the store file index when deduplication is
+     * enabled. The image gets the same layout as with ExportSnapshot, the skipped store files are
+     * listed in the image instead, see {@link BackupHFileIndex}.
+     *
+     * @param context       The backup info
+     * @param backupManager backup manager
+     * @param conf          The hadoop configuration
+     * @param options       ExportSnapshot options: -snapshot name -copy-to dir
+     * @return result (0 - success)
+     * @throws Exception exception
+     */
+    private int copySnapshotDeduplicated(BackupInfo context, BackupManager backupManager,
+                                         Configuration conf, String[] options) throws Exception {
+        String snapshotName = options[1];
+        Path tableBackupDir = new Path(options[3]);
+        TableName table = context.getTableBySnapshot(snapshotName);
+        String backupId = context.getBackupId();
+        Path backupRoot = new Path(context.getBackupRootDir());
+        FileSystem backupFs = backupRoot.getFileSystem(conf);
+
+        Path rootDir = FSUtils.getRootDir(conf);
+        FileSystem fs = rootDir.getFileSystem(conf);
+        Path snapshotDir = SnapshotDescriptionUtils.getCompletedSnapshotDir(snapshotName, rootDir);
+        SnapshotDescription desc = SnapshotDescriptionUtils.readSnapshotInfo(fs, snapshotDir);
+
+        boolean dedup = conf.getBoolean(BACKUP_FULL_DEDUP_ENABLED_KEY, DEFAULT_BACKUP_FULL_DEDUP_ENABLED);
+        String baseBackupId = conf.get(BACKUP_FULL_DIFFERENTIAL_BASE_KEY);
+        Map<String, BackupHFileIndex.Entry> index = baseBackupId != null
+                ? BackupHFileIndex.readImage(conf, backupFs, backupRoot, baseBackupId, table)
+                : BackupHFileIndex.readIndex(backupFs, backupRoot, table);
+        StoreFileSelector selector = new StoreFileSelector(conf, fs, backupFs, backupRoot, table,
+                backupId, index, dedup);
+        SnapshotReferenceUtil.visitTableStoreFiles(conf, fs, snapshotDir, desc, selector);
+        LOG.info("Snapshot " + snapshotName + ": " + selector.toCopy.size() + " store files ("
+                + selector.bytesToCopy + " bytes) to copy, " + selector.shared.size()
+                + " store files (" + selector.bytesShared + " bytes) already in the backup root");
+
+        // snapshot metadata first, the image is not restorable without it
+        Path targetSnapshotDir =
+                SnapshotDescriptionUtils.getCompletedSnapshotDir(snapshotName, tableBackupDir);
+        if (!FileUtil.copy(fs, snapshotDir, backupFs, targetSnapshotDir, false, conf)) {
+            LOG.error("Could not copy snapshot " + snapshotDir + " to " + targetSnapshotDir);
+            return -1;
+        }
+
+        int res = copyStoreFiles(context, backupManager, conf, fs, backupFs, table,
+                selector.toCopy);
+        if (res != 0) {
+            return res;
+        }
+
+        BackupHFileIndex.writeSharedFiles(backupFs, backupRoot, backupId, table, selector.shared);
+        if (dedup) {
+            BackupHFileIndex.writeIndex(backupFs, backupRoot, table, selector.newIndex);
+        }
+        addSubTaskProgress(context, backupManager, subTaskPercntgInWholeTask, selector.bytesToCopy);
+        return 0;
+    }
+
+    /**
+     * Copy store files of the live table to the archive directory of the table backup image. A
+     * store file can get archived during the copy, the copy is retried for the files which did not
+     * make it from their new location.
+     */
+    private int copyStoreFiles(BackupInfo context, BackupManager backupManager, Configuration conf,
+                               FileSystem fs, FileSystem backupFs, TableName table,
+                               List<Pair<HFileLink, BackupHFileIndex.Entry>> files) throws Exception {
+        Path backupRoot = new Path(context.getBackupRootDir());
+        String backupId = context.getBackupId();
+        Path dest = new Path(new Path(HBackupFileSystem.getTableBackupPath(table, backupRoot, backupId),
+                HConstants.HFILE_ARCHIVE_DIRECTORY), HConstants.BASE_NAMESPACE_DIR);
+
+        Configuration copyConf = new Configuration(conf);
+        // Enable special mode of BackupDistCp: keep namespace/table/region/family/file
+        copyConf.setInt(NUMBER_OF_LEVELS_TO_PRESERVE_KEY, 5);
+        int maxAttempts = conf.getInt(BackupRestoreConstants.BACKUP_MAX_ATTEMPTS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_MAX_ATTEMPTS);
+
+        int res = 0;
+        int attempt = 0;
+        while (true) {
+            Map<Path, Long> copied = new HashMap<>();
+            if (backupFs.exists(dest)) {
+                RemoteIterator<LocatedFileStatus> it = backupFs.listFiles(dest, true);
+                while (it.hasNext()) {
+                    LocatedFileStatus status = it.next();
+                    copied.put(Path.getPathWithoutSchemeAndAuthority(status.getPath()),
+                            status.getLen());
+                }
+            }
+            List<String> srcs = new ArrayList<>();
+            for (Pair<HFileLink, BackupHFileIndex.Entry> file : files) {
+                Path target = file.getSecond().getPath(backupRoot, table);
+                Long len = copied.get(Path.getPathWithoutSchemeAndAuthority(target));
+                if (len == null || len != file.getSecond().getLength()) {
+                    srcs.add(file.getFirst().getAvailablePath(fs).toString());
+                }
+            }
+            if (srcs.isEmpty()) {
+                return 0;
+            }
+            if (attempt++ == maxAttempts) {
+                LOG.error(srcs.size() + " store files of " + table + " could not be copied");
+                return res != 0 ? res : -1;
+            }
+
+            LOG.info("Copy " + srcs.size() + " store files of " + table + " to " + dest
+                    + ". Attempt =" + attempt);
+            String[] args = new String[srcs.size() + 2];
+            args[0] = "-async"; // run DisCp in async mode
+            for (int i = 0; i < srcs.size(); i++) {
+                args[i + 1] = srcs.get(i);
+            }
+            args[args.length - 1] = dest.toString();
+            if (!backupFs.exists(dest)) {
+                backupFs.mkdirs(dest);
+            }
+            BackupDistCp distcp = new BackupDistCp(copyConf, null, context, backupManager);
+            distcp.setReportProgress(false);
+            res = distcp.run(args);
+        }
+    }
+
     @Override
     public void cancel(String jobId) throws IOException {
         JobID id = JobID.forName(jobId);
@@ -20,13 +20,16 @@ package org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
+import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupMergeJob;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.HBackupFileSystem;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManifest;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.regionserver.HRegionFileSystem;
@@ -57,6 +60,8 @@ public class MapReduceBackupMergeJob implements BackupMergeJob {
 
     protected Tool player;
     protected Configuration conf;
+    // settings of the merged HFiles, recorded in the manifest of the merged backup
+    protected BackupHFileSettings hfileSettings;
 
     public MapReduceBackupMergeJob() {
     }
@@ -126,6 +131,8 @@ public class MapReduceBackupMergeJob implements BackupMergeJob {
                 }
                 Configuration conf = getConf();
                 conf.set(bulkOutputConfKey, bulkOutputPath.toString());
+                // the merged images are backup data
+                conf.setBoolean(MapReduceHFileSplitterJob.BACKUP_HFILE_SETTINGS_KEY, true);
                 String[] playerArgs = {dirs, tableNames[i].getNameAsString()};
 
                 player.setConf(getConf());
@@ -138,7 +145,15 @@ public class MapReduceBackupMergeJob implements BackupMergeJob {
                 processedTableList.add(new Pair<>(tableNames[i], bulkOutputPath));
                 LOG.debug("Merge Job finished:" + result);
             }
+            getConf().unset(MapReduceHFileSplitterJob.BACKUP_HFILE_SETTINGS_KEY);
             List<TableName> tableList = toTableNameList(processedTableList);
+            List<HTableDescriptor> tableDescriptors = new ArrayList<>(tableList.size());
+            try (Admin admin = conn.getAdmin()) {
+                for (TableName tableName : tableList) {
+                    tableDescriptors.add(admin.getTableDescriptor(tableName));
+                }
+            }
+            hfileSettings = BackupHFileSettings.create(getConf(), tableDescriptors);
             table.updateProcessedTablesForMerge(tableList);
             finishedTables = true;
 
@@ -311,6 +326,9 @@ public class MapReduceBackupMergeJob implements BackupMergeJob {
         BackupManifest manifest =
                 HBackupFileSystem.getManifest(conf, new Path(backupRoot), mergedBackupId);
         manifest.getBackupImage().removeAncestors(backupsToDelete);
+        if (hfileSettings != null) {
+            manifest.setHFileSettings(hfileSettings);
+        }
 
         // save back
         manifest.store(conf);
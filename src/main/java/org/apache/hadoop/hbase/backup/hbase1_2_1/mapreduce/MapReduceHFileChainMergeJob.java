@@ -0,0 +1,610 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.HFileOutputFormat2;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALCellCombiner;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * A tool to merge the HFiles of a chain of incremental backup images of a table into HFiles
+ * aligned with the region boundaries of the restored table, as a map only MapReduce job. The tool
+ * generates HFiles for later bulk importing.
+ * <p>
+ * The HFiles of the images are sorted: the job has a map task per region of the table, which
+ * merges the HFiles of all the images overlapping the region with a k-way merge instead of
+ * shuffling and sorting every cell as {@link MapReduceHFileSplitterJob} does. While merging:
+ * <ul>
+ * <li>a cell found in several images is written once, from the newest image</li>
+ * <li>the put cells which can not be read once loaded because the column family keeps fewer
+ * versions are dropped, see {@link WALCellCombiner#getReachableCells(List, int)}</li>
+ * <li>the cells of the families missing from the table are dropped</li>
+ * </ul>
+ * The dropped cells are counted in the {@link #COUNTER_GROUP} counter group.
+ */
+@InterfaceAudience.Private
+public class MapReduceHFileChainMergeJob extends Configured implements Tool {
+    private static final Logger LOG = LoggerFactory.getLogger(MapReduceHFileChainMergeJob.class);
+    final static String NAME = "HFileChainMergeJob";
+    public final static String BULK_OUTPUT_CONF_KEY = MapReduceHFileSplitterJob.BULK_OUTPUT_CONF_KEY;
+    public final static String COUNTER_GROUP = "HFileChainMerge dropped cells";
+    final static String IMAGES_KEY = "hfile.chain.input.images";
+    final static String TABLE_KEY = "hfile.chain.output.table";
+    /**
+     * Prefix of the number of versions to keep of every family of the table, 0 means keep all the
+     * versions
+     */
+    final static String VERSIONS_KEY_PREFIX = "hfile.chain.versions.";
+    private final static String JOB_NAME_CONF_KEY = "mapreduce.job.name";
+
+    public MapReduceHFileChainMergeJob() {
+    }
+
+    protected MapReduceHFileChainMergeJob(final Configuration c) {
+        super(c);
+    }
+
+    /**
+     * The HFiles of the images overlapping a region of the table
+     */
+    static class RegionSplit extends InputSplit implements Writable {
+        private byte[] startRow;
+        private byte[] endRow;
+        private List<String> files;
+        // index of the image of every file, from the oldest image
+        private List<Integer> images;
+
+        public RegionSplit() {
+        }
+
+        RegionSplit(byte[] startRow, byte[] endRow) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.files = new ArrayList<>();
+            this.images = new ArrayList<>();
+        }
+
+        void add(String file, int image) {
+            files.add(file);
+            images.add(image);
+        }
+
+        @Override
+        public long getLength() {
+            return files.size();
+        }
+
+        @Override
+        public String[] getLocations() {
+            return new String[0];
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            Bytes.writeByteArray(out, startRow);
+            Bytes.writeByteArray(out, endRow);
+            WritableUtils.writeVInt(out, files.size());
+            for (int i = 0; i < files.size(); i++) {
+                WritableUtils.writeString(out, files.get(i));
+                WritableUtils.writeVInt(out, images.get(i));
+            }
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            startRow = Bytes.readByteArray(in);
+            endRow = Bytes.readByteArray(in);
+            int size = WritableUtils.readVInt(in);
+            files = new ArrayList<>(size);
+            images = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                files.add(WritableUtils.readString(in));
+                images.add(WritableUtils.readVInt(in));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "[" + Bytes.toStringBinary(startRow) + ", " + Bytes.toStringBinary(endRow) + "), "
+                    + files.size() + " files";
+        }
+    }
+
+    /**
+     * Splits the HFiles of the images by region of the table. The first and last rows of the
+     * HFiles are read by up to {@link BackupRestoreConstants#BACKUP_RESTORE_BOUNDARY_THREADS_KEY}
+     * threads.
+     */
+    static class RegionInputFormat extends InputFormat<NullWritable, NullWritable> {
+
+        @Override
+        public List<InputSplit> getSplits(JobContext context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            String[] imageDirs = conf.getStrings(IMAGES_KEY);
+            TableName tableName = TableName.valueOf(conf.get(TABLE_KEY));
+            byte[][] startKeys;
+            try (Connection conn = ConnectionFactory.createConnection(conf);
+                 RegionLocator locator = conn.getRegionLocator(tableName)) {
+                startKeys = locator.getStartKeys();
+            }
+            Arrays.sort(startKeys, Bytes.BYTES_COMPARATOR);
+            RegionSplit[] regions = new RegionSplit[startKeys.length];
+            for (int i = 0; i < startKeys.length; i++) {
+                regions[i] = new RegionSplit(startKeys[i],
+                        i + 1 < startKeys.length ? startKeys[i + 1] : HConstants.EMPTY_END_ROW);
+            }
+
+            int threads = Math.max(1, conf.getInt(BackupRestoreConstants.BACKUP_RESTORE_BOUNDARY_THREADS_KEY,
+                    BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_BOUNDARY_THREADS));
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                    new DaemonThreadFactory("restore-chain-splits-"));
+            try {
+                List<Future<byte[][]>> rows = new ArrayList<>();
+                List<Path> files = new ArrayList<>();
+                List<Integer> images = new ArrayList<>();
+                for (int image = 0; image < imageDirs.length; image++) {
+                    Path dir = new Path(imageDirs[image]);
+                    FileSystem fs = dir.getFileSystem(conf);
+                    if (!fs.exists(dir)) {
+                        continue;
+                    }
+                    RemoteIterator<LocatedFileStatus> it = fs.listFiles(dir, true);
+                    while (it.hasNext()) {
+                        Path file = it.next().getPath();
+                        if (file.getName().startsWith("_") || file.getName().startsWith(".")) {
+                            continue;
+                        }
+                        files.add(file);
+                        images.add(image);
+                        rows.add(executor.submit(() -> getFirstLastRow(fs, file, conf)));
+                    }
+                }
+                for (int i = 0; i < files.size(); i++) {
+                    byte[][] firstLast = rows.get(i).get();
+                    if (firstLast == null) {
+                        continue;
+                    }
+                    int first = getRegion(startKeys, firstLast[0]);
+                    int last = getRegion(startKeys, firstLast[1]);
+                    for (int region = first; region <= last; region++) {
+                        regions[region].add(files.get(i).toString(), images.get(i));
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw (InterruptedIOException) new InterruptedIOException(
+                        "Interrupted while reading the HFiles of " + Arrays.toString(imageDirs)).initCause(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            List<InputSplit> splits = new ArrayList<>();
+            for (RegionSplit region : regions) {
+                if (!region.files.isEmpty()) {
+                    splits.add(region);
+                }
+            }
+            LOG.info("Merging the HFiles of " + imageDirs.length + " images into " + splits.size()
+                    + " of the " + regions.length + " regions of " + tableName);
+            return splits;
+        }
+
+        /**
+         * @return the first and last rows of an HFile, null if the file is not an HFile or empty
+         */
+        private static byte[][] getFirstLastRow(FileSystem fs, Path file, Configuration conf)
+                throws IOException {
+            if (!HFile.isHFileFormat(fs, file)) {
+                return null;
+            }
+            HFile.Reader reader = HFile.createReader(fs, file, conf);
+            try {
+                reader.loadFileInfo();
+                if (reader.getEntries() == 0) {
+                    return null;
+                }
+                return new byte[][]{reader.getFirstRowKey(), reader.getLastRowKey()};
+            } finally {
+                reader.close();
+            }
+        }
+
+        private static int getRegion(byte[][] startKeys, byte[] row) {
+            int idx = Arrays.binarySearch(startKeys, row, Bytes.BYTES_COMPARATOR);
+            return idx >= 0 ? idx : Math.max(0, -(idx + 1) - 1);
+        }
+
+        @Override
+        public RecordReader<NullWritable, NullWritable> createRecordReader(InputSplit split,
+                                                                           TaskAttemptContext context) {
+            return new SingleRecordReader();
+        }
+    }
+
+    /**
+     * Gives a single record per split, the mapper merges the HFiles of the whole split at once
+     */
+    static class SingleRecordReader extends RecordReader<NullWritable, NullWritable> {
+        private boolean read = false;
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            if (read) {
+                return false;
+            }
+            read = true;
+            return true;
+        }
+
+        @Override
+        public NullWritable getCurrentKey() {
+            return NullWritable.get();
+        }
+
+        @Override
+        public NullWritable getCurrentValue() {
+            return NullWritable.get();
+        }
+
+        @Override
+        public float getProgress() {
+            return read ? 1.0f : 0.0f;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Position of the k-way merge in an HFile, restricted to the rows of a region
+     */
+    private static final class ImageScanner {
+        private final HFile.Reader reader;
+        private final HFileScanner scanner;
+        private final int image;
+        private byte[] endRow;
+        private KeyValue current;
+
+        ImageScanner(FileSystem fs, Path file, int image, Configuration conf) throws IOException {
+            this.reader = HFile.createReader(fs, file, conf);
+            this.reader.loadFileInfo();
+            this.scanner = reader.getScanner(false, false);
+            this.image = image;
+        }
+
+        /**
+         * Position on the first cell of the region
+         * @return false if the file has no cell in the region
+         */
+        boolean seek(byte[] startRow, byte[] endRow) throws IOException {
+            this.endRow = endRow;
+            boolean found;
+            if (startRow.length == 0) {
+                found = scanner.seekTo();
+            } else {
+                int result = scanner.seekTo(KeyValueUtil.createFirstOnRow(startRow));
+                // before the first cell, on the first cell of the row, or on the last cell before
+                found = result < 0 ? scanner.seekTo() : result == 0 || scanner.next();
+            }
+            return found && load();
+        }
+
+        boolean next() throws IOException {
+            return scanner.next() && load();
+        }
+
+        private boolean load() {
+            Cell cell = scanner.getKeyValue();
+            if (endRow.length > 0 && Bytes.compareTo(cell.getRowArray(), cell.getRowOffset(),
+                    cell.getRowLength(), endRow, 0, endRow.length) >= 0) {
+                current = null;
+                return false;
+            }
+            current = KeyValueUtil.copyToNewKeyValue(cell);
+            return true;
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close " + reader.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Merges the HFiles of a region split and writes the cells which will be read once loaded
+     */
+    static class ChainMergeMapper
+            extends Mapper<NullWritable, NullWritable, ImmutableBytesWritable, KeyValue> {
+
+        private Map<byte[], Integer> versionsMap;
+        private String table;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            table = conf.get(TABLE_KEY);
+            versionsMap = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+            for (Map.Entry<String, String> e : conf.getValByRegex(
+                    "^" + Pattern.quote(VERSIONS_KEY_PREFIX)).entrySet()) {
+                versionsMap.put(Bytes.toBytes(e.getKey().substring(VERSIONS_KEY_PREFIX.length())),
+                        Integer.parseInt(e.getValue()));
+            }
+        }
+
+        @Override
+        public void map(NullWritable key, NullWritable value, Context context)
+                throws IOException, InterruptedException {
+            RegionSplit split = (RegionSplit) context.getInputSplit();
+            Configuration conf = context.getConfiguration();
+            // the same cell of a newer image comes first
+            PriorityQueue<ImageScanner> heap = new PriorityQueue<>(Math.max(1, split.files.size()),
+                    (a, b) -> {
+                        int c = KeyValue.COMPARATOR.compareOnlyKeyPortion(a.current, b.current);
+                        return c != 0 ? c : Integer.compare(b.image, a.image);
+                    });
+            List<ImageScanner> scanners = new ArrayList<>(split.files.size());
+            long duplicates = 0;
+            long dropped = 0;
+            try {
+                for (int i = 0; i < split.files.size(); i++) {
+                    Path file = new Path(split.files.get(i));
+                    ImageScanner scanner =
+                            new ImageScanner(file.getFileSystem(conf), file, split.images.get(i), conf);
+                    scanners.add(scanner);
+                    if (scanner.seek(split.startRow, split.endRow)) {
+                        heap.add(scanner);
+                    }
+                }
+
+                List<KeyValue> row = new ArrayList<>();
+                KeyValue previous = null;
+                while (!heap.isEmpty()) {
+                    ImageScanner scanner = heap.poll();
+                    KeyValue kv = scanner.current;
+                    if (scanner.next()) {
+                        heap.add(scanner);
+                    }
+                    if (previous != null && KeyValue.COMPARATOR.compareOnlyKeyPortion(previous, kv) == 0) {
+                        duplicates++;
+                        continue;
+                    }
+                    if (!row.isEmpty() && !CellUtil.matchingRow(row.get(0), kv)) {
+                        dropped += writeRow(row, context);
+                        row.clear();
+                        context.progress();
+                    }
+                    row.add(kv);
+                    previous = kv;
+                }
+                if (!row.isEmpty()) {
+                    dropped += writeRow(row, context);
+                }
+            } finally {
+                for (ImageScanner scanner : scanners) {
+                    scanner.close();
+                }
+            }
+            if (duplicates + dropped > 0) {
+                context.getCounter(COUNTER_GROUP, table).increment(duplicates + dropped);
+            }
+            LOG.info("Merged " + split + ": " + duplicates + " cells superseded by newer images, "
+                    + dropped + " cells not reachable once loaded");
+        }
+
+        /**
+         * Write the reachable cells of a row, sorted by family
+         * @return number of dropped cells
+         */
+        private long writeRow(List<KeyValue> cells, Context context)
+                throws IOException, InterruptedException {
+            ImmutableBytesWritable row = new ImmutableBytesWritable(CellUtil.cloneRow(cells.get(0)));
+            long dropped = 0;
+            int familyStart = 0;
+            while (familyStart < cells.size()) {
+                int familyEnd = familyStart + 1;
+                while (familyEnd < cells.size()
+                        && CellUtil.matchingFamily(cells.get(familyStart), cells.get(familyEnd))) {
+                    familyEnd++;
+                }
+                List<KeyValue> family = cells.subList(familyStart, familyEnd);
+                Integer versions = versionsMap.get(CellUtil.cloneFamily(family.get(0)));
+                if (versions == null) {
+                    // the family is not part of the table any more
+                    dropped += family.size();
+                } else {
+                    List<KeyValue> reachable = WALCellCombiner.getReachableCells(family, versions);
+                    for (KeyValue kv : reachable) {
+                        context.write(row, kv);
+                    }
+                    dropped += family.size() - reachable.size();
+                }
+                familyStart = familyEnd;
+            }
+            return dropped;
+        }
+    }
+
+    /**
+     * Sets up the actual job.
+     *
+     * @param args The command line parameters.
+     * @return The newly created job.
+     * @throws IOException When setting up the job fails.
+     */
+    public Job createSubmittableJob(String[] args) throws IOException {
+        Configuration conf = getConf();
+        String imageDirs = args[0];
+        String tabName = args[1];
+        conf.set(IMAGES_KEY, imageDirs);
+        conf.set(TABLE_KEY, tabName);
+        String hfileOutPath = conf.get(BULK_OUTPUT_CONF_KEY);
+        if (hfileOutPath == null) {
+            throw new IOException("No bulk output directory specified");
+        }
+
+        Job job =
+                Job.getInstance(conf,
+                        conf.get(JOB_NAME_CONF_KEY, NAME + "_" + EnvironmentEdgeManager.currentTime()));
+        job.setJarByClass(MapReduceHFileChainMergeJob.class);
+        job.setInputFormatClass(RegionInputFormat.class);
+        job.setMapperClass(ChainMergeMapper.class);
+        job.setMapOutputKeyClass(ImmutableBytesWritable.class);
+        job.setMapOutputValueClass(KeyValue.class);
+        // every map task writes the sorted cells of a single region
+        job.setNumReduceTasks(0);
+        FileOutputFormat.setOutputPath(job, new Path(hfileOutPath));
+        LOG.debug("add chain merge job :" + hfileOutPath + " from " + imageDirs);
+        TableName tableName = TableName.valueOf(tabName);
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             Table table = conn.getTable(tableName)) {
+            HTableDescriptor tableDescriptor = table.getTableDescriptor();
+            HFileOutputFormat2.configureIncrementalLoadMap(job, tableDescriptor);
+            if (conf.getBoolean(MapReduceHFileSplitterJob.BACKUP_HFILE_SETTINGS_KEY, false)) {
+                BackupHFileSettings.create(conf, Collections.singletonList(tableDescriptor))
+                        .configure(job.getConfiguration());
+            }
+            for (HColumnDescriptor family : tableDescriptor.getColumnFamilies()) {
+                job.getConfiguration().setInt(VERSIONS_KEY_PREFIX + family.getNameAsString(),
+                        WALCellCombiner.getVersionsToKeep(family));
+            }
+        }
+        LOG.debug("success configuring chain merge job");
+
+        TableMapReduceUtil.addDependencyJars(job.getConfiguration(),
+                com.google.common.base.Preconditions.class);
+        return job;
+    }
+
+    /**
+     * Print usage
+     *
+     * @param errorMsg Error message. Can be null.
+     */
+    private void usage(final String errorMsg) {
+        if (errorMsg != null && errorMsg.length() > 0) {
+            System.err.println("ERROR: " + errorMsg);
+        }
+        System.err.println("Usage: " + NAME + " [options] <image dir(s), oldest first> <table>");
+        System.err.println("Merge the HFiles of incremental backup images of <table> at the <table> "
+                + "region boundaries.");
+        System.err.println("<table>  table to load.\n");
+        System.err.println("To generate HFiles for a bulk data load, pass the option:");
+        System.err.println("  -D" + BULK_OUTPUT_CONF_KEY + "=/path/for/output");
+        System.err.println("Other options:");
+        System.err.println("   -D " + JOB_NAME_CONF_KEY
+                + "=jobName - use the specified mapreduce job name for the HFile chain merge");
+        System.err.println("   -D " + MapReduceHFileSplitterJob.BACKUP_HFILE_SETTINGS_KEY
+                + "=true - write the HFiles with the backup HFile settings");
+        System.err.println("For performance also consider the following options:\n"
+                + "  -Dmapreduce.map.speculative=false");
+    }
+
+    /**
+     * Main entry point.
+     *
+     * @param args The command line parameters.
+     * @throws Exception When running the job fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int ret = ToolRunner.run(new MapReduceHFileChainMergeJob(HBaseConfiguration.create()), args);
+        System.exit(ret);
+    }
+
+    @Override
+    public int run(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage("Wrong number of arguments: " + args.length);
+            return -1;
+        }
+
+        Job job = createSubmittableJob(args);
+        return job.waitForCompletion(true) ? 0 : 1;
+    }
+}
@@ -21,6 +21,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.HFileOutputFormat2;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
@@ -42,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 
 /**
  * A tool to split HFiles into new region boundaries as a MapReduce job. The tool generates HFiles
@@ -53,6 +55,11 @@ public class MapReduceHFileSplitterJob extends Configured implements Tool {
     public final static String BULK_OUTPUT_CONF_KEY = "hfile.bulk.output";
     public final static String TABLES_KEY = "hfile.input.tables";
     public final static String TABLE_MAP_KEY = "hfile.input.tablesmap";
+    /**
+     * Write the HFiles with the backup HFile settings instead of the settings of the live table,
+     * set by the merges and by the restores keeping the backup settings.
+     */
+    public final static String BACKUP_HFILE_SETTINGS_KEY = "hfile.output.backup.settings";
     private final static String JOB_NAME_CONF_KEY = "mapreduce.job.name";
 
     public MapReduceHFileSplitterJob() {
@@ -117,7 +124,12 @@ public class MapReduceHFileSplitterJob extends Configured implements Tool {
             try (Connection conn = ConnectionFactory.createConnection(conf);
                  Table table = conn.getTable(tableName);
                  RegionLocator regionLocator = conn.getRegionLocator(tableName)) {
-                HFileOutputFormat2.configureIncrementalLoad(job, table.getTableDescriptor(), regionLocator);
+                HTableDescriptor tableDescriptor = table.getTableDescriptor();
+                HFileOutputFormat2.configureIncrementalLoad(job, tableDescriptor, regionLocator);
+                if (conf.getBoolean(BACKUP_HFILE_SETTINGS_KEY, false)) {
+                    BackupHFileSettings.create(conf, Collections.singletonList(tableDescriptor))
+                            .configure(job.getConfiguration());
+                }
             }
             LOG.debug("success configuring load incremental job");
 
@@ -146,6 +158,8 @@ public class MapReduceHFileSplitterJob extends Configured implements Tool {
         System.err.println("Other options:");
         System.err.println("   -D " + JOB_NAME_CONF_KEY
                 + "=jobName - use the specified mapreduce job name for the HFile splitter");
+        System.err.println("   -D " + BACKUP_HFILE_SETTINGS_KEY
+                + "=true - write the HFiles with the backup HFile settings");
         System.err.println("For performance also consider the following options:\n"
                 + "  -Dmapreduce.map.speculative=false\n" + "  -Dmapreduce.reduce.speculative=false");
     }
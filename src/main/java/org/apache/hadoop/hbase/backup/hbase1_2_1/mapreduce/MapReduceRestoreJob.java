@@ -42,7 +42,9 @@ import static org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils.succeed
  * <p>
  * For backup restore, it runs {@link MapReduceHFileSplitterJob} job and creates
  * HFiles which are aligned with a region boundaries of a table being
- * restored.
+ * restored. With {@link BackupRestoreConstants#BACKUP_RESTORE_CHAIN_MERGE_KEY}, an
+ * incremental restore gets the directories of the images instead and runs
+ * {@link MapReduceHFileChainMergeJob}.
  * <p>
  * The resulting HFiles then are loaded using HBase bulk load tool
  * {@link LoadIncrementalHFiles}
@@ -69,8 +71,13 @@ public class MapReduceRestoreJob implements RestoreJob {
 
         String bulkOutputConfKey;
 
-        player = new MapReduceHFileSplitterJob();
-        bulkOutputConfKey = MapReduceHFileSplitterJob.BULK_OUTPUT_CONF_KEY;
+        // the chain merge reads the incremental images, the splitter reads any HFile
+        boolean chainMerge = !fullBackupRestore && getConf().getBoolean(
+                BackupRestoreConstants.BACKUP_RESTORE_CHAIN_MERGE_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_CHAIN_MERGE);
+        player = createPlayer(chainMerge);
+        bulkOutputConfKey = chainMerge ? MapReduceHFileChainMergeJob.BULK_OUTPUT_CONF_KEY
+                : MapReduceHFileSplitterJob.BULK_OUTPUT_CONF_KEY;
         // Player reads all files in arbitrary directory structure and creates
         // a Map task for each file
         String dirs = StringUtils.join(dirPaths, ",");
@@ -95,8 +102,8 @@ public class MapReduceRestoreJob implements RestoreJob {
             String[] playerArgs =
                     {
                             dirs,
-                            fullBackupRestore ? newTableNames[i].getNameAsString() : tableNames[i]
-                                    .getNameAsString()};
+                            fullBackupRestore || chainMerge ? newTableNames[i].getNameAsString()
+                                    : tableNames[i].getNameAsString()};
 
             int result;
             int loaderResult;
@@ -133,6 +140,15 @@ public class MapReduceRestoreJob implements RestoreJob {
         }
     }
 
+    /**
+     * Create the job writing the HFiles to bulk load
+     * @param chainMerge true to merge a chain of incremental images, false to split HFiles
+     * @return the job tool
+     */
+    protected Tool createPlayer(boolean chainMerge) {
+        return chainMerge ? new MapReduceHFileChainMergeJob() : new MapReduceHFileSplitterJob();
+    }
+
     @Override
     public Configuration getConf() {
         return conf;
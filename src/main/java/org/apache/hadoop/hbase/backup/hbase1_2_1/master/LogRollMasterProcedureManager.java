@@ -18,35 +18,74 @@
 
 package org.apache.hadoop.hbase.backup.hbase1_2_1.master;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.CoordinatedStateManagerFactory;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManager;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.AbstractFSWALProviderUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.CommonFSUtils;
 import org.apache.hadoop.hbase.coordination.BaseCoordinatedStateManager;
 import org.apache.hadoop.hbase.errorhandling.ForeignException;
 import org.apache.hadoop.hbase.errorhandling.ForeignExceptionDispatcher;
 import org.apache.hadoop.hbase.master.MasterServices;
 import org.apache.hadoop.hbase.master.MetricsMaster;
+import org.apache.hadoop.hbase.master.RegionState;
+import org.apache.hadoop.hbase.master.RegionStates;
 import org.apache.hadoop.hbase.procedure.MasterProcedureManager;
 import org.apache.hadoop.hbase.procedure.Procedure;
 import org.apache.hadoop.hbase.procedure.ProcedureCoordinator;
 import org.apache.hadoop.hbase.procedure.ProcedureCoordinatorRpcs;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.NameStringPair;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.ProcedureDescription;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.zookeeper.KeeperException;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadPoolExecutor;
 
 public class LogRollMasterProcedureManager extends MasterProcedureManager {
 
     public static final String ROLLLOG_PROCEDURE_SIGNATURE = "rolllog-proc";
     public static final String ROLLLOG_PROCEDURE_NAME = "rolllog";
+    /**
+     * Procedure properties: the backup root, the optional log roll max age hint, see
+     * {@link BackupRestoreConstants#BACKUP_LOG_ROLL_MAX_AGE_MS_KEY}, the optional comma
+     * separated tables whose region servers are rolled, all of them by default, the boundary of
+     * the previous backup of these tables if their regions must not have moved since then, and
+     * whether the region servers return their roll result to the master, see
+     * {@link BackupRestoreConstants#BACKUP_LOG_ROLL_BATCH_RESULTS_KEY}
+     */
+    public static final String ROLLLOG_BACKUP_ROOT_PROP = "backupRoot";
+    public static final String ROLLLOG_MAX_AGE_MS_PROP = "maxAgeMs";
+    public static final String ROLLLOG_TABLES_PROP = "tables";
+    public static final String ROLLLOG_SINCE_PROP = "since";
+    public static final String ROLLLOG_SINCE_MASTER_PROP = "sinceMaster";
+    public static final String ROLLLOG_BARRIER_RESULT_PROP = "barrierResult";
+    /**
+     * Separates the backup root and the name=value options in the procedure data
+     */
+    public static final char ROLLLOG_DATA_SEPARATOR = '\u0000';
     public static final String BACKUP_WAKE_MILLIS_KEY = "hbase.backup.master.wake.millis";
     public static final String BACKUP_TIMEOUT_MILLIS_KEY = "hbase.backup.master.timeout.millis";
     public static final String BACKUP_POOL_THREAD_NUMBER_KEY = "hbase.backup.master.pool.thread.number";
@@ -61,6 +100,8 @@ public class LogRollMasterProcedureManager extends MasterProcedureManager {
     private MasterServices master;
     private ProcedureCoordinator coordinator;
     private boolean done;
+    // roll results returned as barrier data by the last procedure, null values if not asked for
+    private volatile Map<String, byte[]> lastRollResults;
 
     @Override
     public void stop(String why) {
@@ -116,18 +157,31 @@ public class LogRollMasterProcedureManager extends MasterProcedureManager {
         this.done = false;
         // start the process on the RS
         ForeignExceptionDispatcher monitor = new ForeignExceptionDispatcher(desc.getInstance());
+        Map<String, String> props = new HashMap<>();
+        for (NameStringPair pair : desc.getConfigurationList()) {
+            props.put(pair.getName(), pair.getValue());
+        }
+        if (!props.containsKey(ROLLLOG_BACKUP_ROOT_PROP) && desc.getConfigurationCount() > 0) {
+            // unnamed backup root
+            props.put(ROLLLOG_BACKUP_ROOT_PROP, desc.getConfiguration(0).getValue());
+        }
+        // the boundary of this roll, on the clock of the region states
+        long rollStart = EnvironmentEdgeManager.currentTime();
         List<ServerName> serverNames = master.getServerManager().getOnlineServersList();
+        Set<ServerName> targets = getTargetServers(props, serverNames);
         List<String> servers = new ArrayList<>();
+        List<ServerName> untargeted = new ArrayList<>();
         for (ServerName sn : serverNames) {
-            servers.add(sn.toString());
+            if (targets == null || targets.contains(sn)) {
+                servers.add(sn.toString());
+            } else {
+                untargeted.add(sn);
+            }
         }
+        LOG.info("Rolling the WALs of " + servers.size() + " of " + serverNames.size()
+                + " region servers");
 
-        List<NameStringPair> conf = desc.getConfigurationList();
-        byte[] data = new byte[0];
-        if (conf.size() > 0) {
-            // Get backup root path
-            data = conf.get(0).getValue().getBytes();
-        }
+        byte[] data = toProcedureData(props);
         Procedure proc = coordinator.startProcedure(monitor, desc.getInstance(), data, servers);
         if (proc == null) {
             String msg = "Failed to submit distributed procedure for '" + desc.getInstance() + "'";
@@ -138,9 +192,12 @@ public class LogRollMasterProcedureManager extends MasterProcedureManager {
         try {
             // wait for the procedure to complete. A timer thread is kicked off that should cancel this
             // if it takes too long.
-            proc.waitForCompleted();
+            Map<String, byte[]> rollResults = proc.waitForCompletedWithRet();
+            this.lastRollResults = rollResults;
             LOG.info("Done waiting - exec procedure for " + desc.getInstance());
             LOG.info("Distributed roll log procedure is successful!");
+            writeRollResults(Boolean.parseBoolean(props.get(ROLLLOG_BARRIER_RESULT_PROP))
+                    ? rollResults : null, untargeted, props.get(ROLLLOG_BACKUP_ROOT_PROP), rollStart);
             this.done = true;
         } catch (InterruptedException e) {
             ForeignException ee =
@@ -155,6 +212,182 @@ public class LogRollMasterProcedureManager extends MasterProcedureManager {
         monitor.rethrowException();
     }
 
+    @VisibleForTesting
+    Map<String, byte[]> getLastRollResults() {
+        return lastRollResults;
+    }
+
+    /**
+     * Get the region servers hosting the regions of tables. When the boundary of the previous
+     * backup is given, every region must be open on the same region server since then: the
+     * region states and the boundary are both taken on the clock of this master.
+     * @param props  procedure properties: the comma separated tables, null for all the region
+     *               servers, and the optional boundary of the previous backup
+     * @param online online region servers
+     * @return region servers to roll, null for all of them
+     */
+    private Set<ServerName> getTargetServers(Map<String, String> props, List<ServerName> online) {
+        String tables = props.get(ROLLLOG_TABLES_PROP);
+        if (tables == null || tables.isEmpty()) {
+            return null;
+        }
+        long since = -1;
+        if (props.containsKey(ROLLLOG_SINCE_PROP)) {
+            if (!master.getServerName().toString().equals(props.get(ROLLLOG_SINCE_MASTER_PROP))) {
+                LOG.info("Previous backup boundary taken by master "
+                        + props.get(ROLLLOG_SINCE_MASTER_PROP) + ", rolling all the region servers");
+                return null;
+            }
+            since = Long.parseLong(props.get(ROLLLOG_SINCE_PROP));
+        }
+        RegionStates regionStates = master.getAssignmentManager().getRegionStates();
+        Set<ServerName> targets = new HashSet<>();
+        for (String table : tables.split(",")) {
+            for (HRegionInfo region : regionStates.getRegionsOfTable(TableName.valueOf(table))) {
+                RegionState state = regionStates.getRegionState(region);
+                if (state == null || !state.isOpened() || !online.contains(state.getServerName())) {
+                    // in transition: its WAL edits may be anywhere
+                    LOG.info("Region " + region.getEncodedName() + " is not online, rolling all the"
+                            + " region servers");
+                    return null;
+                }
+                if (since >= 0 && state.getStamp() > since) {
+                    // moved since the previous backup: edits left in the WALs of its former server
+                    LOG.info("Region " + region.getEncodedName() + " assigned since the previous"
+                            + " backup, rolling all the region servers");
+                    return null;
+                }
+                targets.add(state.getServerName());
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Write in one batch the roll results returned by the rolled region servers and the last
+     * closed WAL file of the region servers which were not rolled: their WAL files up to it are
+     * complete. The current WAL file is left to the next backup which rolls the server, or to its
+     * next periodic roll. A result older than the recorded one is ignored. The boundary of the
+     * roll is written along.
+     * @param rollResults roll results by region server, null if written by the region servers
+     * @param untargeted  region servers not rolled
+     * @param backupRoot  root directory path to backup
+     * @param rollStart   time of this master when the roll started
+     * @throws IOException exception
+     */
+    private void writeRollResults(Map<String, byte[]> rollResults, List<ServerName> untargeted,
+                                  String backupRoot, long rollStart) throws IOException {
+        if (backupRoot == null) {
+            return;
+        }
+        Map<String, Long> results = new HashMap<>();
+        if (rollResults != null) {
+            for (Map.Entry<String, byte[]> entry : rollResults.entrySet()) {
+                if (entry.getValue() == null || entry.getValue().length != Bytes.SIZEOF_LONG) {
+                    throw new IOException("No roll result returned by " + entry.getKey());
+                }
+                ServerName sn = ServerName.parseServerName(entry.getKey());
+                results.put(sn.getHostname() + ":" + sn.getPort(), Bytes.toLong(entry.getValue()));
+            }
+        }
+        if (!untargeted.isEmpty()) {
+            Configuration conf = master.getConfiguration();
+            Path logDir = new Path(CommonFSUtils.getWALRootDir(conf),
+                    HConstants.HREGION_LOGDIR_NAME);
+            FileSystem fs = logDir.getFileSystem(conf);
+            for (ServerName sn : untargeted) {
+                long lastClosed = getLastClosedWAL(fs, new Path(logDir, sn.toString()));
+                if (lastClosed >= 0) {
+                    results.put(sn.getHostname() + ":" + sn.getPort(), lastClosed);
+                }
+            }
+        }
+        try (BackupSystemTable table = new BackupSystemTable(master.getConnection())) {
+            HashMap<String, Long> previous = table.readRegionServerLastLogRollResult(backupRoot);
+            Iterator<Map.Entry<String, Long>> it = results.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                Long sts = previous.get(entry.getKey());
+                if (sts != null && sts > entry.getValue()) {
+                    LOG.warn("Won't update server's last roll log result: current="
+                            + sts + " new=" + entry.getValue());
+                    it.remove();
+                }
+            }
+            table.writeRegionServerLastLogRollResults(results, backupRoot);
+            table.writeLogRollBoundary(backupRoot, master.getServerName().toString(), rollStart);
+        }
+    }
+
+    /**
+     * Get the creation time of the last closed WAL file of a region server
+     * @return creation time, -1 if the region server has no closed WAL file
+     */
+    private static long getLastClosedWAL(FileSystem fs, Path serverLogDir) throws IOException {
+        FileStatus[] logs;
+        try {
+            logs = fs.listStatus(serverLogDir);
+        } catch (FileNotFoundException e) {
+            return -1;
+        }
+        long newest = -1;
+        long lastClosed = -1;
+        for (FileStatus log : logs) {
+            if (AbstractFSWALProviderUtils.isMetaFile(log.getPath())) {
+                continue;
+            }
+            long ts = BackupUtils.getCreationTime(log.getPath());
+            if (ts > newest) {
+                lastClosed = newest;
+                newest = ts;
+            } else if (ts > lastClosed) {
+                lastClosed = ts;
+            }
+        }
+        return lastClosed;
+    }
+
+    /**
+     * Encode the procedure properties for the region servers: the backup root, followed by the
+     * region server options if any
+     */
+    static byte[] toProcedureData(Map<String, String> props) {
+        String backupRoot = props.get(ROLLLOG_BACKUP_ROOT_PROP);
+        if (backupRoot == null) {
+            return new byte[0];
+        }
+        StringBuilder sb = new StringBuilder(backupRoot);
+        String maxAge = props.get(ROLLLOG_MAX_AGE_MS_PROP);
+        if (maxAge != null && Long.parseLong(maxAge) > 0) {
+            sb.append(ROLLLOG_DATA_SEPARATOR).append(ROLLLOG_MAX_AGE_MS_PROP).append('=')
+                    .append(maxAge);
+        }
+        if (Boolean.parseBoolean(props.get(ROLLLOG_BARRIER_RESULT_PROP))) {
+            sb.append(ROLLLOG_DATA_SEPARATOR).append(ROLLLOG_BARRIER_RESULT_PROP).append("=true");
+        }
+        return sb.toString().getBytes();
+    }
+
+    /**
+     * Decode the procedure data on the region servers
+     * @param data procedure data
+     * @return procedure properties
+     */
+    public static Map<String, String> fromProcedureData(byte[] data) {
+        Map<String, String> props = new HashMap<>();
+        String[] parts = new String(data).split(String.valueOf(ROLLLOG_DATA_SEPARATOR));
+        if (parts.length > 0 && !parts[0].isEmpty()) {
+            props.put(ROLLLOG_BACKUP_ROOT_PROP, parts[0]);
+        }
+        for (int i = 1; i < parts.length; i++) {
+            int idx = parts[i].indexOf('=');
+            if (idx > 0) {
+                props.put(parts[i].substring(0, idx), parts[i].substring(idx + 1));
+            }
+        }
+        return props;
+    }
+
     private boolean isBackupEnabled() {
         return BackupManager.isBackupEnabled(master.getConfiguration());
     }
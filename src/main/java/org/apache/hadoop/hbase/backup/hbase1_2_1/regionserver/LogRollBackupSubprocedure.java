@@ -29,12 +29,15 @@ import org.apache.hadoop.hbase.procedure.ProcedureMember;
 import org.apache.hadoop.hbase.procedure.Subprocedure;
 import org.apache.hadoop.hbase.regionserver.RegionServerServices;
 import org.apache.hadoop.hbase.regionserver.wal.FSHLog;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
- * This backup subprocedure implementation forces a log roll on the RS.
+ * This backup subprocedure implementation forces a log roll on the RS, unless the current WAL file
+ * is empty or younger than the max age hint of the procedure.
  */
 public class LogRollBackupSubprocedure extends Subprocedure {
     private static final Log LOG = LogFactory.getLog(LogRollBackupSubprocedure.class);
@@ -43,18 +46,36 @@ public class LogRollBackupSubprocedure extends Subprocedure {
     private final LogRollBackupSubprocedurePool taskManager;
     private FSHLog hlog;
     private String backupRoot;
+    // skip the roll of a WAL file younger than this, 0 to always roll
+    private long maxAge = 0;
+    // return the roll result as barrier data for the master to write, instead of writing it
+    private boolean barrierResult = false;
+    private volatile Long rollResult;
+    private final WALCatalogRecorder walCatalogRecorder;
+    private final WALRollTracker walRollTracker;
 
     public LogRollBackupSubprocedure(RegionServerServices rss, ProcedureMember member,
                                      ForeignExceptionDispatcher errorListener, long wakeFrequency, long timeout,
-                                     LogRollBackupSubprocedurePool taskManager, byte[] data) {
+                                     LogRollBackupSubprocedurePool taskManager, byte[] data,
+                                     WALCatalogRecorder walCatalogRecorder,
+                                     WALRollTracker walRollTracker) {
 
         super(member, LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_NAME, errorListener,
                 wakeFrequency, timeout);
         LOG.info("Constructing a LogRollBackupSubprocedure.");
         this.rss = rss;
         this.taskManager = taskManager;
+        this.walCatalogRecorder = walCatalogRecorder;
+        this.walRollTracker = walRollTracker;
         if (data != null) {
-            backupRoot = new String(data);
+            Map<String, String> props = LogRollMasterProcedureManager.fromProcedureData(data);
+            backupRoot = props.get(LogRollMasterProcedureManager.ROLLLOG_BACKUP_ROOT_PROP);
+            if (props.containsKey(LogRollMasterProcedureManager.ROLLLOG_MAX_AGE_MS_PROP)) {
+                maxAge = Long.parseLong(
+                        props.get(LogRollMasterProcedureManager.ROLLLOG_MAX_AGE_MS_PROP));
+            }
+            barrierResult = Boolean.parseBoolean(
+                    props.get(LogRollMasterProcedureManager.ROLLLOG_BARRIER_RESULT_PROP));
         }
     }
 
@@ -72,20 +93,49 @@ public class LogRollBackupSubprocedure extends Subprocedure {
                 LOG.debug("++ DRPC started: " + rss.getServerName());
             }
             hlog = (FSHLog) rss.getWAL(null);
+            if (walCatalogRecorder != null) {
+                // no-op unless the WAL was not available when the region server started
+                walCatalogRecorder.start();
+            }
+            if (walRollTracker != null) {
+                walRollTracker.register(hlog);
+            }
             long filenum = hlog.getFilenum();
+            long skipFilenum = walRollTracker == null || maxAge <= 0 ? -1
+                    : walRollTracker.getRollSkipFilenum(filenum, maxAge,
+                    EnvironmentEdgeManager.currentTime());
+
+            if (skipFilenum >= 0) {
+                LOG.info("Skipping roll log in backup subprocedure, current log number: " + filenum
+                        + " is empty or younger than " + maxAge + " ms, last closed: " + skipFilenum);
+                filenum = skipFilenum;
+            } else {
+                LOG.info("Trying to roll log in backup subprocedure, current log number: " + filenum);
+                hlog.rollWriter(true);
+                LOG.info("After roll log in backup subprocedure, current log number: "
+                        + hlog.getFilenum());
+            }
 
-            LOG.info("Trying to roll log in backup subprocedure, current log number: " + filenum);
-            hlog.rollWriter(true);
-            LOG.info("After roll log in backup subprocedure, current log number: " + hlog.getFilenum());
-
+            if (barrierResult && walCatalogRecorder == null) {
+                // the master checks and writes the results of all the servers
+                rollResult = filenum;
+                return null;
+            }
             Connection connection = rss.getConnection();
             try (final BackupSystemTable table = new BackupSystemTable(connection)) {
+                // the WAL catalog must have the rolled WAL before the roll result is visible
+                if (walCatalogRecorder != null) {
+                    walCatalogRecorder.flush(table);
+                }
+                if (barrierResult) {
+                    rollResult = filenum;
+                    return null;
+                }
                 // sanity check, good for testing
-                HashMap<String, Long> serverTimestampMap = table.readRegionServerLastLogRollResult(backupRoot);
                 String host = rss.getServerName().getHostname();
                 int port = rss.getServerName().getPort();
                 String server = host + ":" + port;
-                Long sts = serverTimestampMap.get(host);
+                Long sts = table.readRegionServerLastLogRollResult(server, backupRoot);
                 if (sts != null && sts > filenum) {
                     LOG.warn("Won't update server's last roll log result: current="
                             + sts + " new=" + filenum);
@@ -119,12 +169,12 @@ public class LogRollBackupSubprocedure extends Subprocedure {
 
     /**
      * do a log roll.
-     * @return some bytes
+     * @return the roll result if returned as barrier data, null otherwise
      */
     @Override
     public byte[] insideBarrier() throws ForeignException {
         rolllog();
-        return null;
+        return barrierResult && rollResult != null ? Bytes.toBytes(rollResult) : null;
     }
 
     /**
@@ -13,6 +13,7 @@ import org.apache.hadoop.hbase.errorhandling.ForeignExceptionDispatcher;
 import org.apache.hadoop.hbase.procedure.*;
 import org.apache.hadoop.hbase.regionserver.HRegionServer;
 import org.apache.hadoop.hbase.regionserver.RegionServerServices;
+import org.apache.hadoop.hbase.regionserver.wal.FSHLog;
 
 import java.io.IOException;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -58,6 +59,8 @@ public class LogRollRegionServerProcedureManager extends RegionServerProcedureMa
     private ProcedureMemberRpcs memberRpcs;
     private ProcedureMember member;
     private boolean started = false;
+    private WALCatalogRecorder walCatalogRecorder;
+    private final WALRollTracker walRollTracker = new WALRollTracker();
 
     /**
      * Create a default backup procedure manager
@@ -76,6 +79,17 @@ public class LogRollRegionServerProcedureManager extends RegionServerProcedureMa
             return;
         }
         this.memberRpcs.start(rss.getServerName().toString(), member);
+        if (rss.getConfiguration().getBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_WAL_CATALOG_ENABLED)) {
+            walCatalogRecorder = new WALCatalogRecorder(rss);
+            walCatalogRecorder.start();
+        }
+        try {
+            // the WAL may not be available yet, the log roll subprocedure registers it then
+            walRollTracker.register((FSHLog) rss.getWAL(null));
+        } catch (IOException e) {
+            LOG.debug("WAL roll tracking not started yet", e);
+        }
         started = true;
         LOG.info("Started region server backup manager.");
     }
@@ -94,6 +108,9 @@ public class LogRollRegionServerProcedureManager extends RegionServerProcedureMa
         LOG.info("Stopping RegionServerBackupManager " + mode + ".");
 
         try {
+            if (walCatalogRecorder != null) {
+                walCatalogRecorder.stop();
+            }
             this.member.close();
         } finally {
             this.memberRpcs.close();
@@ -121,7 +138,7 @@ public class LogRollRegionServerProcedureManager extends RegionServerProcedureMa
         LogRollBackupSubprocedurePool taskManager =
                 new LogRollBackupSubprocedurePool(rss.getServerName().toString(), conf);
         return new LogRollBackupSubprocedure(rss, member, errorDispatcher, wakeMillis, timeoutMillis,
-                taskManager, data);
+                taskManager, data, walCatalogRecorder, walRollTracker);
     }
 
     /**
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.regionserver;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.regionserver.RegionServerServices;
+import org.apache.hadoop.hbase.regionserver.wal.FSHLog;
+import org.apache.hadoop.hbase.regionserver.wal.WALActionsListener;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Records the WAL files of the region server in the WAL catalog of the backup system table: every
+ * WAL file when it gets created, rolled and archived. The catalog lets incremental backups look
+ * up the WAL files created since the previous backup without listing the WAL directories.
+ * <p>
+ * WAL events are only queued by the listener, the WAL roller must never wait on the backup system
+ * table. The queue is flushed in background and by the log roll subprocedure of every backup,
+ * before the roll result is written. The first WAL file is flushed when the recording starts,
+ * waiting up to {@link BackupRestoreConstants#BACKUP_WAL_CATALOG_START_TIMEOUT_MS_KEY}.
+ */
+@InterfaceAudience.Private
+public class WALCatalogRecorder extends WALActionsListener.Base {
+    private static final Log LOG = LogFactory.getLog(WALCatalogRecorder.class);
+
+    private final RegionServerServices rss;
+    private final String server;
+    private final Object flushLock = new Object();
+    private List<String> pending = new ArrayList<>();
+    // creation time of the first recorded WAL, not yet written to the catalog if negative
+    private long since = -1;
+    private boolean sinceWritten = false;
+    private FSHLog wal;
+    private ScheduledExecutorService flusher;
+    // used by the background flusher only
+    private BackupSystemTable flusherTable;
+
+    public WALCatalogRecorder(RegionServerServices rss) {
+        this.rss = rss;
+        this.server = rss.getServerName().getHostAndPort();
+    }
+
+    /**
+     * Start recording the WAL files of the region server, if not yet done. The WAL may not be
+     * available yet while the region server starts, the log roll subprocedure calls it again.
+     * @return true if the recorder is registered on the WAL
+     */
+    public boolean start() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (wal != null) {
+                return true;
+            }
+            try {
+                FSHLog hlog = (FSHLog) rss.getWAL(null);
+                if (hlog == null) {
+                    return false;
+                }
+                hlog.registerWALActionsListener(this);
+                // WALs rolled from now on are seen by the listener, record the current one
+                Path current = hlog.getCurrentFileName();
+                since = hlog.getFilenum();
+                if (current != null) {
+                    pending.add(current.toString());
+                }
+                wal = hlog;
+            } catch (Exception e) {
+                LOG.warn("WAL catalog recording not started yet on " + server, e);
+                return false;
+            }
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    new DaemonThreadFactory("backup-wal-catalog-"));
+            executor = flusher;
+        }
+
+        long interval = rss.getConfiguration().getLong(
+                BackupRestoreConstants.BACKUP_WAL_CATALOG_FLUSH_INTERVAL_MS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_WAL_CATALOG_FLUSH_INTERVAL_MS);
+        // the first WAL is recorded before the region server opens regions: a region server dying
+        // before its first background flush would be unknown to the catalog
+        long timeout = rss.getConfiguration().getLong(
+                BackupRestoreConstants.BACKUP_WAL_CATALOG_START_TIMEOUT_MS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_WAL_CATALOG_START_TIMEOUT_MS);
+        try {
+            executor.submit(this::backgroundFlush).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.debug("First WAL catalog flush of " + server + " not done", e);
+        }
+        synchronized (this) {
+            if (!sinceWritten) {
+                LOG.warn("First WAL of " + server + " not recorded in the WAL catalog yet, the "
+                        + "incremental backups list the WAL directories until it is");
+            }
+        }
+        executor.scheduleWithFixedDelay(this::backgroundFlush, interval, interval,
+                TimeUnit.MILLISECONDS);
+        LOG.info("Started recording the WAL files of " + server + " since " + since);
+        return true;
+    }
+
+    /**
+     * Stop recording, the pending WAL events are flushed if possible.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (wal == null) {
+                return;
+            }
+            flusher.shutdownNow();
+            if (flusherTable != null) {
+                flusherTable.close();
+            }
+        }
+        try (BackupSystemTable table = new BackupSystemTable(rss.getConnection())) {
+            flush(table);
+        } catch (Exception e) {
+            LOG.warn("Failed to flush the WAL catalog of " + server + " on stop", e);
+        }
+    }
+
+    private void backgroundFlush() {
+        synchronized (this) {
+            if (pending.isEmpty() && (sinceWritten || since < 0)) {
+                return;
+            }
+        }
+        try {
+            if (flusherTable == null) {
+                flusherTable = new BackupSystemTable(rss.getConnection());
+            }
+            flush(flusherTable);
+        } catch (Exception e) {
+            LOG.warn("Failed to flush the WAL catalog of " + server + ", will retry", e);
+        }
+    }
+
+    @Override
+    public void postLogRoll(Path oldPath, Path newPath) throws IOException {
+        synchronized (this) {
+            if (oldPath != null) {
+                pending.add(oldPath.toString());
+            }
+            if (newPath != null) {
+                pending.add(newPath.toString());
+            }
+        }
+    }
+
+    @Override
+    public void postLogArchive(Path oldPath, Path newPath) throws IOException {
+        synchronized (this) {
+            pending.add(newPath.toString());
+        }
+    }
+
+    /**
+     * Write the pending WAL events to the catalog. Nothing is lost on failure, the events are
+     * written again by the next flush.
+     * @param table backup system table
+     * @throws IOException exception
+     */
+    public void flush(BackupSystemTable table) throws IOException {
+        // one flush at a time, the catalog keeps the last location of a WAL file
+        synchronized (flushLock) {
+            List<String> files;
+            long sinceTs;
+            boolean writeSince;
+            synchronized (this) {
+                files = pending;
+                pending = new ArrayList<>();
+                sinceTs = since;
+                writeSince = !sinceWritten && since >= 0;
+            }
+            try {
+                if (!files.isEmpty()) {
+                    table.addWALCatalogEntries(server, files);
+                }
+                // the start is only valid once the WALs since then are in the catalog
+                if (writeSince) {
+                    table.writeWALCatalogSince(server, sinceTs);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    files.addAll(pending);
+                    pending = files;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                if (writeSince) {
+                    sinceWritten = true;
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Flushed " + files.size() + " WAL catalog entries of " + server);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.regionserver;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.regionserver.wal.FSHLog;
+import org.apache.hadoop.hbase.regionserver.wal.WALActionsListener;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALKey;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.IOException;
+
+/**
+ * Tracks the last WAL file closed by the region server and whether the current WAL file received
+ * edits, so that the log roll subprocedure can skip rolling a WAL file which is empty or young
+ * and report the last closed WAL file instead: all the edits up to that file are in closed files.
+ * <p>
+ * The current WAL file itself is never reported without a roll, the edits it receives after the
+ * backup would be lost for the next one.
+ */
+@InterfaceAudience.Private
+public class WALRollTracker extends WALActionsListener.Base {
+    private static final Log LOG = LogFactory.getLog(WALRollTracker.class);
+
+    private FSHLog wal;
+    // creation time of the last closed WAL file and of the WAL file which replaced it, -1 if unknown
+    private long lastClosed = -1;
+    private long current = -1;
+    private volatile boolean currentHasEdits = true;
+
+    /**
+     * Start tracking the rolls of a WAL, if not yet done. Nothing is known until its next roll.
+     * @param hlog WAL of the region server
+     */
+    public synchronized void register(FSHLog hlog) {
+        if (wal != null || hlog == null) {
+            return;
+        }
+        hlog.registerWALActionsListener(this);
+        wal = hlog;
+    }
+
+    /**
+     * Get the WAL file to report instead of rolling the current one
+     * @param filenum creation time of the current WAL file
+     * @param maxAge  maximum age of the current WAL file in milliseconds
+     * @param now     current time
+     * @return creation time of the last closed WAL file, -1 if the current WAL file must be rolled
+     */
+    public synchronized long getRollSkipFilenum(long filenum, long maxAge, long now) {
+        // the rolls seen by the tracker must lead to the current WAL file
+        if (lastClosed < 0 || current != filenum) {
+            return -1;
+        }
+        if (currentHasEdits && now - filenum >= maxAge) {
+            return -1;
+        }
+        return lastClosed;
+    }
+
+    @Override
+    public void preLogRoll(Path oldPath, Path newPath) throws IOException {
+        // edits appended until the new writer is in place go to the old file
+        currentHasEdits = false;
+    }
+
+    @Override
+    public void postLogRoll(Path oldPath, Path newPath) throws IOException {
+        long closed = oldPath != null ? BackupUtils.getCreationTime(oldPath) : -1;
+        long created = newPath != null ? BackupUtils.getCreationTime(newPath) : -1;
+        synchronized (this) {
+            lastClosed = closed;
+            current = created;
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("WAL rolled from " + oldPath + " to " + newPath);
+        }
+    }
+
+    @Override
+    public void visitLogEntryBeforeWrite(HRegionInfo info, WALKey logKey, WALEdit logEdit) {
+        currentHasEdits = true;
+    }
+
+    @Override
+    public void visitLogEntryBeforeWrite(HTableDescriptor htd, WALKey logKey, WALEdit logEdit)
+            throws IOException {
+        currentHasEdits = true;
+    }
+}
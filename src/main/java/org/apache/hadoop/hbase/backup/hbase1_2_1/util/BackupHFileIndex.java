@@ -0,0 +1,455 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hbase.backup.hbase1_2_1.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.HBackupFileSystem;
+import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.SnapshotDescription;
+import org.apache.hadoop.hbase.protobuf.generated.SnapshotProtos.SnapshotRegionManifest;
+import org.apache.hadoop.hbase.snapshot.SnapshotDescriptionUtils;
+import org.apache.hadoop.hbase.snapshot.SnapshotReferenceUtil;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the store files kept by the full backups of a backup root, used to avoid exporting
+ * again the (immutable) store files which did not change since the previous full backup.
+ * <p>
+ * The index of a table lives in "backupRoot/.hfile-index/namespace/table" and lists, for every
+ * store file of the last full backup of the table, its name, length, checksum and the backup
+ * image which physically holds it. A full backup which re-uses store files of a previous image
+ * records them in "tableBackupDir/.shared-hfiles" instead of copying them; restore reads them
+ * from their owner image, and deleting the owner image moves them to the next image using them.
+ */
+@InterfaceAudience.Private
+public final class BackupHFileIndex {
+    private static final Log LOG = LogFactory.getLog(BackupHFileIndex.class);
+
+    public static final String INDEX_DIR = ".hfile-index";
+    public static final String SHARED_FILES_NAME = ".shared-hfiles";
+
+    public static final String NO_CHECKSUM = "-";
+    private static final String SEPARATOR = "\t";
+
+    private BackupHFileIndex() {
+        throw new AssertionError("Instantiating utility class...");
+    }
+
+    /**
+     * A store file stored in a full backup image
+     */
+    public static class Entry {
+        private final String region;
+        private final String family;
+        private final String name;
+        private final long length;
+        private final String checksum;
+        private String backupId;
+
+        public Entry(String region, String family, String name, long length, String checksum,
+                     String backupId) {
+            this.region = region;
+            this.family = family;
+            this.name = name;
+            this.length = length;
+            this.checksum = checksum;
+            this.backupId = backupId;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public String getFamily() {
+            return family;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * @return id of the backup image which holds the file
+         */
+        public String getBackupId() {
+            return backupId;
+        }
+
+        void setBackupId(String backupId) {
+            this.backupId = backupId;
+        }
+
+        /**
+         * Check whether the entry describes the given file. The checksums are only compared when
+         * both are known, file systems without checksum support fall back to the name and length.
+         * @param length file length
+         * @param checksum file checksum, see {@link #getChecksum(FileSystem, Path)}
+         * @return true if same file
+         */
+        public boolean isSameFile(long length, String checksum) {
+            if (this.length != length) {
+                return false;
+            }
+            return NO_CHECKSUM.equals(this.checksum) || NO_CHECKSUM.equals(checksum)
+                    || this.checksum.equals(checksum);
+        }
+
+        /**
+         * Location of the file in its owner image, the same location ExportSnapshot copies it to:
+         * "tableBackupDir/archive/data/namespace/table/region/family/name"
+         * @param backupRoot backup root
+         * @param table table
+         * @return path of the file
+         */
+        public Path getPath(Path backupRoot, TableName table) {
+            return getPath(backupRoot, table, backupId);
+        }
+
+        Path getPath(Path backupRoot, TableName table, String imageId) {
+            Path archive = new Path(HBackupFileSystem.getTableBackupPath(table, backupRoot, imageId),
+                    HConstants.HFILE_ARCHIVE_DIRECTORY);
+            Path tableDir = new Path(new Path(new Path(archive, HConstants.BASE_NAMESPACE_DIR),
+                    table.getNamespaceAsString()), table.getQualifierAsString());
+            return new Path(new Path(new Path(tableDir, region), family), name);
+        }
+
+        @Override
+        public String toString() {
+            return region + SEPARATOR + family + SEPARATOR + name + SEPARATOR + length + SEPARATOR
+                    + checksum + SEPARATOR + backupId;
+        }
+
+        static Entry parse(String line) throws IOException {
+            String[] parts = line.split(SEPARATOR);
+            if (parts.length != 6) {
+                throw new IOException("Malformed store file index entry: " + line);
+            }
+            return new Entry(parts[0], parts[1], parts[2], Long.parseLong(parts[3]), parts[4],
+                    parts[5]);
+        }
+    }
+
+    /**
+     * Get the checksum of a file as stored in the index
+     * @param fs file system
+     * @param path file
+     * @return checksum, or {@link #NO_CHECKSUM} if the file system does not support checksums
+     * @throws IOException exception
+     */
+    public static String getChecksum(FileSystem fs, Path path) throws IOException {
+        FileChecksum checksum = fs.getFileChecksum(path);
+        if (checksum == null) {
+            return NO_CHECKSUM;
+        }
+        return checksum.getAlgorithmName() + ":" + StringUtils.byteToHexString(checksum.getBytes());
+    }
+
+    public static Path getIndexPath(Path backupRoot, TableName table) {
+        return new Path(new Path(new Path(backupRoot, INDEX_DIR), table.getNamespaceAsString()),
+                table.getQualifierAsString());
+    }
+
+    public static Path getSharedFilesPath(Path backupRoot, String backupId, TableName table) {
+        return new Path(HBackupFileSystem.getTableBackupPath(table, backupRoot, backupId),
+                SHARED_FILES_NAME);
+    }
+
+    /**
+     * Read the store file index of a table
+     * @param fs backup file system
+     * @param backupRoot backup root
+     * @param table table
+     * @return map of entries by store file name, empty if the table has no index yet
+     * @throws IOException exception
+     */
+    public static Map<String, Entry> readIndex(FileSystem fs, Path backupRoot, TableName table)
+            throws IOException {
+        Map<String, Entry> index = new HashMap<>();
+        for (Entry entry : readEntries(fs, getIndexPath(backupRoot, table))) {
+            index.put(entry.getName(), entry);
+        }
+        return index;
+    }
+
+    public static void writeIndex(FileSystem fs, Path backupRoot, TableName table,
+                                  Collection<Entry> entries) throws IOException {
+        writeEntries(fs, getIndexPath(backupRoot, table), entries);
+    }
+
+    /**
+     * Read the store files of a full backup image of a table from the snapshot manifest stored in
+     * the image. The store files the image shares with previous images keep their owner.
+     * @param conf configuration
+     * @param fs backup file system
+     * @param backupRoot backup root
+     * @param backupId backup id of the image
+     * @param table table
+     * @return map of entries by store file name, empty if the image has no snapshot of the table
+     * @throws IOException exception
+     */
+    public static Map<String, Entry> readImage(Configuration conf, final FileSystem fs,
+                                               final Path backupRoot, final String backupId,
+                                               final TableName table) throws IOException {
+        final Map<String, Entry> image = new HashMap<>();
+        Path snapshotsDir = new Path(HBackupFileSystem.getTableBackupPath(table, backupRoot, backupId),
+                HConstants.SNAPSHOT_DIR_NAME);
+        Path snapshotDir = null;
+        if (fs.exists(snapshotsDir)) {
+            for (FileStatus status : fs.listStatus(snapshotsDir)) {
+                // skip the working directory of the export
+                if (status.isDirectory() && !status.getPath().getName().startsWith(".")) {
+                    snapshotDir = status.getPath();
+                }
+            }
+        }
+        if (snapshotDir == null) {
+            LOG.warn("No snapshot of " + table + " found in " + snapshotsDir);
+            return image;
+        }
+
+        final Map<String, Entry> shared = new HashMap<>();
+        for (Entry entry : readSharedFiles(fs, backupRoot, backupId, table)) {
+            shared.put(entry.getName(), entry);
+        }
+        SnapshotDescription desc = SnapshotDescriptionUtils.readSnapshotInfo(fs, snapshotDir);
+        SnapshotReferenceUtil.visitTableStoreFiles(conf, fs, snapshotDir, desc,
+                new SnapshotReferenceUtil.StoreFileVisitor() {
+                    @Override
+                    public void storeFile(HRegionInfo regionInfo, String family,
+                                          SnapshotRegionManifest.StoreFile storeFile)
+                            throws IOException {
+                        if (storeFile.hasReference()) {
+                            return;
+                        }
+                        String name = storeFile.getName();
+                        Entry entry = shared.get(name);
+                        if (entry == null) {
+                            String region = regionInfo.getEncodedName();
+                            long length = storeFile.hasFileSize() ? storeFile.getFileSize() : -1;
+                            entry = new Entry(region, family, name, length, NO_CHECKSUM, backupId);
+                            if (length < 0) {
+                                // manifest written without file sizes
+                                length = fs.getFileStatus(entry.getPath(backupRoot, table)).getLen();
+                                entry = new Entry(region, family, name, length, NO_CHECKSUM,
+                                        backupId);
+                            }
+                        }
+                        image.put(name, entry);
+                    }
+                });
+        return image;
+    }
+
+    /**
+     * Read the store files a full backup image shares with previous images
+     * @param fs backup file system
+     * @param backupRoot backup root
+     * @param backupId backup id
+     * @param table table
+     * @return shared store files, empty if none
+     * @throws IOException exception
+     */
+    public static List<Entry> readSharedFiles(FileSystem fs, Path backupRoot, String backupId,
+                                              TableName table) throws IOException {
+        return readEntries(fs, getSharedFilesPath(backupRoot, backupId, table));
+    }
+
+    public static void writeSharedFiles(FileSystem fs, Path backupRoot, String backupId,
+                                        TableName table, Collection<Entry> entries) throws IOException {
+        Path path = getSharedFilesPath(backupRoot, backupId, table);
+        if (entries.isEmpty()) {
+            fs.delete(path, false);
+            return;
+        }
+        writeEntries(fs, path, entries);
+    }
+
+    /**
+     * Get the location of the store files a full backup image shares with previous images
+     * @param fs backup file system
+     * @param backupRoot backup root
+     * @param backupId backup id
+     * @param table table
+     * @return paths of the shared store files in their owner images
+     * @throws IOException exception
+     */
+    public static List<Path> getSharedFilePaths(FileSystem fs, Path backupRoot, String backupId,
+                                                TableName table) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (Entry entry : readSharedFiles(fs, backupRoot, backupId, table)) {
+            paths.add(entry.getPath(backupRoot, table));
+        }
+        return paths;
+    }
+
+    /**
+     * Release the store files a full backup image holds for later images before it gets deleted:
+     * every such store file is moved to the oldest later image using it, which becomes its new
+     * owner.
+     * @param conf configuration
+     * @param backupInfo backup being deleted
+     * @param history backup history of the backup root
+     * @throws IOException exception
+     */
+    public static void releaseBackup(Configuration conf, BackupInfo backupInfo,
+                                     List<BackupInfo> history) throws IOException {
+        if (backupInfo.getType() != BackupType.FULL) {
+            return;
+        }
+        Path backupRoot = new Path(backupInfo.getBackupRootDir());
+        FileSystem fs = backupRoot.getFileSystem(conf);
+        String backupId = backupInfo.getBackupId();
+
+        for (TableName table : backupInfo.getTableNames()) {
+            // later full images of the table, oldest first
+            List<BackupInfo> images = new ArrayList<>();
+            for (BackupInfo info : history) {
+                if (info.getType() == BackupType.FULL && info.getStartTs() > backupInfo.getStartTs()
+                        && info.getBackupRootDir().equals(backupInfo.getBackupRootDir())
+                        && info.getTableNames().contains(table)) {
+                    images.add(info);
+                }
+            }
+            images.sort(Comparator.comparingLong(BackupInfo::getStartTs));
+
+            Map<String, String> newOwners = new HashMap<>();
+            for (BackupInfo image : images) {
+                List<Entry> shared = readSharedFiles(fs, backupRoot, image.getBackupId(), table);
+                List<Entry> stillShared = new ArrayList<>(shared.size());
+                boolean changed = false;
+                for (Entry entry : shared) {
+                    if (!entry.getBackupId().equals(backupId)) {
+                        stillShared.add(entry);
+                        continue;
+                    }
+                    changed = true;
+                    String newOwner = newOwners.get(entry.getName());
+                    if (newOwner == null) {
+                        Path src = entry.getPath(backupRoot, table);
+                        Path dst = entry.getPath(backupRoot, table, image.getBackupId());
+                        fs.mkdirs(dst.getParent());
+                        if (!fs.rename(src, dst)) {
+                            throw new IOException("Could not move shared store file " + src + " to "
+                                    + dst);
+                        }
+                        LOG.debug("Moved shared store file " + src + " to " + dst);
+                        newOwners.put(entry.getName(), image.getBackupId());
+                    } else {
+                        entry.setBackupId(newOwner);
+                        stillShared.add(entry);
+                    }
+                }
+                if (changed) {
+                    writeSharedFiles(fs, backupRoot, image.getBackupId(), table, stillShared);
+                }
+            }
+
+            Map<String, Entry> index = readIndex(fs, backupRoot, table);
+            if (index.isEmpty()) {
+                // no deduplicated full backup of the table
+                if (!newOwners.isEmpty()) {
+                    LOG.info("Moved " + newOwners.size() + " shared store files of " + table
+                            + " out of " + backupId);
+                }
+                continue;
+            }
+            List<Entry> newIndex = new ArrayList<>(index.size());
+            for (Entry entry : index.values()) {
+                if (entry.getBackupId().equals(backupId)) {
+                    String newOwner = newOwners.get(entry.getName());
+                    if (newOwner == null) {
+                        continue;
+                    }
+                    entry.setBackupId(newOwner);
+                }
+                newIndex.add(entry);
+            }
+            writeIndex(fs, backupRoot, table, newIndex);
+            if (!newOwners.isEmpty()) {
+                LOG.info("Moved " + newOwners.size() + " shared store files of " + table + " out of "
+                        + backupId);
+            }
+        }
+    }
+
+    private static List<Entry> readEntries(FileSystem fs, Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!fs.exists(path)) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    entries.add(Entry.parse(line));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void writeEntries(FileSystem fs, Path path, Collection<Entry> entries)
+            throws IOException {
+        // write aside and rename, readers never see a partial file
+        Path tmp = new Path(path.getParent(), "." + path.getName() + ".tmp");
+        try (FSDataOutputStream out = fs.create(tmp, true)) {
+            for (Entry entry : entries) {
+                out.write((entry.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (fs.exists(path) && !fs.delete(path, false)) {
+            throw new IOException("Could not delete " + path);
+        }
+        if (!fs.rename(tmp, path)) {
+            throw new IOException("Could not rename " + tmp + " to " + path);
+        }
+    }
+}
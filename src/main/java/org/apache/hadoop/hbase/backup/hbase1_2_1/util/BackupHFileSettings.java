@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.HFileOutputFormat2;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compression, data block encoding and block size of the column families in the HFiles written by
+ * an incremental backup or a merge.
+ * <p>
+ * The families keep the settings of the live table unless overridden by
+ * {@link BackupRestoreConstants#BACKUP_HFILE_COMPRESSION_KEY},
+ * {@link BackupRestoreConstants#BACKUP_HFILE_DATABLOCK_ENCODING_KEY} and
+ * {@link BackupRestoreConstants#BACKUP_HFILE_BLOCKSIZE_KEY}, for all the families or, suffixed by
+ * ".table;family", for a single family. The settings used are recorded in "backupRoot/backupId/
+ * .backup.hfile.settings" next to the backup manifest, so that a restore can keep them.
+ */
+@InterfaceAudience.Private
+public final class BackupHFileSettings {
+    private static final Log LOG = LogFactory.getLog(BackupHFileSettings.class);
+
+    public static final String FILE_NAME = ".backup.hfile.settings";
+
+    private static final String COMPRESSION = "compression";
+    private static final String ENCODING = "encoding";
+    private static final String BLOCKSIZE = "blocksize";
+    private static final String FAMILY_SEPARATOR = ";";
+    private static final String SEPARATOR = "\t";
+
+    // attribute.table;family -> value
+    private final SortedMap<String, String> settings;
+
+    private BackupHFileSettings(SortedMap<String, String> settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Resolve the settings of the families of tables from the configuration
+     *
+     * @param conf             configuration
+     * @param tableDescriptors descriptors of the live tables
+     * @return the settings of all the families
+     * @throws IOException if an override is not a valid compression, encoding or block size
+     */
+    public static BackupHFileSettings create(Configuration conf, List<HTableDescriptor> tableDescriptors)
+            throws IOException {
+        SortedMap<String, String> settings = new TreeMap<>();
+        for (HTableDescriptor tableDescriptor : tableDescriptors) {
+            for (HColumnDescriptor family : tableDescriptor.getColumnFamilies()) {
+                String tableFamily = tableFamily(tableDescriptor.getTableName(), family.getNameAsString());
+                String compression = get(conf, BackupRestoreConstants.BACKUP_HFILE_COMPRESSION_KEY,
+                        tableFamily, family.getCompressionType().getName()).toLowerCase(Locale.ROOT);
+                DataBlockEncoding familyEncoding = family.getDataBlockEncoding() == null
+                        ? DataBlockEncoding.NONE : family.getDataBlockEncoding();
+                String encoding = get(conf, BackupRestoreConstants.BACKUP_HFILE_DATABLOCK_ENCODING_KEY,
+                        tableFamily, familyEncoding.name()).toUpperCase(Locale.ROOT);
+                String blockSize = get(conf, BackupRestoreConstants.BACKUP_HFILE_BLOCKSIZE_KEY,
+                        tableFamily, String.valueOf(family.getBlocksize()));
+                try {
+                    Compression.getCompressionAlgorithmByName(compression);
+                    DataBlockEncoding.valueOf(encoding);
+                    Integer.parseInt(blockSize);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid backup HFile settings for " + tableFamily + ": "
+                            + e.getMessage(), e);
+                }
+                settings.put(COMPRESSION + "." + tableFamily, compression);
+                settings.put(ENCODING + "." + tableFamily, encoding);
+                settings.put(BLOCKSIZE + "." + tableFamily, blockSize);
+            }
+        }
+        return new BackupHFileSettings(settings);
+    }
+
+    private static String get(Configuration conf, String key, String tableFamily, String defaultValue) {
+        return conf.getTrimmed(key + "." + tableFamily, conf.getTrimmed(key, defaultValue));
+    }
+
+    private static String tableFamily(TableName table, String family) {
+        return table.getNameAsString() + FAMILY_SEPARATOR + family;
+    }
+
+    /**
+     * Write the HFiles of the configured job or writer with these settings
+     *
+     * @param conf configuration of the HFileOutputFormat2 job or writer, already configured
+     * @throws IOException on failure to serialize the settings
+     */
+    public void configure(Configuration conf) throws IOException {
+        Map<byte[], String> compression = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        Map<byte[], String> blockSize = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        Map<byte[], String> encoding = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (Map.Entry<String, String> e : settings.entrySet()) {
+            int idx = e.getKey().indexOf('.');
+            String attribute = e.getKey().substring(0, idx);
+            byte[] tableFamily = Bytes.toBytes(e.getKey().substring(idx + 1));
+            if (COMPRESSION.equals(attribute)) {
+                compression.put(tableFamily, e.getValue());
+            } else if (ENCODING.equals(attribute)) {
+                encoding.put(tableFamily, e.getValue());
+            } else if (BLOCKSIZE.equals(attribute)) {
+                blockSize.put(tableFamily, e.getValue());
+            }
+        }
+        HFileOutputFormat2.overrideFamilyAttributes(conf, compression, blockSize, encoding);
+    }
+
+    /**
+     * Set the settings of a table as the backup overrides of another table, for a restore which
+     * keeps the settings of the backup.
+     *
+     * @param conf     configuration of the restore
+     * @param table    table backed up
+     * @param newTable table restored
+     */
+    public void setOverrides(Configuration conf, TableName table, TableName newTable) {
+        String prefix = table.getNameAsString() + FAMILY_SEPARATOR;
+        for (Map.Entry<String, String> e : settings.entrySet()) {
+            int idx = e.getKey().indexOf('.');
+            String tableFamily = e.getKey().substring(idx + 1);
+            if (!tableFamily.startsWith(prefix)) {
+                continue;
+            }
+            String family = tableFamily.substring(prefix.length());
+            String attribute = e.getKey().substring(0, idx);
+            String key = COMPRESSION.equals(attribute) ? BackupRestoreConstants.BACKUP_HFILE_COMPRESSION_KEY
+                    : ENCODING.equals(attribute) ? BackupRestoreConstants.BACKUP_HFILE_DATABLOCK_ENCODING_KEY
+                    : BackupRestoreConstants.BACKUP_HFILE_BLOCKSIZE_KEY;
+            conf.set(key + "." + tableFamily(newTable, family), e.getValue());
+        }
+    }
+
+    public String getCompression(TableName table, String family) {
+        return settings.get(COMPRESSION + "." + tableFamily(table, family));
+    }
+
+    public String getDataBlockEncoding(TableName table, String family) {
+        return settings.get(ENCODING + "." + tableFamily(table, family));
+    }
+
+    public String getBlockSize(TableName table, String family) {
+        return settings.get(BLOCKSIZE + "." + tableFamily(table, family));
+    }
+
+    /**
+     * Write the settings in a backup directory
+     *
+     * @param fs  file system
+     * @param dir backup directory
+     * @throws IOException exception
+     */
+    public void store(FileSystem fs, Path dir) throws IOException {
+        Path path = new Path(dir, FILE_NAME);
+        try (FSDataOutputStream out = fs.create(path, true)) {
+            for (Map.Entry<String, String> e : settings.entrySet()) {
+                out.write(Bytes.toBytes(e.getKey() + SEPARATOR + e.getValue() + "\n"));
+            }
+        }
+        LOG.debug("HFile settings stored to " + path);
+    }
+
+    /**
+     * Read the settings of a backup directory
+     *
+     * @param fs  file system
+     * @param dir backup directory
+     * @return the settings, null if the backup did not record them
+     * @throws IOException exception
+     */
+    public static BackupHFileSettings load(FileSystem fs, Path dir) throws IOException {
+        Path path = new Path(dir, FILE_NAME);
+        if (!fs.exists(path)) {
+            return null;
+        }
+        SortedMap<String, String> settings = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int idx = line.indexOf(SEPARATOR);
+                if (idx > 0) {
+                    settings.put(line.substring(0, idx), line.substring(idx + 1));
+                }
+            }
+        }
+        return new BackupHFileSettings(settings);
+    }
+
+    @Override
+    public String toString() {
+        return settings.toString();
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos;
+import org.apache.hadoop.hbase.protobuf.generated.SnapshotProtos.SnapshotRegionManifest;
+import org.apache.hadoop.hbase.snapshot.SnapshotDescriptionUtils;
+import org.apache.hadoop.hbase.snapshot.SnapshotManifest;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Region boundaries of the tables of a full backup, taken from the region manifests of their
+ * snapshots while the backup is running.
+ * <p>
+ * The boundaries are recorded in "backupRoot/backupId/.backup.region.boundaries" next to the
+ * backup manifest, so that a restore creates the tables split at these keys instead of reading
+ * the first and last row of every store file of the image.
+ */
+@InterfaceAudience.Private
+public final class BackupRegionBoundaries {
+    private static final Log LOG = LogFactory.getLog(BackupRegionBoundaries.class);
+
+    public static final String FILE_NAME = ".backup.region.boundaries";
+
+    private static final String SEPARATOR = "\t";
+
+    // table -> start keys of the regions, but the first one
+    private final SortedMap<TableName, byte[][]> boundaries;
+
+    public BackupRegionBoundaries() {
+        this(new ConcurrentSkipListMap<>());
+    }
+
+    private BackupRegionBoundaries(SortedMap<TableName, byte[][]> boundaries) {
+        this.boundaries = boundaries;
+    }
+
+    /**
+     * Record the region boundaries of a table from a snapshot of the cluster
+     *
+     * @param conf         configuration
+     * @param table        table of the snapshot
+     * @param snapshotName completed snapshot of the table
+     * @throws IOException if the snapshot manifest can not be read
+     */
+    public void addFromSnapshot(Configuration conf, TableName table, String snapshotName)
+            throws IOException {
+        Path rootDir = FSUtils.getRootDir(conf);
+        FileSystem fs = rootDir.getFileSystem(conf);
+        Path snapshotDir = SnapshotDescriptionUtils.getCompletedSnapshotDir(snapshotName, rootDir);
+        HBaseProtos.SnapshotDescription desc = SnapshotDescriptionUtils.readSnapshotInfo(fs, snapshotDir);
+        SnapshotManifest manifest = SnapshotManifest.open(conf, fs, snapshotDir, desc);
+        TreeSet<byte[]> keys = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+        for (SnapshotRegionManifest region : manifest.getRegionManifests()) {
+            HRegionInfo regionInfo = HRegionInfo.convert(region.getRegionInfo());
+            if (regionInfo.isOffline() || regionInfo.isSplit()
+                    || regionInfo.getStartKey().length == 0) {
+                continue;
+            }
+            keys.add(regionInfo.getStartKey());
+        }
+        boundaries.put(table, keys.toArray(new byte[keys.size()][]));
+    }
+
+    /**
+     * Get the region boundaries of a table
+     *
+     * @param table table backed up
+     * @return the start keys of the regions but the first one, null if they were not recorded
+     */
+    public byte[][] get(TableName table) {
+        return boundaries.get(table);
+    }
+
+    /**
+     * Write the boundaries in a backup directory
+     *
+     * @param fs  file system
+     * @param dir backup directory
+     * @throws IOException exception
+     */
+    public void store(FileSystem fs, Path dir) throws IOException {
+        Path path = new Path(dir, FILE_NAME);
+        try (FSDataOutputStream out = fs.create(path, true)) {
+            for (Map.Entry<TableName, byte[][]> e : boundaries.entrySet()) {
+                String table = e.getKey().getNameAsString();
+                // a line for the table itself, a table of a single region has no boundary
+                out.write(Bytes.toBytes(table + "\n"));
+                for (byte[] key : e.getValue()) {
+                    out.write(Bytes.toBytes(table + SEPARATOR + Bytes.toStringBinary(key) + "\n"));
+                }
+            }
+        }
+        LOG.debug("Region boundaries stored to " + path);
+    }
+
+    /**
+     * Read the boundaries of a backup directory
+     *
+     * @param fs  file system
+     * @param dir backup directory
+     * @return the boundaries, null if the backup did not record them
+     * @throws IOException exception
+     */
+    public static BackupRegionBoundaries load(FileSystem fs, Path dir) throws IOException {
+        Path path = new Path(dir, FILE_NAME);
+        if (!fs.exists(path)) {
+            return null;
+        }
+        Map<TableName, List<byte[]>> keys = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int idx = line.indexOf(SEPARATOR);
+                TableName table = TableName.valueOf(idx < 0 ? line : line.substring(0, idx));
+                List<byte[]> tableKeys = keys.computeIfAbsent(table, t -> new ArrayList<>());
+                if (idx > 0) {
+                    tableKeys.add(Bytes.toBytesBinary(line.substring(idx + 1)));
+                }
+            }
+        }
+        SortedMap<TableName, byte[][]> boundaries = new ConcurrentSkipListMap<>();
+        for (Map.Entry<TableName, List<byte[]>> e : keys.entrySet()) {
+            boundaries.put(e.getKey(), e.getValue().toArray(new byte[e.getValue().size()][]));
+        }
+        return new BackupRegionBoundaries(boundaries);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<TableName, byte[][]> e : boundaries.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(e.getKey()).append("=").append(e.getValue().length).append(" boundaries");
+        }
+        return sb.append("}").toString();
+    }
+}
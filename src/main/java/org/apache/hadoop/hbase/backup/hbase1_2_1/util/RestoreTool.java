@@ -25,30 +25,45 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreFactory;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.HBackupFileSystem;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.RestoreJob;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceHFileSplitterJob;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.io.HFileLink;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos;
+import org.apache.hadoop.hbase.protobuf.generated.SnapshotProtos.SnapshotRegionManifest;
 import org.apache.hadoop.hbase.regionserver.StoreFileInfo;
 import org.apache.hadoop.hbase.snapshot.SnapshotDescriptionUtils;
 import org.apache.hadoop.hbase.snapshot.SnapshotManifest;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.FSTableDescriptors;
+import org.apache.hadoop.hbase.util.FSUtils;
+import org.apache.hadoop.hbase.util.HFileArchiveUtil;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.yetus.audience.InterfaceAudience;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.apache.hadoop.hbase.backup.hbase1_2_1.util.SafeRestoreTool.snapshotName;
 
@@ -199,12 +214,39 @@ public class RestoreTool {
                     LOG.info("Changed " + newTableDescriptor.getTableName() + " to: " + newTableDescriptor);
                 }
             }
-            RestoreJob restoreService = BackupRestoreFactory.getRestoreJob(conf);
+            Configuration restoreConf = conf;
+            if (conf.getBoolean(BackupRestoreConstants.BACKUP_RESTORE_KEEP_HFILE_SETTINGS_KEY,
+                    BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_KEEP_HFILE_SETTINGS)) {
+                restoreConf = getBackupHFileSettingsConf(tableNames, newTableNames, incrBackupId);
+            }
+            RestoreJob restoreService = BackupRestoreFactory.getRestoreJob(restoreConf);
 
             restoreService.run(logDirs, tableNames, newTableNames, false);
         }
     }
 
+    /**
+     * Configure the restore of incremental images to write the HFiles with the settings recorded
+     * in the last image instead of the settings of the target tables.
+     */
+    private Configuration getBackupHFileSettingsConf(TableName[] tableNames, TableName[] newTableNames,
+                                                     String incrBackupId) throws IOException {
+        BackupHFileSettings settings =
+                HBackupFileSystem.getManifest(conf, backupRootPath, incrBackupId).getHFileSettings();
+        if (settings == null) {
+            LOG.info("No HFile settings recorded in " + incrBackupId
+                    + ", the target table settings are used");
+            return conf;
+        }
+        Configuration restoreConf = new Configuration(conf);
+        restoreConf.setBoolean(MapReduceHFileSplitterJob.BACKUP_HFILE_SETTINGS_KEY, true);
+        for (int i = 0; i < tableNames.length; i++) {
+            settings.setOverrides(restoreConf, tableNames[i], newTableNames[i]);
+        }
+        LOG.debug("Restore with the HFile settings of " + incrBackupId + ": " + settings);
+        return restoreConf;
+    }
+
     public void fullRestoreTable(Connection conn, Path tableBackupPath, TableName tableName,
                                  TableName newTableName, boolean truncateIfExists, String lastIncrBackupId)
             throws IOException {
@@ -323,7 +365,10 @@ public class RestoreTool {
         }
 
         Path tableArchivePath = getTableArchivePath(tableName);
-        if (tableArchivePath == null) {
+        // store files kept by an older image of a deduplicated full backup
+        List<Path> sharedFiles = BackupHFileIndex.getSharedFilePaths(fs, backupRootPath, backupId,
+                tableName);
+        if (tableArchivePath == null && sharedFiles.isEmpty()) {
             if (tableDescriptor != null) {
                 // find table descriptor but no archive dir means the table is empty, create table and exit
                 if (LOG.isDebugEnabled()) {
@@ -331,8 +376,8 @@ public class RestoreTool {
                             + ", will only create table");
                 }
                 tableDescriptor.setName(newTableName);
-                checkAndCreateTable(conn, tableBackupPath, tableName, newTableName, null, tableDescriptor,
-                        truncateIfExists);
+                checkAndCreateTable(conn, tableBackupPath, tableName, newTableName, null, null,
+                        tableDescriptor, truncateIfExists);
                 return;
             } else {
                 throw new IllegalStateException("Cannot restore hbase table because directory '"
@@ -349,16 +394,30 @@ public class RestoreTool {
         // record all region dirs:
         // load all files in dir
         try {
-            ArrayList<Path> regionPathList = getRegionList(tableName);
+            ArrayList<Path> regionPathList =
+                    tableArchivePath == null ? new ArrayList<Path>() : getRegionList(tableName);
 
+            if (conf.getBoolean(BackupRestoreConstants.BACKUP_RESTORE_SNAPSHOT_CLONE_KEY,
+                    BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_SNAPSHOT_CLONE)
+                    && cloneFromSnapshot(conn, tableName, newTableName, regionPathList, sharedFiles)) {
+                SafeRestoreTool.deleteSnapshot(conn, newTableName, true);
+                return;
+            }
             // should only try to create the table with all region informations, so we could pre-split
             // the regions in fine grain
-            checkAndCreateTable(conn, tableBackupPath, tableName, newTableName, regionPathList,
-                    tableDescriptor, truncateIfExists);
-            RestoreJob restoreService = BackupRestoreFactory.getRestoreJob(conf);
-            Path[] paths = new Path[regionPathList.size()];
-            regionPathList.toArray(paths);
-            restoreService.run(paths, new TableName[]{tableName}, new TableName[]{newTableName}, true);
+            boolean splitByStoreFiles = checkAndCreateTable(conn, tableBackupPath, tableName,
+                    newTableName, regionPathList, sharedFiles, tableDescriptor, truncateIfExists);
+            if (!splitByStoreFiles || !conf.getBoolean(
+                    BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY,
+                    BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_DIRECT_BULKLOAD)
+                    || !directBulkLoad(regionPathList, sharedFiles, tableDescriptor, newTableName)) {
+                RestoreJob restoreService = BackupRestoreFactory.getRestoreJob(conf);
+                List<Path> pathList = new ArrayList<>(regionPathList);
+                pathList.addAll(sharedFiles);
+                Path[] paths = new Path[pathList.size()];
+                pathList.toArray(paths);
+                restoreService.run(paths, new TableName[]{tableName}, new TableName[]{newTableName}, true);
+            }
             SafeRestoreTool.deleteSnapshot(conn, newTableName, true);
         } catch (Exception e) {
 
@@ -375,6 +434,278 @@ public class RestoreTool {
         }
     }
 
+    /**
+     * Restore a full backup image into a new table by cloning the snapshot exported with the
+     * image. The snapshot is registered in the cluster for the time of the clone, which protects
+     * the store files it references from the cleaners. The cloned table links to the store files
+     * of the backed up table: the files still found in the cluster are shared, the others are
+     * copied from the image to the archive of the backed up table.
+     * <p>
+     * The snapshot and the copied store files are written in hbase.rootdir by the restoring user,
+     * the clone is skipped when this user can not write there (e.g. it is not the HBase service
+     * user of a secured cluster).
+     *
+     * @param conn          connection
+     * @param tableName     backed up table
+     * @param newTableName  target table
+     * @param regionDirList region directories of the image
+     * @param hfiles        store files outside of the region directories
+     * @return false if the image can not be cloned (existing target table, reference files, or a
+     * snapshot of the same name in the cluster), nothing was restored then
+     * @throws IOException exception
+     */
+    private boolean cloneFromSnapshot(Connection conn, TableName tableName, TableName newTableName,
+                                      List<Path> regionDirList, List<Path> hfiles)
+            throws IOException {
+        Path snapshotDir = getTableInfoPath(tableName);
+        if (snapshotDir == null) {
+            return false;
+        }
+        HBaseProtos.SnapshotDescription desc = SnapshotDescriptionUtils.readSnapshotInfo(fs, snapshotDir);
+        SnapshotManifest manifest = SnapshotManifest.open(conf, fs, snapshotDir, desc);
+        TableName snapshotTable = TableName.valueOf(desc.getTable());
+
+        // store files of the image by name
+        Map<String, Path> sources = new HashMap<>();
+        for (Path regionDir : regionDirList) {
+            for (FileStatus familyDir : fs.listStatus(regionDir)) {
+                if (!familyDir.isDirectory()) {
+                    continue;
+                }
+                for (Path hfile : FileUtil.stat2Paths(fs.listStatus(familyDir.getPath()))) {
+                    sources.put(hfile.getName(), hfile);
+                }
+            }
+        }
+        for (Path hfile : hfiles) {
+            sources.put(hfile.getName(), hfile);
+        }
+
+        Path rootDir = FSUtils.getRootDir(conf);
+        FileSystem rootFs = rootDir.getFileSystem(conf);
+        Path registeredDir = SnapshotDescriptionUtils.getCompletedSnapshotDir(desc, rootDir);
+        // the snapshot and the missing store files are written by the restoring user
+        if (!canWrite(rootFs, registeredDir)
+                || !canWrite(rootFs, HFileArchiveUtil.getTableArchivePath(conf, snapshotTable))) {
+            LOG.info("User " + UserGroupInformation.getCurrentUser().getShortUserName()
+                    + " can not write the snapshot of " + backupId + " in " + rootDir
+                    + ", restoring " + newTableName + " with the HFile splitter job");
+            return false;
+        }
+        try (Admin admin = conn.getAdmin()) {
+            if (admin.tableExists(newTableName)) {
+                return false;
+            }
+            if (rootFs.exists(registeredDir)) {
+                LOG.info("A snapshot named " + desc.getName() + " exists in the cluster, restoring "
+                        + newTableName + " with the HFile splitter job");
+                return false;
+            }
+            Path workingDir = SnapshotDescriptionUtils.getWorkingSnapshotDir(desc, rootDir);
+            rootFs.delete(workingDir, true);
+            if (!FileUtil.copy(fs, snapshotDir, rootFs, workingDir, false, conf)
+                    || !rootFs.rename(workingDir, registeredDir)) {
+                throw new IOException("Could not register the snapshot " + desc.getName() + " of "
+                        + backupId + " in " + rootDir);
+            }
+            try {
+                Map<Path, Path> copies = new HashMap<>();
+                for (SnapshotRegionManifest region : manifest.getRegionManifests()) {
+                    String encodedName = HRegionInfo.convert(region.getRegionInfo()).getEncodedName();
+                    for (SnapshotRegionManifest.FamilyFiles family : region.getFamilyFilesList()) {
+                        String familyName = family.getFamilyName().toStringUtf8();
+                        for (SnapshotRegionManifest.StoreFile storeFile : family.getStoreFilesList()) {
+                            String name = storeFile.getName();
+                            if (storeFile.hasReference()) {
+                                LOG.info("Snapshot " + desc.getName() + " holds the reference file "
+                                        + name + ", restoring " + newTableName
+                                        + " with the HFile splitter job");
+                                return false;
+                            }
+                            HFileLink link = HFileLink.build(conf, snapshotTable, encodedName,
+                                    familyName, name);
+                            if (exists(link, rootFs)) {
+                                continue;
+                            }
+                            Path src = sources.get(name);
+                            if (src == null) {
+                                LOG.info("Store file " + name + " of snapshot " + desc.getName()
+                                        + " not found, restoring " + newTableName
+                                        + " with the HFile splitter job");
+                                return false;
+                            }
+                            copies.put(src, new Path(HFileArchiveUtil.getStoreArchivePath(conf,
+                                    snapshotTable, encodedName, familyName), name));
+                        }
+                    }
+                }
+                long start = EnvironmentEdgeManager.currentTime();
+                copyFiles(copies, rootFs);
+                SafeRestoreTool.createNamespaceIfNotExists(conn, newTableName.getNamespaceAsString());
+                admin.cloneSnapshot(desc.getName(), newTableName);
+                LOG.info("Cloned snapshot " + desc.getName() + " of " + backupId + " to "
+                        + newTableName + " in " + (EnvironmentEdgeManager.currentTime() - start)
+                        + " ms, " + copies.size() + " of " + sources.size()
+                        + " store files copied to the cluster");
+                return true;
+            } finally {
+                // the cloned table keeps back references to the store files it links to
+                try {
+                    admin.deleteSnapshot(desc.getName());
+                } catch (IOException e) {
+                    LOG.warn("Could not delete the registered snapshot " + desc.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check that the current user can create a path, from the permissions of its closest existing
+     * ancestor
+     */
+    private static boolean canWrite(FileSystem fs, Path path) throws IOException {
+        Path dir = path;
+        while (dir != null && !fs.exists(dir)) {
+            dir = dir.getParent();
+        }
+        if (dir == null) {
+            return false;
+        }
+        try {
+            fs.access(dir, FsAction.WRITE);
+            return true;
+        } catch (AccessControlException e) {
+            LOG.debug("No write access to " + dir, e);
+            return false;
+        }
+    }
+
+    private static boolean exists(HFileLink link, FileSystem fs) throws IOException {
+        try {
+            link.getFileStatus(fs);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Bulk load the store files of a full backup image as they are, without rewriting them with
+     * the HFile splitter job. The target table must have been split at the boundaries of the store
+     * files, so that every file fits in a single region. The files are copied to a staging
+     * directory first, the bulk load moves them into the regions.
+     *
+     * @param regionDirList region directories of the image
+     * @param hfiles        store files outside of the region directories
+     * @param htd           descriptor of the target table
+     * @param newTableName  target table
+     * @return false if the image holds files which can not be loaded as they are (references,
+     * links or unknown families), nothing was loaded then
+     * @throws IOException exception
+     */
+    private boolean directBulkLoad(List<Path> regionDirList, List<Path> hfiles, HTableDescriptor htd,
+                                   TableName newTableName) throws IOException {
+        Map<Path, String> storeFiles = new LinkedHashMap<>();
+        for (Path regionDir : regionDirList) {
+            for (FileStatus stat : fs.listStatus(regionDir)) {
+                String family = stat.getPath().getName();
+                if (!stat.isDirectory() || family.startsWith("_") || family.startsWith(".")
+                        || Arrays.asList(ignoreDirs).contains(family)) {
+                    continue;
+                }
+                for (Path hfile : FileUtil.stat2Paths(fs.listStatus(stat.getPath()))) {
+                    if (hfile.getName().startsWith("_") || hfile.getName().startsWith(".")) {
+                        continue;
+                    }
+                    storeFiles.put(hfile, family);
+                }
+            }
+        }
+        for (Path hfile : hfiles) {
+            storeFiles.put(hfile, hfile.getParent().getName());
+        }
+        for (Map.Entry<Path, String> entry : storeFiles.entrySet()) {
+            String name = entry.getKey().getName();
+            if (StoreFileInfo.isReference(name) || HFileLink.isHFileLink(name)
+                    || !htd.hasFamily(Bytes.toBytes(entry.getValue()))) {
+                LOG.info("Store file " + entry.getKey() + " can not be bulk loaded as it is, "
+                        + "restoring " + newTableName + " with the HFile splitter job");
+                return false;
+            }
+        }
+
+        long start = EnvironmentEdgeManager.currentTime();
+        Path stagingDir = BackupUtils.getBulkOutputDir(
+                BackupUtils.getFileNameCompatibleString(newTableName), conf);
+        FileSystem stagingFs = stagingDir.getFileSystem(conf);
+        try {
+            Map<Path, Path> copies = new HashMap<>();
+            for (Map.Entry<Path, String> entry : storeFiles.entrySet()) {
+                // store file names are unique across the regions of a table
+                copies.put(entry.getKey(), new Path(new Path(stagingDir, entry.getValue()),
+                        entry.getKey().getName()));
+            }
+            copyFiles(copies, stagingFs);
+            LoadIncrementalHFiles loader = BackupUtils.createLoader(conf);
+            int result = loader.run(new String[]{stagingDir.toString(),
+                    newTableName.getNameAsString()});
+            if (BackupUtils.failed(result)) {
+                throw new IOException("Can not bulk load the store files of " + backupId + " into "
+                        + newTableName + ". Bulk loader return code = " + result);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            if (!stagingFs.delete(stagingDir, true)) {
+                LOG.debug("Could not delete " + stagingDir);
+            }
+        }
+        LOG.info("Bulk loaded " + storeFiles.size() + " store files of " + backupId + " into "
+                + newTableName + " in " + (EnvironmentEdgeManager.currentTime() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * Copy files of the backup image, up to
+     * {@link BackupRestoreConstants#BACKUP_RESTORE_DIRECT_COPY_THREADS_KEY} at the same time
+     *
+     * @param files source to destination of the copies
+     * @param dstFs file system of the destinations
+     * @throws IOException exception
+     */
+    private void copyFiles(Map<Path, Path> files, FileSystem dstFs) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        int threads = Math.max(1, Math.min(files.size(),
+                conf.getInt(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_COPY_THREADS_KEY,
+                        BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_DIRECT_COPY_THREADS)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("restore-copy-" + backupId + "-"));
+        List<Future<Boolean>> futures = new ArrayList<>(files.size());
+        try {
+            for (Map.Entry<Path, Path> entry : files.entrySet()) {
+                Path src = entry.getKey();
+                Path dst = entry.getValue();
+                futures.add(executor.submit(() -> FileUtil.copy(fs, src, dstFs, dst, false, conf)));
+            }
+            for (Future<Boolean> f : futures) {
+                if (!f.get()) {
+                    throw new IOException("Could not copy the store files of " + backupId);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw (InterruptedIOException) new InterruptedIOException(
+                    "Interrupted while copying the store files of " + backupId).initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Gets region list
      *
@@ -394,81 +725,153 @@ public class RestoreTool {
     }
 
     /**
-     * Calculate region boundaries and add all the column families to the table descriptor
+     * Get the region boundaries of a table of the full image, as recorded by the backup or,
+     * for an older backup, from the store files of the image
      *
+     * @param tableName     table backed up
      * @param regionDirList region dir list
+     * @param hfiles        additional hfiles, outside of the region dirs
      * @return a set of keys to store the boundaries
+     * @throws IOException exception
      */
-    byte[][] generateBoundaryKeys(ArrayList<Path> regionDirList) throws IOException {
-        TreeMap<byte[], Integer> map = new TreeMap<>(Bytes.BYTES_COMPARATOR);
-        // Build a set of keys to store the boundaries
-        // calculate region boundaries and add all the column families to the table descriptor
-        for (Path regionDir : regionDirList) {
-            LOG.debug("Parsing region dir: " + regionDir);
-            Path hfofDir = regionDir;
+    byte[][] getBoundaryKeys(TableName tableName, List<Path> regionDirList, List<Path> hfiles)
+            throws IOException {
+        BackupRegionBoundaries boundaries =
+                HBackupFileSystem.getManifest(conf, backupRootPath, backupId).getRegionBoundaries();
+        byte[][] keys = boundaries == null ? null : boundaries.get(tableName);
+        if (keys != null) {
+            LOG.debug("Using the " + keys.length + " region boundaries of " + tableName
+                    + " recorded by " + backupId);
+            return keys;
+        }
+        return generateBoundaryKeys(regionDirList, hfiles);
+    }
 
-            if (!fs.exists(hfofDir)) {
-                LOG.warn("HFileOutputFormat dir " + hfofDir + " not found");
+    /**
+     * Calculate region boundaries from the first and last rows of the store files. The region
+     * dirs are listed and the store files read by up to
+     * {@link BackupRestoreConstants#BACKUP_RESTORE_BOUNDARY_THREADS_KEY} threads.
+     *
+     * @param regionDirList region dir list
+     * @param hfiles        additional hfiles, outside of the region dirs
+     * @return a set of keys to store the boundaries
+     */
+    byte[][] generateBoundaryKeys(List<Path> regionDirList, List<Path> hfiles) throws IOException {
+        long start = EnvironmentEdgeManager.currentTime();
+        int threads = Math.max(1, conf.getInt(BackupRestoreConstants.BACKUP_RESTORE_BOUNDARY_THREADS_KEY,
+                BackupRestoreConstants.DEFAULT_BACKUP_RESTORE_BOUNDARY_THREADS));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("restore-boundaries-" + backupId + "-"));
+        TreeMap<byte[], Integer> map = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        try {
+            List<Future<List<Path>>> listings = new ArrayList<>();
+            if (regionDirList != null) {
+                for (Path regionDir : regionDirList) {
+                    listings.add(executor.submit(() -> listStoreFiles(regionDir)));
+                }
+            }
+            List<Path> storeFiles = new ArrayList<>();
+            for (Future<List<Path>> listing : listings) {
+                storeFiles.addAll(listing.get());
+            }
+            if (hfiles != null) {
+                storeFiles.addAll(hfiles);
             }
 
-            FileStatus[] familyDirStatuses = fs.listStatus(hfofDir);
-            if (familyDirStatuses == null) {
-                throw new IOException("No families found in " + hfofDir);
+            List<Future<byte[][]>> rows = new ArrayList<>(storeFiles.size());
+            for (Path hfile : storeFiles) {
+                rows.add(executor.submit(() -> getFirstLastRow(hfile)));
+            }
+            // Build a set of keys to store the boundaries
+            for (Future<byte[][]> row : rows) {
+                byte[][] firstLast = row.get();
+                // To eventually infer start key-end key boundaries
+                map.merge(firstLast[0], 1, Integer::sum);
+                map.merge(firstLast[1], -1, Integer::sum);
             }
+            LOG.debug("Read the boundaries of " + storeFiles.size() + " store files of " + backupId
+                    + " in " + (EnvironmentEdgeManager.currentTime() - start) + " ms");
+        } catch (InterruptedException e) {
+            throw (InterruptedIOException) new InterruptedIOException(
+                    "Interrupted while reading the store files of " + backupId).initCause(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return LoadIncrementalHFiles.inferBoundaries(map);
+    }
 
-            for (FileStatus stat : familyDirStatuses) {
-                if (!stat.isDirectory()) {
-                    LOG.warn("Skipping non-directory " + stat.getPath());
-                    continue;
-                }
-                boolean isIgnore = false;
-                String pathName = stat.getPath().getName();
-                for (String ignore : ignoreDirs) {
-                    if (pathName.contains(ignore)) {
-                        LOG.warn("Skipping non-family directory" + pathName);
-                        isIgnore = true;
-                        break;
-                    }
-                }
-                if (isIgnore) {
-                    continue;
-                }
-                Path familyDir = stat.getPath();
-                LOG.debug("Parsing family dir [" + familyDir.toString() + " in region [" + regionDir + "]");
-                // Skip _logs, etc
-                if (familyDir.getName().startsWith("_") || familyDir.getName().startsWith(".")) {
-                    continue;
+    /**
+     * List the store files of the families of a region dir
+     */
+    private List<Path> listStoreFiles(Path regionDir) throws IOException {
+        LOG.debug("Parsing region dir: " + regionDir);
+        Path hfofDir = regionDir;
+
+        if (!fs.exists(hfofDir)) {
+            LOG.warn("HFileOutputFormat dir " + hfofDir + " not found");
+        }
+
+        FileStatus[] familyDirStatuses = fs.listStatus(hfofDir);
+        if (familyDirStatuses == null) {
+            throw new IOException("No families found in " + hfofDir);
+        }
+
+        List<Path> storeFiles = new ArrayList<>();
+        for (FileStatus stat : familyDirStatuses) {
+            if (!stat.isDirectory()) {
+                LOG.warn("Skipping non-directory " + stat.getPath());
+                continue;
+            }
+            boolean isIgnore = false;
+            String pathName = stat.getPath().getName();
+            for (String ignore : ignoreDirs) {
+                if (pathName.contains(ignore)) {
+                    LOG.warn("Skipping non-family directory" + pathName);
+                    isIgnore = true;
+                    break;
                 }
+            }
+            if (isIgnore) {
+                continue;
+            }
+            Path familyDir = stat.getPath();
+            LOG.debug("Parsing family dir [" + familyDir.toString() + " in region [" + regionDir + "]");
+            // Skip _logs, etc
+            if (familyDir.getName().startsWith("_") || familyDir.getName().startsWith(".")) {
+                continue;
+            }
 
-                // start to parse hfile inside one family dir
-                Path[] hfiles = FileUtil.stat2Paths(fs.listStatus(familyDir));
-                for (Path hfile : hfiles) {
-                    if (hfile.getName().startsWith("_") || hfile.getName().startsWith(".")
-                            || StoreFileInfo.isReference(hfile.getName())
-                            || HFileLink.isHFileLink(hfile.getName())) {
-                        continue;
-                    }
-                    HFile.Reader reader = HFile.createReader(fs, hfile, conf);
-                    final byte[] first, last;
-                    try {
-                        reader.loadFileInfo();
-                        first = reader.getFirstRowKey();
-                        last = reader.getLastRowKey();
-                        LOG.debug("Trying to figure out region boundaries hfile=" + hfile + " first="
-                                + Bytes.toStringBinary(first) + " last=" + Bytes.toStringBinary(last));
-
-                        // To eventually infer start key-end key boundaries
-                        Integer value = map.containsKey(first) ? (Integer) map.get(first) : 0;
-                        map.put(first, value + 1);
-                        value = map.containsKey(last) ? (Integer) map.get(last) : 0;
-                        map.put(last, value - 1);
-                    } finally {
-                        reader.close();
-                    }
+            // start to parse hfile inside one family dir
+            Path[] hfiles = FileUtil.stat2Paths(fs.listStatus(familyDir));
+            for (Path hfile : hfiles) {
+                if (hfile.getName().startsWith("_") || hfile.getName().startsWith(".")
+                        || StoreFileInfo.isReference(hfile.getName())
+                        || HFileLink.isHFileLink(hfile.getName())) {
+                    continue;
                 }
+                storeFiles.add(hfile);
             }
         }
-        return LoadIncrementalHFiles.inferBoundaries(map);
+        return storeFiles;
+    }
+
+    private byte[][] getFirstLastRow(Path hfile) throws IOException {
+        HFile.Reader reader = HFile.createReader(fs, hfile, conf);
+        try {
+            reader.loadFileInfo();
+            byte[] first = reader.getFirstRowKey();
+            byte[] last = reader.getLastRowKey();
+            LOG.debug("Trying to figure out region boundaries hfile=" + hfile + " first="
+                    + Bytes.toStringBinary(first) + " last=" + Bytes.toStringBinary(last));
+            return new byte[][]{first, last};
+        } finally {
+            reader.close();
+        }
     }
 
     /**
@@ -480,13 +883,16 @@ public class RestoreTool {
      * @param tableName        table name
      * @param targetTableName  target table name
      * @param regionDirList    region directory list
+     * @param hfiles           hfiles outside of the region directories
      * @param htd              table descriptor
      * @param truncateIfExists truncates table if exists
+     * @return true if the table was created and split at the boundaries of the store files
      * @throws IOException exception
      */
-    private void checkAndCreateTable(Connection conn, Path tableBackupPath, TableName tableName,
-                                     TableName targetTableName, ArrayList<Path> regionDirList, HTableDescriptor htd,
-                                     boolean truncateIfExists) throws IOException {
+    private boolean checkAndCreateTable(Connection conn, Path tableBackupPath, TableName tableName,
+                                        TableName targetTableName, ArrayList<Path> regionDirList,
+                                        List<Path> hfiles, HTableDescriptor htd,
+                                        boolean truncateIfExists) throws IOException {
         try (Admin admin = conn.getAdmin()) {
             boolean createNew = false;
             if (admin.tableExists(targetTableName)) {
@@ -508,10 +914,11 @@ public class RestoreTool {
                 SafeRestoreTool.createNamespaceIfNotExists(conn, targetTableName.getNamespaceAsString());
                 LOG.info("Creating target table '" + targetTableName + "'");
                 byte[][] keys;
-                if (regionDirList == null || regionDirList.size() == 0) {
+                if ((regionDirList == null || regionDirList.size() == 0)
+                        && (hfiles == null || hfiles.isEmpty())) {
                     admin.createTable(htd, null);
                 } else {
-                    keys = generateBoundaryKeys(regionDirList);
+                    keys = getBoundaryKeys(tableName, regionDirList, hfiles);
                     // create table using table descriptor and region boundaries
                     admin.createTable(htd, keys);
                 }
@@ -529,6 +936,7 @@ public class RestoreTool {
                             + targetTableName + " is still not available");
                 }
             }
+            return createNew;
         }
     }
 }
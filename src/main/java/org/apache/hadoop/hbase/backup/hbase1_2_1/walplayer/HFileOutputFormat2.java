@@ -140,6 +140,13 @@ public class HFileOutputFormat2
     public static final String STORAGE_POLICY_PROPERTY = "hbase.hstore.block.storage.policy";
     public static final String STORAGE_POLICY_PROPERTY_CF_PREFIX = STORAGE_POLICY_PROPERTY + ".";
 
+    /**
+     * Region location lookups of the locality sensitive writer, per task
+     */
+    public enum WriterCounters {
+        REGION_LOCATION_LOOKUPS, REGION_LOCATION_CACHE_HITS
+    }
+
     @Override
     public RecordWriter<ImmutableBytesWritable, Cell> getRecordWriter(
             final TaskAttemptContext context) throws IOException, InterruptedException {
@@ -200,6 +207,14 @@ public class HFileOutputFormat2
             private byte[] previousRow = HConstants.EMPTY_BYTE_ARRAY;
             private final byte[] now = Bytes.toBytes(System.currentTimeMillis());
             private boolean rollRequested = false;
+            // shared by all the writers of the task, opened on the first location lookup
+            private Connection connection;
+            private final Map<TableName, RegionLocator> locators = new HashMap<>();
+            // region locations by start key, per table
+            private final Map<TableName, NavigableMap<byte[], HRegionLocation>> locations =
+                    new HashMap<>();
+            // sorted region start keys, per table
+            private final Map<TableName, byte[][]> startKeys = new HashMap<>();
 
             @Override
             public void write(ImmutableBytesWritable row, V cell)
@@ -249,6 +264,13 @@ public class HFileOutputFormat2
                     configureStoragePolicy(conf, fs, tableAndFamily, writerPath);
                 }
 
+                // the row is in the next region: every HFile fits in a single region and is
+                // bulk loaded without being split
+                if (wl != null && wl.writer != null && wl.regionEndKey.length > 0
+                        && Bytes.compareTo(rowKey, wl.regionEndKey) >= 0) {
+                    closeWriter(wl);
+                }
+
                 if (wl != null && wl.written + length >= maxsize) {
                     this.rollRequested = true;
                 }
@@ -264,10 +286,8 @@ public class HFileOutputFormat2
                         HRegionLocation loc = null;
 
                         if (tableName != null) {
-                            try (Connection connection = ConnectionFactory.createConnection(conf);
-                                 RegionLocator locator =
-                                         connection.getRegionLocator(TableName.valueOf(tableName))) {
-                                loc = locator.getRegionLocation(rowKey);
+                            try {
+                                loc = getRegionLocation(TableName.valueOf(tableName), rowKey);
                             } catch (Throwable e) {
                                 LOG.warn("There's something wrong when locating rowkey: " +
                                         Bytes.toString(rowKey) + " for tablename: " + tableName, e);
@@ -304,6 +324,7 @@ public class HFileOutputFormat2
                     } else {
                         wl = getNewWriter(tableNameBytes, family, conf, null);
                     }
+                    wl.regionEndKey = getRegionEndKey(TableName.valueOf(tableName), rowKey);
                 }
 
                 // we now have the proper WAL writer. full steam ahead
@@ -315,6 +336,71 @@ public class HFileOutputFormat2
                 this.previousRow = rowKey;
             }
 
+            /*
+             * Locate the region of a row, from the cache of the task if possible.
+             */
+            private HRegionLocation getRegionLocation(TableName table, byte[] row) throws IOException {
+                NavigableMap<byte[], HRegionLocation> tableLocations = locations.get(table);
+                if (tableLocations == null) {
+                    tableLocations = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                    locations.put(table, tableLocations);
+                }
+                Map.Entry<byte[], HRegionLocation> cached = tableLocations.floorEntry(row);
+                if (cached != null) {
+                    byte[] endKey = cached.getValue().getRegionInfo().getEndKey();
+                    if (endKey.length == 0 || Bytes.compareTo(row, endKey) < 0) {
+                        increment(WriterCounters.REGION_LOCATION_CACHE_HITS);
+                        return cached.getValue();
+                    }
+                }
+                increment(WriterCounters.REGION_LOCATION_LOOKUPS);
+                HRegionLocation loc = getRegionLocator(table).getRegionLocation(row);
+                if (loc != null) {
+                    tableLocations.put(loc.getRegionInfo().getStartKey(), loc);
+                }
+                return loc;
+            }
+
+            private RegionLocator getRegionLocator(TableName table) throws IOException {
+                if (connection == null) {
+                    connection = ConnectionFactory.createConnection(conf);
+                }
+                RegionLocator locator = locators.get(table);
+                if (locator == null) {
+                    locator = connection.getRegionLocator(table);
+                    locators.put(table, locator);
+                }
+                return locator;
+            }
+
+            /*
+             * Get the end key of the region of a row, the table region boundaries are loaded once.
+             */
+            private byte[] getRegionEndKey(TableName table, byte[] row) {
+                byte[][] keys = startKeys.get(table);
+                if (keys == null) {
+                    try {
+                        keys = getRegionLocator(table).getStartKeys();
+                    } catch (IOException e) {
+                        LOG.warn("Can not load the region boundaries of " + table
+                                + ", the HFiles may span several regions", e);
+                        keys = new byte[0][];
+                    }
+                    startKeys.put(table, keys);
+                }
+                int idx = Arrays.binarySearch(keys, row, Bytes.BYTES_COMPARATOR);
+                int next = idx >= 0 ? idx + 1 : -(idx + 1);
+                return next < keys.length ? keys[next] : HConstants.EMPTY_END_ROW;
+            }
+
+            private void increment(WriterCounters counter) {
+                // contexts created outside of a job have no counters
+                Counter c = context.getCounter(counter);
+                if (c != null) {
+                    c.increment(1);
+                }
+            }
+
             private Path getTableRelativePath(byte[] tableNameBytes) {
                 String tableName = Bytes.toString(tableNameBytes);
                 String[] tableNameParts = tableName.split(":");
@@ -357,20 +443,23 @@ public class HFileOutputFormat2
             private WriterLength getNewWriter(byte[] tableName, byte[] family, Configuration
                     conf, InetSocketAddress[] favoredNodes) throws IOException {
                 byte[] tableAndFamily = getTableNameSuffixedWithFamily(tableName, family);
+                // the family attributes are keyed by the table name without the default namespace
+                byte[] attributesKey =
+                        getTableNameSuffixedWithFamily(TableName.valueOf(tableName).getName(), family);
                 Path familydir = new Path(outputDir, Bytes.toString(family));
                 if (writeMultipleTables) {
                     familydir = new Path(outputDir,
                             new Path(getTableRelativePath(tableName), Bytes.toString(family)));
                 }
                 WriterLength wl = new WriterLength();
-                Algorithm compression = compressionMap.get(tableAndFamily);
+                Algorithm compression = compressionMap.get(attributesKey);
                 compression = compression == null ? defaultCompression : compression;
-                BloomType bloomType = bloomTypeMap.get(tableAndFamily);
+                BloomType bloomType = bloomTypeMap.get(attributesKey);
                 bloomType = bloomType == null ? BloomType.NONE : bloomType;
-                Integer blockSize = blockSizeMap.get(tableAndFamily);
+                Integer blockSize = blockSizeMap.get(attributesKey);
                 blockSize = blockSize == null ? HConstants.DEFAULT_BLOCKSIZE : blockSize;
                 DataBlockEncoding encoding = overriddenEncoding;
-                encoding = encoding == null ? datablockEncodingMap.get(tableAndFamily) : encoding;
+                encoding = encoding == null ? datablockEncodingMap.get(attributesKey) : encoding;
                 encoding = encoding == null ? DataBlockEncoding.NONE : encoding;
                 Configuration tempConf = new Configuration(conf);
                 tempConf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
@@ -424,6 +513,12 @@ public class HFileOutputFormat2
                 for (WriterLength wl : this.writers.values()) {
                     close(wl.writer);
                 }
+                for (RegionLocator locator : locators.values()) {
+                    locator.close();
+                }
+                if (connection != null) {
+                    connection.close();
+                }
             }
         };
     }
@@ -449,6 +544,8 @@ public class HFileOutputFormat2
     static class WriterLength {
         long written = 0;
         StoreFile.Writer writer = null;
+        // end key of the region of the HFile being written
+        byte[] regionEndKey = HConstants.EMPTY_END_ROW;
     }
 
     /**
@@ -624,7 +721,36 @@ public class HFileOutputFormat2
 
         configurePartitioner(job, startKeys, writeMultipleTables);
         // Set compression algorithms based on column families
+        configureFamilyAttributes(conf, tableDescriptors);
 
+        TableMapReduceUtil.addDependencyJars(job);
+        TableMapReduceUtil.initCredentials(job);
+        LOG.info("Incremental output configured for tables: " + StringUtils.join(allTableNames, ","));
+    }
+
+    /**
+     * Configure the multiple tables writer of {@link #createRecordWriter} outside of a job, with the
+     * same settings as {@link #configureIncrementalLoad(Job, List, Class)}.
+     *
+     * @param conf             configuration of the writer
+     * @param tableDescriptors descriptors of the tables written
+     * @throws IOException on failure to serialize the column family attributes
+     */
+    static void configureRecordWriter(Configuration conf, List<HTableDescriptor> tableDescriptors)
+            throws IOException {
+        conf.setBoolean(MULTI_TABLE_HFILEOUTPUTFORMAT_CONF_KEY, true);
+        List<String> allTableNames = new ArrayList<>(tableDescriptors.size());
+        for (HTableDescriptor tableDescriptor : tableDescriptors) {
+            allTableNames.add(tableDescriptor.getTableName().getNameWithNamespaceInclAsString());
+        }
+        conf.set(OUTPUT_TABLE_NAME_CONF_KEY, StringUtils.join(allTableNames, Bytes
+                .toString(tableSeparator)));
+        configureFamilyAttributes(conf, tableDescriptors);
+    }
+
+    private static void configureFamilyAttributes(Configuration conf,
+                                                  List<HTableDescriptor> tableDescriptors)
+            throws UnsupportedEncodingException {
         conf.set(COMPRESSION_FAMILIES_CONF_KEY, serializeColumnFamilyAttribute(compressionDetails,
                 tableDescriptors));
         conf.set(BLOCK_SIZE_FAMILIES_CONF_KEY, serializeColumnFamilyAttribute(blockSizeDetails,
@@ -633,10 +759,42 @@ public class HFileOutputFormat2
                 tableDescriptors));
         conf.set(DATABLOCK_ENCODING_FAMILIES_CONF_KEY,
                 serializeColumnFamilyAttribute(dataBlockEncodingDetails, tableDescriptors));
+    }
 
-        TableMapReduceUtil.addDependencyJars(job);
-        TableMapReduceUtil.initCredentials(job);
-        LOG.info("Incremental output configured for tables: " + StringUtils.join(allTableNames, ","));
+    /**
+     * Override the compression, block size and data block encoding of column families, once the
+     * output is configured. The maps are keyed by {@link #combineTableNameSuffix} of the table name
+     * and the family, the families missing from the maps keep their settings.
+     *
+     * @param conf        configuration of the job or of the writer
+     * @param compression compression algorithm names
+     * @param blockSize   block sizes
+     * @param encoding    data block encoding names
+     * @throws IOException on failure to serialize the column family attributes
+     */
+    public static void overrideFamilyAttributes(Configuration conf, Map<byte[], String> compression,
+                                                Map<byte[], String> blockSize,
+                                                Map<byte[], String> encoding) throws IOException {
+        overrideFamilyConfValues(conf, COMPRESSION_FAMILIES_CONF_KEY, compression);
+        overrideFamilyConfValues(conf, BLOCK_SIZE_FAMILIES_CONF_KEY, blockSize);
+        overrideFamilyConfValues(conf, DATABLOCK_ENCODING_FAMILIES_CONF_KEY, encoding);
+    }
+
+    private static void overrideFamilyConfValues(Configuration conf, String confName,
+                                                 Map<byte[], String> overrides)
+            throws UnsupportedEncodingException {
+        Map<byte[], String> confValMap = createFamilyConfValueMap(conf, confName);
+        confValMap.putAll(overrides);
+        StringBuilder attributeValue = new StringBuilder();
+        for (Map.Entry<byte[], String> e : confValMap.entrySet()) {
+            if (attributeValue.length() > 0) {
+                attributeValue.append('&');
+            }
+            attributeValue.append(URLEncoder.encode(Bytes.toString(e.getKey()), "UTF-8"));
+            attributeValue.append('=');
+            attributeValue.append(URLEncoder.encode(e.getValue(), "UTF-8"));
+        }
+        conf.set(confName, attributeValue.toString());
     }
 
     public static void configureIncrementalLoadMap(Job job, HTableDescriptor tableDescriptor) throws
@@ -752,7 +910,7 @@ public class HFileOutputFormat2
      * @param confName conf key to read from the configuration
      * @return a map of column family to the given configuration value
      */
-    private static Map<byte[], String> createFamilyConfValueMap(
+    static Map<byte[], String> createFamilyConfValueMap(
             Configuration conf, String confName) {
         Map<byte[], String> confValMap = new TreeMap<>(Bytes.BYTES_COMPARATOR);
         String confVal = conf.get(confName, "");
@@ -0,0 +1,483 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.DaemonThreadFactory;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.CommonFSUtils;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts WAL files to HFiles inside the calling process, without a MapReduce job. It produces
+ * the same output as the bulk output mode of {@link WALPlayer} with multiple tables support: the
+ * HFiles are written by the {@link HFileOutputFormat2} writer under
+ * outputDir/namespace/table/family.
+ * <p>
+ * The WAL files are read by a pool of threads. Every reader thread sorts the cells it reads in a
+ * bounded buffer, spilled to a local file once full. The sorted runs are then merged into the
+ * writer.
+ */
+@InterfaceAudience.Private
+public class LocalWALPlayer {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalWALPlayer.class);
+
+    public final static String READER_THREADS_KEY = "wal.local.reader.threads";
+    public final static int DEFAULT_READER_THREADS = 4;
+    /**
+     * Memory used to sort the cells, shared by the reader threads
+     */
+    public final static String SORT_BUFFER_BYTES_KEY = "wal.local.sort.buffer.bytes";
+    public final static long DEFAULT_SORT_BUFFER_BYTES = 128L * 1024 * 1024;
+    /**
+     * Local directory of the sort spill files, the JVM temporary directory by default
+     */
+    public final static String SPILL_DIR_KEY = "wal.local.spill.dir";
+
+    private static final byte[] TABLE_SEPARATOR = Bytes.toBytes(WALPlayer.tableSeparator);
+
+    private static final Comparator<TableCell> TABLE_CELL_COMPARATOR = (c1, c2) -> {
+        int cmp = Integer.compare(c1.table, c2.table);
+        return cmp != 0 ? cmp : KeyValue.COMPARATOR.compare(c1.kv, c2.kv);
+    };
+
+    private final Configuration conf;
+    private final Connection conn;
+    // sorted runs spilled and cells written by the last run
+    private long spillCount;
+    private long writtenCells;
+
+    public LocalWALPlayer(Configuration conf, Connection conn) {
+        this.conf = conf;
+        this.conn = conn;
+    }
+
+    /**
+     * Get the total size of WAL files, the files archived since they were listed are looked up in
+     * the archive directory
+     * @param conf  configuration
+     * @param files WAL file paths
+     * @return total size in bytes
+     * @throws IOException exception
+     */
+    public static long getTotalSize(Configuration conf, List<String> files) throws IOException {
+        long size = 0;
+        for (String file : files) {
+            Path path = new Path(file);
+            FileSystem fs = path.getFileSystem(conf);
+            FileStatus status;
+            try {
+                status = fs.getFileStatus(path);
+            } catch (FileNotFoundException e) {
+                status = fs.getFileStatus(getArchivedPath(conf, path));
+            }
+            size += status.getLen();
+        }
+        return size;
+    }
+
+    static Path getArchivedPath(Configuration conf, Path path) throws IOException {
+        Path oldLogDir = new Path(CommonFSUtils.getWALRootDir(conf), HConstants.HREGION_OLDLOGDIR_NAME);
+        return new Path(oldLogDir, path.getName());
+    }
+
+    /**
+     * Convert the cells of tables in WAL files to HFiles
+     * @param files     WAL file paths
+     * @param tables    tables to convert, the cells of the other tables are skipped
+     * @param outputDir output directory, must not exist
+     * @throws IOException exception
+     */
+    public void run(List<String> files, List<TableName> tables, Path outputDir) throws IOException {
+        List<HTableDescriptor> tableDescriptors = new ArrayList<>(tables.size());
+        Map<byte[], Integer> tableIndex = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        try (Admin admin = conn.getAdmin()) {
+            for (TableName table : tables) {
+                tableIndex.put(table.getName(), tableDescriptors.size());
+                tableDescriptors.add(admin.getTableDescriptor(table));
+            }
+        }
+
+        int threads = Math.max(1, Math.min(conf.getInt(READER_THREADS_KEY, DEFAULT_READER_THREADS),
+                files.size()));
+        long bufferBytes = conf.getLong(SORT_BUFFER_BYTES_KEY, DEFAULT_SORT_BUFFER_BYTES) / threads;
+        File spillDir = new File(conf.get(SPILL_DIR_KEY, System.getProperty("java.io.tmpdir")));
+        LOG.info("Converting " + files.size() + " WAL files of " + tables + " to HFiles in "
+                + outputDir + " with " + threads + " reader threads");
+        writtenCells = 0;
+
+        ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>(files);
+        List<SortBuffer> buffers = new ArrayList<>(threads);
+        ExecutorService pool =
+                Executors.newFixedThreadPool(threads, new DaemonThreadFactory("local-wal-player-"));
+        try {
+            List<Future<Void>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                SortBuffer buffer = new SortBuffer(bufferBytes, spillDir);
+                buffers.add(buffer);
+                futures.add(pool.submit(() -> {
+                    String file;
+                    while ((file = queue.poll()) != null) {
+                        read(new Path(file), tableIndex, buffer);
+                    }
+                    buffer.sort();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            write(buffers, tableDescriptors, outputDir);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the WAL files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read the WAL files", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            spillCount = 0;
+            for (SortBuffer buffer : buffers) {
+                spillCount += buffer.spills.size();
+                buffer.deleteSpills();
+            }
+        }
+    }
+
+    /**
+     * @return number of sorted runs spilled to local files by the last run
+     */
+    public long getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * @return number of cells written to the HFiles by the last run
+     */
+    public long getWrittenCells() {
+        return writtenCells;
+    }
+
+    /**
+     * Read the cells of the converted tables in a WAL file
+     */
+    private void read(Path path, Map<byte[], Integer> tableIndex, SortBuffer buffer)
+            throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        WAL.Reader reader;
+        try {
+            reader = WALFactory.createReader(fs, path, conf);
+        } catch (FileNotFoundException e) {
+            Path archived = getArchivedPath(conf, path);
+            LOG.info(path + " has been archived, reading " + archived);
+            reader = WALFactory.createReader(fs, archived, conf);
+        }
+        long count = 0;
+        try {
+            WAL.Entry entry;
+            while ((entry = reader.next()) != null) {
+                Integer table = tableIndex.get(entry.getKey().getTablename().getName());
+                if (table == null) {
+                    continue;
+                }
+                for (Cell cell : entry.getEdit().getCells()) {
+                    if (WALEdit.isMetaEditFamily(cell)) {
+                        continue;
+                    }
+                    buffer.add(table, KeyValueUtil.ensureKeyValue(cell));
+                    count++;
+                }
+            }
+        } catch (EOFException e) {
+            // same as the WAL input format: the file was not closed properly
+            LOG.warn("Corrupted entry detected in " + path + ", ignoring the rest of the file", e);
+        } finally {
+            reader.close();
+        }
+        LOG.debug("Read " + count + " cells from " + path);
+    }
+
+    /**
+     * Merge the sorted runs of the reader threads into the HFile writer, in a task committed to the
+     * output directory like the bulk output job.
+     */
+    private void write(List<SortBuffer> buffers, List<HTableDescriptor> tableDescriptors,
+                       Path outputDir) throws IOException, InterruptedException {
+        Configuration writerConf = new Configuration(conf);
+        HFileOutputFormat2.configureRecordWriter(writerConf, tableDescriptors);
+        BackupHFileSettings.create(conf, tableDescriptors).configure(writerConf);
+        JobID jobId = new JobID("local-wal-player-" + System.currentTimeMillis(), 0);
+        JobContext jobContext = new JobContextImpl(writerConf, jobId);
+        TaskAttemptContext context = new TaskAttemptContextImpl(writerConf,
+                new TaskAttemptID(new TaskID(jobId, TaskType.REDUCE, 0), 0));
+        FileOutputCommitter committer = new FileOutputCommitter(outputDir, context);
+        committer.setupJob(jobContext);
+        committer.setupTask(context);
+
+        List<CellSource> sources = new ArrayList<>();
+        try {
+            for (SortBuffer buffer : buffers) {
+                for (File spill : buffer.spills) {
+                    sources.add(new SpillSource(spill));
+                }
+                if (!buffer.cells.isEmpty()) {
+                    sources.add(new MemorySource(buffer.cells.iterator()));
+                }
+            }
+            PriorityQueue<CellSource> heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                    (s1, s2) -> TABLE_CELL_COMPARATOR.compare(s1.peek(), s2.peek()));
+            for (CellSource source : sources) {
+                if (source.peek() != null) {
+                    heap.add(source);
+                }
+            }
+
+            long written = 0;
+            RecordWriter<ImmutableBytesWritable, Cell> writer =
+                    HFileOutputFormat2.createRecordWriter(context, committer);
+            try {
+                TableCell last = null;
+                ImmutableBytesWritable key = null;
+                while (!heap.isEmpty()) {
+                    CellSource source = heap.poll();
+                    TableCell cell = source.peek();
+                    source.advance();
+                    if (source.peek() != null) {
+                        heap.add(source);
+                    }
+                    // duplicated cells are written once, like the sort reducer
+                    if (last != null && TABLE_CELL_COMPARATOR.compare(last, cell) == 0) {
+                        continue;
+                    }
+                    if (last == null || last.table != cell.table || !matchingRow(last.kv, cell.kv)) {
+                        byte[] table = tableDescriptors.get(cell.table).getTableName().getName();
+                        key = new ImmutableBytesWritable(Bytes.add(table, TABLE_SEPARATOR,
+                                cell.kv.getRow()));
+                    }
+                    writer.write(key, cell.kv);
+                    written++;
+                    last = cell;
+                }
+            } finally {
+                writer.close(context);
+            }
+            committer.commitTask(context);
+            committer.commitJob(jobContext);
+            writtenCells = written;
+            LOG.info("Wrote " + written + " cells to " + outputDir);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            committer.abortTask(context);
+            committer.abortJob(jobContext, JobStatus.State.FAILED);
+            throw e;
+        } finally {
+            for (CellSource source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    private static boolean matchingRow(KeyValue kv1, KeyValue kv2) {
+        return Bytes.equals(kv1.getRowArray(), kv1.getRowOffset(), kv1.getRowLength(),
+                kv2.getRowArray(), kv2.getRowOffset(), kv2.getRowLength());
+    }
+
+    private static class TableCell {
+        final int table;
+        final KeyValue kv;
+
+        TableCell(int table, KeyValue kv) {
+            this.table = table;
+            this.kv = kv;
+        }
+    }
+
+    /**
+     * Cells read by a reader thread, sorted and spilled once the buffer is full
+     */
+    private static class SortBuffer {
+        private final long limit;
+        private final File spillDir;
+        private final List<TableCell> cells = new ArrayList<>();
+        private final List<File> spills = new ArrayList<>();
+        private long heapSize = 0;
+
+        SortBuffer(long limit, File spillDir) {
+            this.limit = limit;
+            this.spillDir = spillDir;
+        }
+
+        void add(int table, KeyValue kv) throws IOException {
+            cells.add(new TableCell(table, kv));
+            heapSize += kv.heapSize();
+            if (heapSize >= limit) {
+                spill();
+            }
+        }
+
+        void sort() {
+            cells.sort(TABLE_CELL_COMPARATOR);
+        }
+
+        private void spill() throws IOException {
+            sort();
+            File file = File.createTempFile("local-wal-player-", ".spill", spillDir);
+            spills.add(file);
+            try (DataOutputStream out =
+                         new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(cells.size());
+                for (TableCell cell : cells) {
+                    out.writeInt(cell.table);
+                    KeyValue.write(cell.kv, out);
+                }
+            }
+            LOG.debug("Spilled " + cells.size() + " cells to " + file);
+            cells.clear();
+            heapSize = 0;
+        }
+
+        void deleteSpills() {
+            for (File file : spills) {
+                if (!file.delete()) {
+                    LOG.warn("Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorted run of cells
+     */
+    private interface CellSource {
+        TableCell peek();
+
+        void advance() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static class MemorySource implements CellSource {
+        private final Iterator<TableCell> it;
+        private TableCell current;
+
+        MemorySource(Iterator<TableCell> it) {
+            this.it = it;
+            this.current = it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public TableCell peek() {
+            return current;
+        }
+
+        @Override
+        public void advance() {
+            current = it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class SpillSource implements CellSource {
+        private final DataInputStream in;
+        private int remaining;
+        private TableCell current;
+
+        SpillSource(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            remaining = in.readInt();
+            advance();
+        }
+
+        @Override
+        public TableCell peek() {
+            return current;
+        }
+
+        @Override
+        public void advance() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return;
+            }
+            remaining--;
+            int table = in.readInt();
+            current = new TableCell(table, KeyValue.create(in));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.KeepDeletedCells;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Combiner of the bulk output path of {@link WALPlayer}: drops, for every row, the put cells which
+ * can not be read once loaded because the column family keeps fewer versions.
+ * <p>
+ * The combiner stays conservative:
+ * <ul>
+ * <li>delete markers are never dropped, they may cover cells of older backups</li>
+ * <li>a column with a delete marker, or a family with a family delete marker, is kept as is</li>
+ * <li>a family keeping the deleted cells is kept as is</li>
+ * <li>the cells sharing a timestamp count as a single version</li>
+ * </ul>
+ * The dropped cells are counted per table in the {@link #COUNTER_GROUP} counter group.
+ */
+@InterfaceAudience.Private
+public class WALCellCombiner
+        extends Reducer<ImmutableBytesWritable, KeyValue, ImmutableBytesWritable, KeyValue> {
+
+    public static final String COUNTER_GROUP = "WALCellCombiner dropped cells";
+
+    /**
+     * Transfers the number of versions to keep of every table family from the job setup to the
+     * combiner, 0 means keep all the versions.
+     */
+    static final String VERSIONS_FAMILIES_CONF_KEY = "wal.bulk.combiner.families.versions";
+
+    static Function<HColumnDescriptor, String> versionsDetails = familyDescriptor ->
+            String.valueOf(getVersionsToKeep(familyDescriptor));
+
+    private static final byte[] TABLE_SEPARATOR = Bytes.toBytes(WALPlayer.tableSeparator);
+
+    private Map<byte[], Integer> versionsMap;
+    private boolean multiTableSupport;
+    private byte[] singleTable;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        multiTableSupport = conf.getBoolean(WALPlayer.MULTI_TABLES_SUPPORT, false);
+        if (!multiTableSupport) {
+            singleTable = Bytes.toBytes(conf.getStrings(WALPlayer.TABLES_KEY)[0]);
+        }
+        versionsMap = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (Map.Entry<byte[], String> e : HFileOutputFormat2.createFamilyConfValueMap(conf,
+                VERSIONS_FAMILIES_CONF_KEY).entrySet()) {
+            versionsMap.put(e.getKey(), Integer.parseInt(e.getValue()));
+        }
+    }
+
+    @Override
+    protected void reduce(ImmutableBytesWritable row, Iterable<KeyValue> kvs, Context context)
+            throws IOException, InterruptedException {
+        List<KeyValue> cells = new ArrayList<>();
+        for (KeyValue kv : kvs) {
+            cells.add(kv.clone());
+        }
+        Collections.sort(cells, KeyValue.COMPARATOR);
+
+        byte[] table = getTable(row);
+        long dropped = 0;
+        int familyStart = 0;
+        while (familyStart < cells.size()) {
+            int familyEnd = familyStart + 1;
+            while (familyEnd < cells.size()
+                    && CellUtil.matchingFamily(cells.get(familyStart), cells.get(familyEnd))) {
+                familyEnd++;
+            }
+            dropped += writeFamily(row, cells.subList(familyStart, familyEnd), table, context);
+            familyStart = familyEnd;
+        }
+        if (dropped > 0) {
+            context.getCounter(COUNTER_GROUP, Bytes.toString(table)).increment(dropped);
+        }
+    }
+
+    /**
+     * Write the reachable cells of a family
+     * @return number of dropped cells
+     */
+    private long writeFamily(ImmutableBytesWritable row, List<KeyValue> cells, byte[] table,
+                             Context context) throws IOException, InterruptedException {
+        Integer versions = versionsMap.get(HFileOutputFormat2.combineTableNameSuffix(table,
+                CellUtil.cloneFamily(cells.get(0))));
+        List<KeyValue> reachable = getReachableCells(cells, versions == null ? 0 : versions);
+        for (KeyValue kv : reachable) {
+            context.write(row, kv);
+        }
+        return cells.size() - reachable.size();
+    }
+
+    /**
+     * Get the number of versions of a family the cells are dropped beyond
+     * @param familyDescriptor family
+     * @return the maximum number of versions, 0 to keep all the versions
+     */
+    public static int getVersionsToKeep(HColumnDescriptor familyDescriptor) {
+        return familyDescriptor.getKeepDeletedCells() != KeepDeletedCells.FALSE ? 0
+                : familyDescriptor.getMaxVersions();
+    }
+
+    /**
+     * Get the cells of a family of a row which can be read once loaded
+     * @param cells    cells of a single family of a row, sorted
+     * @param versions number of versions kept by the family, 0 to keep all the versions
+     * @return the cells to write, in the same order
+     */
+    public static List<KeyValue> getReachableCells(List<KeyValue> cells, int versions) {
+        boolean keepAll = versions <= 0;
+        for (int i = 0; !keepAll && i < cells.size(); i++) {
+            keepAll = CellUtil.isDeleteFamily(cells.get(i)) || CellUtil.isDeleteFamilyVersion(cells.get(i));
+        }
+        if (keepAll) {
+            return cells;
+        }
+
+        List<KeyValue> reachable = new ArrayList<>(cells.size());
+        int columnStart = 0;
+        while (columnStart < cells.size()) {
+            int columnEnd = columnStart + 1;
+            boolean deleted = CellUtil.isDelete(cells.get(columnStart));
+            while (columnEnd < cells.size()
+                    && CellUtil.matchingQualifier(cells.get(columnStart), cells.get(columnEnd))) {
+                deleted |= CellUtil.isDelete(cells.get(columnEnd));
+                columnEnd++;
+            }
+            // newest first, a new version starts with every new timestamp
+            int seen = 0;
+            long lastTs = 0;
+            for (int i = columnStart; i < columnEnd; i++) {
+                KeyValue kv = cells.get(i);
+                if (i == columnStart || kv.getTimestamp() != lastTs) {
+                    seen++;
+                    lastTs = kv.getTimestamp();
+                }
+                if (deleted || seen <= versions) {
+                    reachable.add(kv);
+                }
+            }
+            columnStart = columnEnd;
+        }
+        return reachable;
+    }
+
+    private byte[] getTable(ImmutableBytesWritable row) {
+        if (!multiTableSupport) {
+            return singleTable;
+        }
+        // table names can not contain the separator
+        byte[] key = row.get();
+        int offset = row.getOffset();
+        for (int i = offset; i < offset + row.getLength(); i++) {
+            if (key[i] == TABLE_SEPARATOR[0]) {
+                return Bytes.copy(key, offset, i - offset);
+            }
+        }
+        return Bytes.copy(key, offset, row.getLength());
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.WALInputFormat;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Estimates from a sample of the input WAL files the bytes of edits received by every region of
+ * the output tables, to balance the reducers of the bulk output mode of {@link WALPlayer}:
+ * adjacent cold regions share a reducer and hot regions are split across several reducers.
+ * <p>
+ * At most {@link #SAMPLE_FILES_KEY} files, spread over the input, are read up to
+ * {@link #SAMPLE_BYTES_KEY} bytes of cells each, and the sampled bytes are scaled by the file
+ * sizes. The reducer split points are region start keys, or sampled row keys inside the hot
+ * regions: the HFile writer still rolls at the region boundaries.
+ */
+@InterfaceAudience.Private
+public class WALPartitionSampler {
+    private static final Logger LOG = LoggerFactory.getLogger(WALPartitionSampler.class);
+
+    public final static String SAMPLE_FILES_KEY = "wal.bulk.balance.sample.files";
+    public final static int DEFAULT_SAMPLE_FILES = 64;
+    /**
+     * Bytes of cells read at the beginning of every sampled file
+     */
+    public final static String SAMPLE_BYTES_KEY = "wal.bulk.balance.sample.bytes";
+    public final static long DEFAULT_SAMPLE_BYTES = 4L * 1024 * 1024;
+
+    // a row key is kept every KEY_STRIDE sampled bytes of a region, to split the hot regions
+    private final static long KEY_STRIDE = 16 * 1024;
+
+    private final Configuration conf;
+    private final Set<byte[]> tables;
+    // sorted table;startKey composite keys, as the keys of the partitions file
+    private final byte[][] startKeys;
+    private final Region[] regions;
+
+    private static class Region {
+        final byte[] startKey;
+        double bytes;
+        long pending;
+        final List<byte[]> keys = new ArrayList<>();
+        // sampled bytes of the current file
+        long fileBytes;
+
+        Region(byte[] startKey) {
+            this.startKey = startKey;
+        }
+    }
+
+    /**
+     * @param conf      configuration of the WALPlayer job, with the tables and time range set
+     * @param startKeys region start keys of the output tables, as table;startKey composite keys
+     */
+    public WALPartitionSampler(Configuration conf, List<byte[]> startKeys) {
+        this.conf = conf;
+        this.tables = WALTableFilterInputFormat.getTables(conf);
+        this.startKeys = startKeys.toArray(new byte[startKeys.size()][]);
+        Arrays.sort(this.startKeys, Bytes.BYTES_COMPARATOR);
+        this.regions = new Region[this.startKeys.length];
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = new Region(this.startKeys[i]);
+        }
+    }
+
+    /**
+     * Sample the input WAL files
+     * @param inputs WAL files or directories
+     * @return estimated bytes of edits of the output tables
+     * @throws IOException exception
+     */
+    public double sample(List<Path> inputs) throws IOException {
+        List<FileStatus> files = new ArrayList<>();
+        for (Path input : inputs) {
+            addFiles(input, files);
+        }
+        if (files.isEmpty()) {
+            return 0;
+        }
+        int count = Math.max(1, Math.min(conf.getInt(SAMPLE_FILES_KEY, DEFAULT_SAMPLE_FILES),
+                files.size()));
+        long totalLength = 0;
+        long sampledLength = 0;
+        for (FileStatus file : files) {
+            totalLength += file.getLen();
+        }
+        for (int i = 0; i < count; i++) {
+            FileStatus file = files.get((int) ((long) i * files.size() / count));
+            sampledLength += file.getLen();
+            sampleFile(file);
+        }
+        // the unsampled files are assumed to have the same distribution
+        double scale = sampledLength > 0 ? (double) totalLength / sampledLength : 1;
+        double total = 0;
+        for (Region region : regions) {
+            region.bytes *= scale;
+            total += region.bytes;
+        }
+        LOG.info("Sampled " + count + " of " + files.size() + " WAL files, estimated " + (long) total
+                + " bytes of edits for " + regions.length + " regions");
+        return total;
+    }
+
+    private void addFiles(Path input, List<FileStatus> files) throws IOException {
+        FileSystem fs = input.getFileSystem(conf);
+        FileStatus status;
+        try {
+            status = fs.getFileStatus(input);
+        } catch (FileNotFoundException e) {
+            Path archived = LocalWALPlayer.getArchivedPath(conf, input);
+            if (!fs.exists(archived)) {
+                LOG.warn(input + " does not exist, not sampled");
+                return;
+            }
+            status = fs.getFileStatus(archived);
+        }
+        if (!status.isDirectory()) {
+            files.add(status);
+            return;
+        }
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(input, true);
+        while (it.hasNext()) {
+            files.add(it.next());
+        }
+    }
+
+    private void sampleFile(FileStatus file) throws IOException {
+        long maxBytes = conf.getLong(SAMPLE_BYTES_KEY, DEFAULT_SAMPLE_BYTES);
+        long startTime = conf.getLong(WALInputFormat.START_TIME_KEY, Long.MIN_VALUE);
+        long endTime = conf.getLong(WALInputFormat.END_TIME_KEY, Long.MAX_VALUE);
+        FileSystem fs = file.getPath().getFileSystem(conf);
+        long sampled = 0;
+        long position;
+        boolean complete = true;
+        WAL.Reader reader = WALFactory.createReader(fs, file.getPath(), conf);
+        try {
+            WAL.Entry entry;
+            while ((entry = reader.next()) != null) {
+                if (sampled >= maxBytes) {
+                    complete = false;
+                    break;
+                }
+                byte[] table = entry.getKey().getTablename().getName();
+                long writeTime = entry.getKey().getWriteTime();
+                if ((!tables.isEmpty() && !tables.contains(table)) || writeTime < startTime
+                        || writeTime > endTime) {
+                    continue;
+                }
+                for (Cell cell : entry.getEdit().getCells()) {
+                    if (WALEdit.isMetaEditFamily(cell)) {
+                        continue;
+                    }
+                    byte[] key = MultiTableHFileOutputFormat.createCompositeKey(table,
+                            CellUtil.cloneRow(cell));
+                    int idx = getRegion(key);
+                    if (idx < 0) {
+                        continue;
+                    }
+                    long length = KeyValueUtil.length(cell);
+                    Region region = regions[idx];
+                    region.fileBytes += length;
+                    region.pending += length;
+                    if (region.pending >= KEY_STRIDE) {
+                        region.keys.add(key);
+                        region.pending = 0;
+                    }
+                    sampled += length;
+                }
+            }
+        } catch (EOFException e) {
+            // same as the WAL input format: the file was not closed properly
+            LOG.debug("Corrupted entry detected in " + file.getPath() + ", sampled so far", e);
+        } finally {
+            position = reader.getPosition();
+            reader.close();
+        }
+        double scale = complete || position <= 0 ? 1 : (double) file.getLen() / position;
+        for (Region region : regions) {
+            region.bytes += region.fileBytes * scale;
+            region.fileBytes = 0;
+        }
+    }
+
+    private int getRegion(byte[] key) {
+        int idx = Arrays.binarySearch(startKeys, key, Bytes.BYTES_COMPARATOR);
+        return idx >= 0 ? idx : -(idx + 1) - 1;
+    }
+
+    /**
+     * Compute the reducer split points: a reducer receives about reducerBytes of edits, the first
+     * key is the start key of the first region
+     * @param reducerBytes bytes of edits per reducer
+     * @return split points, the number of reducers is their count
+     */
+    public List<ImmutableBytesWritable> getSplitPoints(long reducerBytes) {
+        List<ImmutableBytesWritable> points = new ArrayList<>();
+        points.add(new ImmutableBytesWritable(startKeys[0]));
+        double current = 0;
+        for (int i = 0; i < regions.length; i++) {
+            Region region = regions[i];
+            if (region.bytes <= 0) {
+                continue;
+            }
+            if (current > 0 && current + region.bytes > reducerBytes) {
+                points.add(new ImmutableBytesWritable(region.startKey));
+                current = 0;
+            }
+            int parts = (int) Math.min(Math.ceil(region.bytes / reducerBytes), region.keys.size() + 1);
+            if (parts <= 1) {
+                current += region.bytes;
+                continue;
+            }
+            // hot region: split at the quantiles of its sampled keys
+            Collections.sort(region.keys, Bytes.BYTES_COMPARATOR);
+            byte[] last = region.startKey;
+            int made = 0;
+            for (int k = 0; k < region.keys.size() && made < parts - 1; k++) {
+                byte[] key = region.keys.get(k);
+                if ((long) (k + 1) * parts >= (long) (made + 1) * region.keys.size()
+                        && Bytes.compareTo(key, last) > 0) {
+                    points.add(new ImmutableBytesWritable(key));
+                    last = key;
+                    made++;
+                }
+            }
+            current = region.bytes / (made + 1);
+        }
+        LOG.info("Balanced " + regions.length + " regions into " + points.size() + " reducers of about "
+                + reducerBytes + " bytes");
+        return points;
+    }
+}
@@ -21,6 +21,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.HFileOutputFormat2.TableInfo;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -67,6 +69,14 @@ public class WALPlayer extends Configured implements Tool {
     public final static String INPUT_FILES_SEPARATOR_KEY = "wal.input.separator";
     public final static String IGNORE_MISSING_FILES = "wal.input.ignore.missing.files";
     public final static String MULTI_TABLES_SUPPORT = "wal.multi.tables.support";
+    public final static String BULK_COMBINER_CONF_KEY = "wal.bulk.combiner";
+    /**
+     * Balance the reducers of the bulk output by the bytes of edits sampled per region instead of
+     * running one reducer per region, see {@link WALPartitionSampler}
+     */
+    public final static String BULK_BALANCE_CONF_KEY = "wal.bulk.balance";
+    public final static String BULK_BALANCE_REDUCER_BYTES_KEY = "wal.bulk.balance.reducer.bytes";
+    public final static long DEFAULT_BULK_BALANCE_REDUCER_BYTES = 1024L * 1024 * 1024;
 
     protected static final String tableSeparator = ";";
 
@@ -90,28 +100,44 @@ public class WALPlayer extends Configured implements Tool {
     /**
      * A mapper that just writes out KeyValues. This one can be used together with
      * {@link CellSortReducer}
+     * <p>
+     * The output key is written in a buffer reused across the cells: the map output collector
+     * serializes the key and the value on write, nothing refers to them afterwards.
      */
     static class WALKeyValueMapper extends Mapper<WALKey, WALEdit, ImmutableBytesWritable, Cell> {
-        private Set<String> tableSet = new HashSet<>();
+        private static final byte[] TABLE_SEPARATOR = Bytes.toBytes(tableSeparator);
+
+        private Set<byte[]> tableSet;
         private boolean multiTableSupport = false;
+        private final ImmutableBytesWritable outKey = new ImmutableBytesWritable();
+        private byte[] keyBuffer = new byte[256];
 
         @Override
         public void map(WALKey key, WALEdit value, Context context) throws IOException {
             try {
                 // skip all other tables
                 TableName table = key.getTablename();
-                if (tableSet.contains(table.getNameAsString())) {
+                if (tableSet.contains(table.getName())) {
+                    int prefixLength = multiTableSupport ? writeKeyPrefix(table.getName()) : 0;
                     for (Cell cell : value.getCells()) {
                         if (WALEdit.isMetaEditFamily(cell)) {
                             continue;
                         }
-                        byte[] outKey = multiTableSupport
-                                ? Bytes.add(table.getName(), Bytes.toBytes(tableSeparator), CellUtil.cloneRow(cell))
-                                : CellUtil.cloneRow(cell);
+                        if (multiTableSupport) {
+                            int length = prefixLength + cell.getRowLength();
+                            if (keyBuffer.length < length) {
+                                keyBuffer = Arrays.copyOf(keyBuffer, Math.max(length, keyBuffer.length * 2));
+                            }
+                            CellUtil.copyRowTo(cell, keyBuffer, prefixLength);
+                            outKey.set(keyBuffer, 0, length);
+                        } else {
+                            // the row is read in place
+                            outKey.set(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+                        }
+                        // the cells decoded from the WALs are KeyValues, they are not copied
                         KeyValue kv = KeyValueUtil.ensureKeyValue(cell);
 
-                        context.write(new ImmutableBytesWritable(outKey), kv);
-                        //context.write(new ImmutableBytesWritable(outKey), new MapReduceExtendedCell(cell));
+                        context.write(outKey, kv);
                     }
                 }
             } catch (InterruptedException e) {
@@ -120,14 +146,26 @@ public class WALPlayer extends Configured implements Tool {
             }
         }
 
+        /**
+         * Write the table;row key prefix of a WAL entry at the start of the key buffer
+         * @param tableName table name
+         * @return prefix length
+         */
+        private int writeKeyPrefix(byte[] tableName) {
+            int length = tableName.length + TABLE_SEPARATOR.length;
+            if (keyBuffer.length < length) {
+                keyBuffer = new byte[Math.max(length, keyBuffer.length * 2)];
+            }
+            System.arraycopy(tableName, 0, keyBuffer, 0, tableName.length);
+            System.arraycopy(TABLE_SEPARATOR, 0, keyBuffer, tableName.length, TABLE_SEPARATOR.length);
+            return length;
+        }
+
         @Override
         public void setup(Context context) throws IOException {
             Configuration conf = context.getConfiguration();
-            String[] tables = conf.getStrings(TABLES_KEY);
+            this.tableSet = WALTableFilterInputFormat.getTables(conf);
             this.multiTableSupport = conf.getBoolean(MULTI_TABLES_SUPPORT, false);
-            for (String table : tables) {
-                tableSet.add(table);
-            }
         }
     }
 
@@ -282,7 +320,8 @@ public class WALPlayer extends Configured implements Tool {
                 Job.getInstance(conf, conf.get(JOB_NAME_CONF_KEY, NAME + "_" + System.currentTimeMillis()));
         job.setJarByClass(WALPlayer.class);
 
-        job.setInputFormatClass(WALInputFormat.class);
+        // the entries of the other tables are dropped before the mappers
+        job.setInputFormatClass(WALTableFilterInputFormat.class);
         job.setMapOutputKeyClass(ImmutableBytesWritable.class);
 
         String hfileOutPath = conf.get(BULK_OUTPUT_CONF_KEY);
@@ -299,12 +338,26 @@ public class WALPlayer extends Configured implements Tool {
             // job.setMapOutputValueClass(MapReduceExtendedCell.class);
             try (Connection conn = ConnectionFactory.createConnection(conf)) {
                 List<TableInfo> tableInfoList = new ArrayList<>();
+                List<HTableDescriptor> tableDescriptors = new ArrayList<>();
                 for (TableName tableName : tableNames) {
                     Table table = conn.getTable(tableName);
                     RegionLocator regionLocator = conn.getRegionLocator(tableName);
-                    tableInfoList.add(new TableInfo(table.getTableDescriptor(), regionLocator));
+                    tableDescriptors.add(table.getTableDescriptor());
+                    tableInfoList.add(new TableInfo(tableDescriptors.get(tableDescriptors.size() - 1),
+                            regionLocator));
                 }
                 MultiTableHFileOutputFormat.configureIncrementalLoad(job, tableInfoList);
+                BackupHFileSettings.create(conf, tableDescriptors).configure(job.getConfiguration());
+                if (conf.getBoolean(BULK_COMBINER_CONF_KEY, false)) {
+                    // drop the versions the families do not keep before the shuffle
+                    job.setCombinerClass(WALCellCombiner.class);
+                    job.getConfiguration().set(WALCellCombiner.VERSIONS_FAMILIES_CONF_KEY,
+                            HFileOutputFormat2.serializeColumnFamilyAttribute(
+                                    WALCellCombiner.versionsDetails, tableDescriptors));
+                }
+                if (conf.getBoolean(BULK_BALANCE_CONF_KEY, false)) {
+                    balanceReducers(job, inputDirs, tableInfoList);
+                }
             }
             TableMapReduceUtil.addDependencyJars(job.getConfiguration(),
                     com.google.common.base.Preconditions.class);
@@ -327,6 +380,40 @@ public class WALPlayer extends Configured implements Tool {
         return job;
     }
 
+    /**
+     * Replace the one reducer per region partitioning by reducers of about the same estimated bytes
+     * of edits
+     */
+    private void balanceReducers(Job job, String inputDirs, List<TableInfo> tableInfoList)
+            throws IOException {
+        Configuration conf = job.getConfiguration();
+        if (!conf.getBoolean(MULTI_TABLES_SUPPORT, false)) {
+            LOG.warn(BULK_BALANCE_CONF_KEY + " requires " + MULTI_TABLES_SUPPORT
+                    + ", keeping one reducer per region");
+            return;
+        }
+        List<byte[]> startKeys = new ArrayList<>();
+        for (TableInfo tableInfo : tableInfoList) {
+            TableName tableName = tableInfo.getRegionLocator().getName();
+            for (byte[] startKey : tableInfo.getRegionLocator().getStartKeys()) {
+                startKeys.add(MultiTableHFileOutputFormat.createCompositeKey(tableName.getName(), startKey));
+            }
+        }
+        List<Path> inputs = new ArrayList<>();
+        for (String input : inputDirs.split(conf.get(INPUT_FILES_SEPARATOR_KEY, ","))) {
+            inputs.add(new Path(input));
+        }
+        WALPartitionSampler sampler = new WALPartitionSampler(conf, startKeys);
+        if (sampler.sample(inputs) <= 0) {
+            LOG.info("No edits sampled, keeping one reducer per region");
+            return;
+        }
+        List<ImmutableBytesWritable> splitPoints = sampler.getSplitPoints(
+                conf.getLong(BULK_BALANCE_REDUCER_BYTES_KEY, DEFAULT_BULK_BALANCE_REDUCER_BYTES));
+        HFileOutputFormat2.configurePartitioner(job, splitPoints, true);
+        job.setNumReduceTasks(splitPoints.size());
+    }
+
     private List<TableName> getTableNameList(String[] tables) {
         List<TableName> list = new ArrayList<TableName>();
         for (String name : tables) {
@@ -356,6 +443,16 @@ public class WALPlayer extends Configured implements Tool {
         System.err.println("To generate HFiles for a bulk data load instead, pass the following option:");
         System.err.println("  -D" + BULK_OUTPUT_CONF_KEY + "=/path/for/output");
         System.err.println("  (Only one table can be specified, and no mapping is allowed!)");
+        System.err.println("  -D" + BULK_COMBINER_CONF_KEY + "=true");
+        System.err.println("  (Drop on the map side the cell versions the column families do not keep)");
+        System.err.println("  -D" + BULK_BALANCE_CONF_KEY + "=true");
+        System.err.println("  (Balance the reducers by the bytes of edits sampled per region, about -D"
+                + BULK_BALANCE_REDUCER_BYTES_KEY + "=<bytes> per reducer)");
+        System.err.println("  -D" + BackupRestoreConstants.BACKUP_HFILE_COMPRESSION_KEY + "[.<table>;<family>]=<codec>");
+        System.err.println("  -D" + BackupRestoreConstants.BACKUP_HFILE_DATABLOCK_ENCODING_KEY
+                + "[.<table>;<family>]=<encoding>");
+        System.err.println("  -D" + BackupRestoreConstants.BACKUP_HFILE_BLOCKSIZE_KEY + "[.<table>;<family>]=<bytes>");
+        System.err.println("  (Write the HFiles with other settings than the column families)");
         System.err.println("Time range options:");
         System.err.println("  -D" + WALInputFormat.START_TIME_KEY + "=[date|ms]");
         System.err.println("  -D" + WALInputFormat.END_TIME_KEY + "=[date|ms]");
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.mapreduce.WALInputFormat;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WALKey;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@link WALInputFormat} which only hands to the mapper the WAL entries of the tables set in
+ * {@link WALPlayer#TABLES_KEY}. The entries of the other tables are dropped by the record reader,
+ * comparing the table name bytes of the WAL key: no String, no map call and no output is produced
+ * for them. All the entries are kept if no table is set.
+ */
+@InterfaceAudience.Private
+public class WALTableFilterInputFormat extends WALInputFormat {
+
+    /**
+     * Counters of the WAL entries dropped by the record reader
+     */
+    public enum Counters {
+        SKIPPED_ENTRIES, SKIPPED_BYTES
+    }
+
+    @Override
+    public RecordReader<WALKey, WALEdit> createRecordReader(InputSplit split,
+                                                            TaskAttemptContext context) throws IOException, InterruptedException {
+        RecordReader<WALKey, WALEdit> reader = super.createRecordReader(split, context);
+        Set<byte[]> tables = getTables(context.getConfiguration());
+        return tables.isEmpty() ? reader : new TableFilterRecordReader(reader, tables);
+    }
+
+    /**
+     * Get the table names to keep, as bytes
+     * @param conf configuration
+     * @return table names, empty if all tables are kept
+     */
+    static Set<byte[]> getTables(Configuration conf) {
+        Set<byte[]> tables = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+        String[] names = conf.getStrings(WALPlayer.TABLES_KEY);
+        if (names != null) {
+            for (String name : names) {
+                if (!name.isEmpty()) {
+                    tables.add(Bytes.toBytes(name));
+                }
+            }
+        }
+        return tables;
+    }
+
+    static class TableFilterRecordReader extends RecordReader<WALKey, WALEdit> {
+        private final RecordReader<WALKey, WALEdit> reader;
+        private final Set<byte[]> tables;
+        private Counter skippedEntries;
+        private Counter skippedBytes;
+
+        TableFilterRecordReader(RecordReader<WALKey, WALEdit> reader, Set<byte[]> tables) {
+            this.reader = reader;
+            this.tables = tables;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context)
+                throws IOException, InterruptedException {
+            reader.initialize(split, context);
+            skippedEntries = context.getCounter(Counters.SKIPPED_ENTRIES);
+            skippedBytes = context.getCounter(Counters.SKIPPED_BYTES);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            while (reader.nextKeyValue()) {
+                // TableName caches its name bytes, nothing is allocated to filter
+                if (tables.contains(reader.getCurrentKey().getTablename().getName())) {
+                    return true;
+                }
+                long bytes = 0;
+                for (Cell cell : reader.getCurrentValue().getCells()) {
+                    bytes += KeyValueUtil.length(cell);
+                }
+                skippedEntries.increment(1);
+                skippedBytes.increment(bytes);
+            }
+            return false;
+        }
+
+        @Override
+        public WALKey getCurrentKey() throws IOException, InterruptedException {
+            return reader.getCurrentKey();
+        }
+
+        @Override
+        public WALEdit getCurrentValue() throws IOException, InterruptedException {
+            return reader.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return reader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
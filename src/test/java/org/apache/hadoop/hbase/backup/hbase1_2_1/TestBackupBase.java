@@ -35,7 +35,6 @@ import org.apache.hadoop.hbase.security.UserProvider;
 import org.apache.hadoop.hbase.security.access.SecureTestUtil;
 import org.apache.hadoop.hbase.snapshot.SnapshotTestingUtils;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.slf4j.Logger;
@@ -139,6 +138,7 @@ public class TestBackupBase {
 
                 // backup complete
                 completeBackup(conn, backupInfo, backupManager, BackupType.INCREMENTAL, conf);
+                deleteSealedMiniIncrements();
 
             } catch (Exception e) {
                 failBackup(conn, backupInfo, backupManager, e, "Unexpected Exception : ",
@@ -199,14 +199,7 @@ public class TestBackupBase {
 
                 // SNAPSHOT_TABLES:
                 backupInfo.setPhase(BackupPhase.SNAPSHOT);
-                for (TableName tableName : tableList) {
-                    String snapshotName =
-                            "snapshot_" + Long.toString(EnvironmentEdgeManager.currentTime()) + "_"
-                                    + tableName.getNamespaceAsString() + "_" + tableName.getQualifierAsString();
-
-                    snapshotTable(admin, tableName, snapshotName);
-                    backupInfo.setSnapshotName(tableName, snapshotName);
-                }
+                snapshotTables(tableList);
                 failStageIf(Stage.stage_3);
                 // SNAPSHOT_COPY:
                 // do snapshot copy
@@ -29,6 +29,8 @@ import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.testclassification.MasterTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.junit.*;
 import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
@@ -36,10 +38,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -144,4 +151,95 @@ public class TestBackupHFileCleaner {
         assertFalse("Cleaner should not allow to delete this file as there is a hfile reference "
                 + "for it.", found);
     }
+
+    @Test
+    public void testIncrementalAndFullRefresh() throws IOException {
+        TableName table = TableName.valueOf("backup.hfile.cleaner.refresh");
+        Configuration cleanerConf = new Configuration(conf);
+        cleanerConf.setLong(BackupRestoreConstants.BACKUP_HFILE_CLEANER_FULL_REFRESH_MS_KEY,
+                Long.MAX_VALUE);
+        BackupHFileCleaner cleaner = new BackupHFileCleaner();
+        cleaner.setConf(cleanerConf);
+        cleaner.setCheckForFullyBackedUpTables(false);
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             BackupSystemTable sysTbl = new BackupSystemTable(conn)) {
+            List<FileStatus> stats = new ArrayList<>();
+            for (String name : new String[]{"hfile-c", "hfile-a", "hfile-b"}) {
+                Path file = new Path(root, name);
+                fs.createNewFile(file);
+                stats.add(fs.getFileStatus(file));
+            }
+            // the first read is the full refresh, the files are older than the second read
+            cleaner.getDeletableFiles(stats);
+            assertEquals(names("hfile-a", "hfile-b", "hfile-c"), getDeletable(cleaner, stats));
+
+            // bulk loads recorded after the full refresh are read by the next refreshes
+            writeBulkLoad(sysTbl, table, "hfile-c", "hfile-a");
+            assertEquals(names("hfile-b"), getDeletable(cleaner, stats));
+            writeBulkLoad(sysTbl, table, "hfile-b");
+            assertEquals(names(), getDeletable(cleaner, stats));
+
+            // a removed record stays cached until the next full refresh
+            List<byte[]> rows = new ArrayList<>();
+            for (byte[] row : sysTbl.readBulkloadRows(Collections.singletonList(table))
+                    .getSecond()) {
+                if (Bytes.toString(row).endsWith("hfile-c")) {
+                    rows.add(row);
+                }
+            }
+            assertFalse(rows.isEmpty());
+            sysTbl.deleteBulkLoadedRows(rows);
+            assertEquals(names(), getDeletable(cleaner, stats));
+            cleanerConf.setLong(BackupRestoreConstants.BACKUP_HFILE_CLEANER_FULL_REFRESH_MS_KEY, 0);
+            assertEquals(names("hfile-c"), getDeletable(cleaner, stats));
+        } finally {
+            cleaner.stop("test done");
+        }
+    }
+
+    private static void writeBulkLoad(BackupSystemTable sysTbl, TableName table, String... files)
+            throws IOException {
+        List<Path> paths = new ArrayList<>(files.length);
+        for (String file : files) {
+            paths.add(new Path("/bulkload", file));
+        }
+        Map<byte[], List<Path>> finalPaths = new HashMap<>();
+        finalPaths.put(famName.getBytes(), paths);
+        sysTbl.writePathsPostBulkLoad(table, Bytes.toBytes("region"), finalPaths);
+    }
+
+    private static Set<String> getDeletable(BackupHFileCleaner cleaner, List<FileStatus> stats) {
+        Set<String> deletable = new HashSet<>();
+        for (FileStatus stat : cleaner.getDeletableFiles(stats)) {
+            deletable.add(stat.getPath().getName());
+        }
+        return deletable;
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testReadBulkLoadedFileNamesSince() throws IOException {
+        Path file = new Path(root, "testReadBulkLoadedFileNamesSince");
+        List<Path> list = new ArrayList<>(1);
+        list.add(file);
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             BackupSystemTable sysTbl = new BackupSystemTable(conn)) {
+            List<TableName> sTableList = new ArrayList<>();
+            sTableList.add(tableName);
+            Map<byte[], List<Path>>[] maps = new Map[1];
+            maps[0] = new HashMap<>();
+            maps[0].put(famName.getBytes(), list);
+            long before = EnvironmentEdgeManager.currentTime();
+            sysTbl.writeBulkLoadedFiles(sTableList, maps, "2");
+
+            Map<TableName, Set<String>> names = sysTbl.readBulkLoadedFileNames(before);
+            assertTrue(names.get(tableName).contains(file.getName()));
+            // records written before the high-water mark are not read again
+            names = sysTbl.readBulkLoadedFileNames(EnvironmentEdgeManager.currentTime() + 60000);
+            assertFalse(names.containsKey(tableName));
+        }
+    }
 }
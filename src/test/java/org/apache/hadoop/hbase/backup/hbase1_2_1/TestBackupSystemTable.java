@@ -27,9 +27,13 @@ import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupInfo.BackupState;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManager;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.*;
 import org.junit.experimental.categories.Category;
 
@@ -196,6 +200,21 @@ public class TestBackupSystemTable {
         cleanBackupTable();
     }
 
+    @Test
+    public void testRegionServerLastLogRollResultsBatch() throws IOException {
+        Map<String, Long> results = new HashMap<>();
+        results.put("server1:16020", 100L);
+        results.put("server2:16020", 102L);
+        table.writeRegionServerLastLogRollResults(results, "root");
+
+        assertEquals(results, table.readRegionServerLastLogRollResult("root"));
+        assertEquals(Long.valueOf(102L), table.readRegionServerLastLogRollResult("server2:16020", "root"));
+        assertNull(table.readRegionServerLastLogRollResult("server3:16020", "root"));
+        assertNull(table.readRegionServerLastLogRollResult("server1:16020", "root2"));
+
+        cleanBackupTable();
+    }
+
     @Test
     public void testIncrementalBackupTableSet() throws IOException {
         TreeSet<TableName> tables1 = new TreeSet<>();
@@ -345,6 +364,102 @@ public class TestBackupSystemTable {
         cleanBackupTable();
     }
 
+    @Test
+    public void testGetWALFilesByRange() throws IOException {
+        List<String> files =
+                Arrays.asList("hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.1000",
+                        "hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.2000",
+                        "hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.3000",
+                        "hdfs://server/WALs/srv2,102,16666/srv2%2C102%2C16666.default.2000");
+
+        table.addWALFiles(files, "backup", "root");
+        table.addWALFiles(Arrays.asList(files.get(1)), "backup2", "root2");
+        table.migrateWALIndex();
+
+        List<String> res = new ArrayList<>();
+        table.getWALFiles("root", "srv1:101", 1000L, 3000L).forEach(item -> res.add(item.getWalFile()));
+        assertEquals(Arrays.asList(files.get(1)), res);
+
+        res.clear();
+        table.getWALFiles("root", "srv1:101", -1L, Long.MAX_VALUE)
+                .forEach(item -> res.add(item.getWalFile()));
+        assertEquals(files.subList(0, 3), res);
+
+        assertEquals(1, table.getWALFiles("root", "srv2:102", -1L, Long.MAX_VALUE).size());
+        assertEquals("backup2",
+                table.getWALFiles("root2", "srv1:101", -1L, Long.MAX_VALUE).get(0).getBackupId());
+        assertTrue(table.getWALFiles("root2", "srv2:102", -1L, Long.MAX_VALUE).isEmpty());
+
+        cleanBackupTable();
+    }
+
+    @Test
+    public void testMigrateWALIndex() throws IOException {
+        List<String> files =
+                Arrays.asList("hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.1000",
+                        "hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.2000");
+        String lateFile = "hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.3000";
+
+        // WAL files recorded before the backup root index existed
+        try (Table t = conn.getTable(BackupSystemTable.getTableName(conf))) {
+            for (String file : files) {
+                t.put(createLegacyWALPut(file, "backup", "root"));
+            }
+            assertTrue(table.getWALFiles("root", "srv1:101", -1L, Long.MAX_VALUE).isEmpty());
+
+            table.migrateWALIndex();
+            List<String> res = new ArrayList<>();
+            table.getWALFiles("root", "srv1:101", -1L, Long.MAX_VALUE)
+                    .forEach(item -> res.add(item.getWalFile()));
+            assertEquals(files, res);
+            assertEquals("backup",
+                    table.getWALFiles("root", "srv1:101", -1L, Long.MAX_VALUE).get(0).getBackupId());
+
+            // the migration runs once: a legacy row recorded afterwards is not indexed
+            t.put(createLegacyWALPut(lateFile, "backup", "root"));
+            table.migrateWALIndex();
+            assertEquals(files.size(),
+                    table.getWALFiles("root", "srv1:101", -1L, Long.MAX_VALUE).size());
+        }
+
+        cleanBackupTable();
+    }
+
+    private static Put createLegacyWALPut(String file, String backupId, String backupRoot) {
+        byte[] family = Bytes.toBytes("meta");
+        Put put = new Put(Bytes.toBytes("wals:" + BackupUtils.getUniqueWALFileNamePart(file)));
+        put.addColumn(family, Bytes.toBytes("backupId"), Bytes.toBytes(backupId));
+        put.addColumn(family, Bytes.toBytes("file"), Bytes.toBytes(file));
+        put.addColumn(family, Bytes.toBytes("root"), Bytes.toBytes(backupRoot));
+        return put;
+    }
+
+    @Test
+    public void testWALCatalog() throws IOException {
+        String server = "srv1:101";
+        List<String> files =
+                Arrays.asList("hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.1000",
+                        "hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.2000",
+                        "hdfs://server/WALs/srv1,101,15555/srv1%2C101%2C15555.default.3000");
+        String archived = "hdfs://server/oldWALs/srv1%2C101%2C15555.default.1000";
+
+        table.addWALCatalogEntries(server, files);
+        table.addWALCatalogEntries(server, Arrays.asList(archived));
+        table.writeWALCatalogSince(server, 1000L);
+
+        assertEquals(Long.valueOf(1000L), table.readWALCatalogSince().get(server));
+        assertEquals(Arrays.asList(archived, files.get(1), files.get(2)),
+                table.readWALCatalog(server, 0L, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(files.get(1)), table.readWALCatalog(server, 1000L, 2000L));
+        assertTrue(table.readWALCatalog("srv2:102", 0L, Long.MAX_VALUE).isEmpty());
+
+        table.deleteWALCatalogEntries(Arrays.asList(archived));
+        assertEquals(Arrays.asList(files.get(1), files.get(2)),
+                table.readWALCatalog(server, 0L, Long.MAX_VALUE));
+
+        cleanBackupTable();
+    }
+
     /**
      * Backup set tests
      */
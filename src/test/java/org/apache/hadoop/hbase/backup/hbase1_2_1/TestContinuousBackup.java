@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.ContinuousBackupService;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.TableBackupClient;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.TableBackupClient.Stage;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.regionserver.HRegionServer;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup t1, t2
+ * 2. Load data to t1, t2 and roll the WALs
+ * 3. Convert the closed WALs to a mini-increment with the continuous backup service
+ * 4. Incremental backup t1, t2 sealing the mini-increment
+ * 5. Restore the incremental backup
+ * <p>
+ * An incremental backup failing after sealing the mini-increments leaves them to the next one.
+ */
+@Category(LargeTests.class)
+public class TestContinuousBackup extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestContinuousBackup.class);
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY, true);
+        conf1.setLong(BackupRestoreConstants.BACKUP_WAL_CATALOG_FLUSH_INTERVAL_MS_KEY, 500);
+    }
+
+    @Test
+    public void testContinuousBackupSealed() throws Exception {
+        List<TableName> tables = Lists.newArrayList(table1, table2);
+        try (Connection conn = ConnectionFactory.createConnection(conf1)) {
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            try (Table t1 = conn.getTable(table1); Table t2 = conn.getTable(table2)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Put p = new Put(Bytes.toBytes("row-continuous" + i));
+                    p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                    t1.put(p);
+                    t2.put(p);
+                }
+            }
+            for (JVMClusterUtil.RegionServerThread rst :
+                    TEST_UTIL.getHBaseCluster().getLiveRegionServerThreads()) {
+                HRegionServer rs = rst.getRegionServer();
+                rs.getWAL(null).rollWriter(true);
+            }
+
+            try (ContinuousBackupService service = new ContinuousBackupService(conn, BACKUP_ROOT_DIR)) {
+                // the closed WALs show up once the region servers flushed their WAL catalog
+                TEST_UTIL.waitFor(60000, () -> service.runOnce() != null);
+            }
+            List<BackupSystemTable.MiniIncrement> minis;
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                minis = table.getMiniIncrements(BACKUP_ROOT_DIR);
+            }
+            Assert.assertFalse(minis.isEmpty());
+
+            String backupIdInc = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc));
+
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                Assert.assertTrue(table.getMiniIncrements(BACKUP_ROOT_DIR).isEmpty());
+            }
+            FileSystem fs = FileSystem.get(conf1);
+            for (BackupSystemTable.MiniIncrement mini : minis) {
+                Assert.assertFalse(fs.exists(new Path(mini.getDir())));
+            }
+
+            TableName[] tablesRestore = new TableName[]{table1, table2};
+            TableName[] tablesMap = new TableName[]{table1_restore, table2_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    tablesRestore, tablesMap, true));
+
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            Assert.assertEquals(TEST_UTIL.countRows(table2), TEST_UTIL.countRows(table2_restore));
+            TEST_UTIL.deleteTable(table1_restore);
+            TEST_UTIL.deleteTable(table2_restore);
+        }
+    }
+
+    @Test
+    public void testContinuousBackupFailedSeal() throws Exception {
+        List<TableName> tables = Lists.newArrayList(table1);
+        try (Connection conn = ConnectionFactory.createConnection(conf1)) {
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            try (Table t1 = conn.getTable(table1)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Put p = new Put(Bytes.toBytes("row-failed-seal" + i));
+                    p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                    t1.put(p);
+                }
+            }
+            for (JVMClusterUtil.RegionServerThread rst :
+                    TEST_UTIL.getHBaseCluster().getLiveRegionServerThreads()) {
+                rst.getRegionServer().getWAL(null).rollWriter(true);
+            }
+            try (ContinuousBackupService service = new ContinuousBackupService(conn, BACKUP_ROOT_DIR)) {
+                TEST_UTIL.waitFor(60000, () -> service.runOnce() != null);
+            }
+            List<BackupSystemTable.MiniIncrement> minis;
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                minis = table.getMiniIncrements(BACKUP_ROOT_DIR);
+            }
+            Assert.assertFalse(minis.isEmpty());
+
+            // the incremental backup fails once the mini-increments are sealed in its image
+            Configuration conf = new Configuration(conf1);
+            conf.set(TableBackupClient.BACKUP_CLIENT_IMPL_CLASS,
+                    IncrementalTableBackupClientForTest.class.getName());
+            conf.setInt(TableBackupClient.BACKUP_TEST_MODE_STAGE, Stage.stage_2.ordinal());
+            try (Connection failConn = ConnectionFactory.createConnection(conf)) {
+                try {
+                    new BackupAdminImpl(failConn).backupTables(
+                            createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+                    Assert.fail("The incremental backup should have failed");
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+            FileSystem fs = FileSystem.get(conf1);
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                Assert.assertEquals(minis.size(), table.getMiniIncrements(BACKUP_ROOT_DIR).size());
+            }
+            for (BackupSystemTable.MiniIncrement mini : minis) {
+                Assert.assertTrue(fs.exists(new Path(mini.getDir())));
+            }
+
+            String backupIdInc = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc));
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                Assert.assertTrue(table.getMiniIncrements(BACKUP_ROOT_DIR).isEmpty());
+            }
+            for (BackupSystemTable.MiniIncrement mini : minis) {
+                Assert.assertFalse(fs.exists(new Path(mini.getDir())));
+            }
+
+            TableName[] tablesRestore = new TableName[]{table1};
+            TableName[] tablesMap = new TableName[]{table1_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    tablesRestore, tablesMap, true));
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            TEST_UTIL.deleteTable(table1_restore);
+        }
+    }
+}
@@ -17,8 +17,15 @@
  */
 package org.apache.hadoop.hbase.backup.hbase1_2_1;
 
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupManager;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.FullTableBackupClient;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.TableBackupClient;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceBackupCopyJob;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.testclassification.LargeTests;
 import org.apache.hadoop.util.ToolRunner;
 import org.junit.ClassRule;
@@ -27,8 +34,15 @@ import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 @Category(LargeTests.class)
@@ -62,4 +76,92 @@ public class TestFullBackup extends TestBackupBase {
         LOG.info("backup complete");
     }
 
+    @Test
+    public void testFullBackupConcurrentExport() throws Exception {
+        LOG.info("test full backup on multiple tables with concurrent snapshot export");
+        conf1.setInt(BackupRestoreConstants.BACKUP_EXPORT_MAX_CONCURRENCY_KEY, 2);
+        conf1.setClass(BackupRestoreFactory.HBASE_BACKUP_COPY_IMPL_CLASS,
+                ProgressRecordingCopyJob.class, BackupCopyJob.class);
+        try {
+            ProgressRecordingCopyJob.PROGRESS.clear();
+            List<TableName> tables = Lists.newArrayList(table1, table2, table3);
+            String backupId = fullTableBackup(tables);
+            assertTrue(checkSucceeded(backupId));
+
+            // every finished export adds its share to the progress of the others
+            List<Integer> progress = ProgressRecordingCopyJob.PROGRESS;
+            assertEquals(tables.size(), progress.size());
+            for (int i = 1; i < progress.size(); i++) {
+                assertTrue(progress.toString(), progress.get(i) > progress.get(i - 1));
+                assertTrue(progress.toString(), progress.get(i - 1) < 100);
+            }
+            assertEquals(100, (int) progress.get(progress.size() - 1));
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_EXPORT_MAX_CONCURRENCY_KEY);
+            conf1.unset(BackupRestoreFactory.HBASE_BACKUP_COPY_IMPL_CLASS);
+        }
+        LOG.info("backup complete");
+    }
+
+    @Test
+    public void testFullBackupConcurrentSnapshots() throws Exception {
+        LOG.info("test full backup on multiple tables with concurrent and retried snapshots");
+        conf1.set(TableBackupClient.BACKUP_CLIENT_IMPL_CLASS,
+                SnapshotRetryBackupClient.class.getName());
+        conf1.setInt(BackupRestoreConstants.BACKUP_SNAPSHOT_MAX_CONCURRENCY_KEY, 3);
+        conf1.setInt(BackupRestoreConstants.BACKUP_ATTEMPTS_PAUSE_MS_KEY, 100);
+        try {
+            SnapshotRetryBackupClient.ATTEMPTS.clear();
+            List<TableName> tables = Lists.newArrayList(table1, table2, table3);
+            String backupId = fullTableBackup(tables);
+            assertTrue(checkSucceeded(backupId));
+
+            // the latencies are read back from the backup system table
+            BackupInfo info = getBackupAdmin().getBackupInfo(backupId);
+            for (TableName table : tables) {
+                assertEquals(2, SnapshotRetryBackupClient.ATTEMPTS.get(table).get());
+                assertTrue(info.getSnapshotLatency(table) >= 0);
+            }
+        } finally {
+            conf1.unset(TableBackupClient.BACKUP_CLIENT_IMPL_CLASS);
+            conf1.unset(BackupRestoreConstants.BACKUP_SNAPSHOT_MAX_CONCURRENCY_KEY);
+            conf1.unset(BackupRestoreConstants.BACKUP_ATTEMPTS_PAUSE_MS_KEY);
+        }
+    }
+
+    /**
+     * Copy job recording the backup progress reported as the snapshot exports finish
+     */
+    public static class ProgressRecordingCopyJob extends MapReduceBackupCopyJob {
+        static final List<Integer> PROGRESS = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        protected synchronized void addSubTaskProgress(BackupInfo backupInfo,
+                                                       BackupManager backupManager,
+                                                       float subTaskProgress, long subTaskBytes)
+                throws IOException {
+            super.addSubTaskProgress(backupInfo, backupManager, subTaskProgress, subTaskBytes);
+            PROGRESS.add(backupInfo.getProgress());
+        }
+    }
+
+    /**
+     * Full backup client failing the first snapshot attempt of every table
+     */
+    static class SnapshotRetryBackupClient extends FullTableBackupClient {
+        static final Map<TableName, AtomicInteger> ATTEMPTS = new ConcurrentHashMap<>();
+
+        public SnapshotRetryBackupClient() {
+        }
+
+        @Override
+        protected void takeSnapshot(Admin admin, TableName tableName, String snapshotName)
+                throws IOException {
+            if (ATTEMPTS.computeIfAbsent(tableName, t -> new AtomicInteger())
+                    .incrementAndGet() == 1) {
+                throw new IOException("Failing the first snapshot attempt of " + tableName);
+            }
+            super.takeSnapshot(admin, tableName, snapshotName);
+        }
+    }
 }
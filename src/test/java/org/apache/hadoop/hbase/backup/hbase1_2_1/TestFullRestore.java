@@ -19,11 +19,27 @@ package org.apache.hadoop.hbase.backup.hbase1_2_1;
 
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.RestoreTablesClient;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.RestoreTablesClient.TableRestoreStatus;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceRestoreJob;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileIndex;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupRegionBoundaries;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.HFileLink;
 import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSUtils;
+import org.apache.hadoop.hbase.util.HFileArchiveUtil;
 import org.apache.hadoop.util.ToolRunner;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -32,10 +48,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @Category(LargeTests.class)
 public class TestFullRestore extends TestBackupBase {
@@ -73,6 +101,344 @@ public class TestFullRestore extends TestBackupBase {
         hba.close();
     }
 
+    /**
+     * Verify that a table restored into a new table gets the same rows whether the store files
+     * are bulk loaded as they are or rewritten by the HFile splitter job, and that the splitter
+     * job only runs once the direct bulk load is disabled.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreSingleDirectBulkLoad() throws Exception {
+        LOG.info("test full restore with and without the direct bulk load");
+
+        List<TableName> tables = Lists.newArrayList(table1);
+        TEST_UTIL.getHBaseAdmin().flush(table1);
+        String backupId = fullTableBackup(tables);
+        assertTrue(checkSucceeded(backupId));
+
+        TableName[] tableset = new TableName[]{table1};
+        TableName[] tablemap = new TableName[]{table1_restore};
+        BackupAdmin client = getBackupAdmin();
+        conf1.setClass(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS,
+                RestoreJobForTest.class, RestoreJob.class);
+        try {
+            RestoreJobForTest.RUNS.set(0);
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId, false,
+                    tableset, tablemap, false));
+            assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            assertEquals(0, RestoreJobForTest.RUNS.get());
+            TEST_UTIL.deleteTable(table1_restore);
+
+            conf1.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY, false);
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId, false,
+                    tableset, tablemap, false));
+            assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            assertEquals(1, RestoreJobForTest.RUNS.get());
+            TEST_UTIL.deleteTable(table1_restore);
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY);
+            conf1.unset(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS);
+        }
+    }
+
+    /**
+     * Verify that an image holding a reference or a link file is restored with the HFile
+     * splitter job instead of the direct bulk load.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreDirectBulkLoadFallback() throws Exception {
+        LOG.info("test full restore of an image holding references and links");
+
+        List<TableName> tables = Lists.newArrayList(table1);
+        TEST_UTIL.getHBaseAdmin().flush(table1);
+        String backupId = fullTableBackup(tables);
+        assertTrue(checkSucceeded(backupId));
+
+        Path root = new Path(BACKUP_ROOT_DIR);
+        FileSystem fs = root.getFileSystem(conf1);
+        Map<String, BackupHFileIndex.Entry> image =
+                BackupHFileIndex.readImage(conf1, fs, root, backupId, table1);
+        assertFalse(image.isEmpty());
+        Path storeFile = image.values().iterator().next().getPath(root, table1);
+        String region = storeFile.getParent().getParent().getName();
+        // the files keep their HFile content, only their name tells a reference or a link
+        Path[] renamed = new Path[]{
+                new Path(storeFile.getParent(), storeFile.getName() + "." + region),
+                new Path(storeFile.getParent(),
+                        HFileLink.createHFileLinkName(table1, region, storeFile.getName()))};
+
+        TableName[] tableset = new TableName[]{table1};
+        TableName[] tablemap = new TableName[]{table1_restore};
+        BackupAdmin client = getBackupAdmin();
+        conf1.setClass(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS,
+                RestoreJobForTest.class, RestoreJob.class);
+        try {
+            for (Path path : renamed) {
+                assertTrue(fs.rename(storeFile, path));
+                try {
+                    RestoreJobForTest.RUNS.set(0);
+                    client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId,
+                            false, tableset, tablemap, false));
+                    assertEquals(path.getName(), 1, RestoreJobForTest.RUNS.get());
+                    assertEquals(TEST_UTIL.countRows(table1),
+                            TEST_UTIL.countRows(table1_restore));
+                    TEST_UTIL.deleteTable(table1_restore);
+                } finally {
+                    assertTrue(fs.rename(path, storeFile));
+                }
+            }
+        } finally {
+            conf1.unset(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS);
+        }
+    }
+
+    /**
+     * Verify that a table restored into a new table is split at the region boundaries recorded by
+     * the backup, including the boundaries of the regions without data.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreRecordedBoundaries() throws Exception {
+        LOG.info("test full restore at the region boundaries recorded by the backup");
+
+        TableName table = TableName.valueOf("table_boundaries");
+        TableName tableRestore = TableName.valueOf("ns1:table_boundaries_restore");
+        byte[][] splitKeys = new byte[][]{Bytes.toBytes("row3"), Bytes.toBytes("row6"),
+                Bytes.toBytes("zzz")};
+        try (Table t = TEST_UTIL.createTable(table, new byte[][]{famName}, splitKeys)) {
+            loadTable(t);
+        }
+        TEST_UTIL.getHBaseAdmin().flush(table);
+        String backupId = fullTableBackup(Lists.newArrayList(table));
+        assertTrue(checkSucceeded(backupId));
+
+        BackupRegionBoundaries boundaries = HBackupFileSystem.getManifest(conf1,
+                new Path(BACKUP_ROOT_DIR), backupId).getRegionBoundaries();
+        assertNotNull(boundaries);
+        assertArrayEquals(splitKeys, boundaries.get(table));
+
+        getBackupAdmin().restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId, false,
+                new TableName[]{table}, new TableName[]{tableRestore}, false));
+        assertEquals(TEST_UTIL.countRows(table), TEST_UTIL.countRows(tableRestore));
+        assertEquals(splitKeys.length + 1, TEST_UTIL.getHBaseAdmin().getTableRegions(tableRestore).size());
+        TEST_UTIL.deleteTable(tableRestore);
+        TEST_UTIL.deleteTable(table);
+    }
+
+    /**
+     * Verify that a table restored into a new table by cloning the exported snapshot gets the same
+     * rows as the backed up table.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreSingleSnapshotClone() throws Exception {
+        LOG.info("test full restore by cloning the exported snapshot");
+
+        List<TableName> tables = Lists.newArrayList(table1);
+        TEST_UTIL.getHBaseAdmin().flush(table1);
+        String backupId = fullTableBackup(tables);
+        assertTrue(checkSucceeded(backupId));
+
+        TableName[] tableset = new TableName[]{table1};
+        TableName[] tablemap = new TableName[]{table1_restore};
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_SNAPSHOT_CLONE_KEY, true);
+        try {
+            BackupAdmin client = getBackupAdmin();
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId, false,
+                    tableset, tablemap, false));
+            assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            assertStoreFilesLinked(table1_restore);
+            TEST_UTIL.deleteTable(table1_restore);
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_SNAPSHOT_CLONE_KEY);
+        }
+    }
+
+    /**
+     * Verify that the snapshot exported with a full backup image is cloned once the store files
+     * of the backed up table are gone from the cluster, the store files being copied from the
+     * image to the archive.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreSnapshotCloneMissingFiles() throws Exception {
+        LOG.info("test full restore by cloning the exported snapshot without the store files");
+
+        TableName table = TableName.valueOf("table_clone");
+        TableName tableRestore = TableName.valueOf("table_clone_restore");
+        try (Table t = TEST_UTIL.createTable(table, famName)) {
+            loadTable(t);
+        }
+        TEST_UTIL.getHBaseAdmin().flush(table);
+        String backupId = fullTableBackup(Lists.newArrayList(table));
+        assertTrue(checkSucceeded(backupId));
+
+        // the store files of the dropped table are archived, drop them from the archive too
+        TEST_UTIL.deleteTable(table);
+        Path archiveDir = HFileArchiveUtil.getTableArchivePath(conf1, table);
+        FileSystem rootFs = archiveDir.getFileSystem(conf1);
+        rootFs.delete(archiveDir, true);
+
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_SNAPSHOT_CLONE_KEY, true);
+        try {
+            getBackupAdmin().restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId,
+                    false, new TableName[]{table}, new TableName[]{tableRestore}, false));
+            assertEquals(NB_ROWS_IN_BATCH, TEST_UTIL.countRows(tableRestore));
+            assertStoreFilesLinked(tableRestore);
+            assertTrue(rootFs.exists(archiveDir));
+            TEST_UTIL.deleteTable(tableRestore);
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_SNAPSHOT_CLONE_KEY);
+        }
+    }
+
+    /**
+     * Check that the families of a table hold links only, as a table cloned from a snapshot
+     */
+    private void assertStoreFilesLinked(TableName table) throws IOException {
+        Path tableDir = FSUtils.getTableDir(FSUtils.getRootDir(conf1), table);
+        FileSystem fs = tableDir.getFileSystem(conf1);
+        int links = 0;
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(tableDir, true);
+        while (it.hasNext()) {
+            Path file = it.next().getPath();
+            if (file.getParent().getName().equals(Bytes.toString(famName))) {
+                assertTrue(file.toString(), HFileLink.isHFileLink(file));
+                links++;
+            }
+        }
+        assertTrue(links > 0);
+    }
+
+    /**
+     * Verify that a table is restored from a deduplicated full backup image, once the image
+     * holding its store files got deleted.
+     *
+     * @throws Exception if doing the backups, deleting or restoring them fails
+     */
+    @Test
+    public void testFullRestoreDeduplicated() throws Exception {
+        LOG.info("test full restore of a deduplicated full backup");
+
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_FULL_DEDUP_ENABLED_KEY, true);
+        try {
+            List<TableName> tables = Lists.newArrayList(table1);
+            TEST_UTIL.getHBaseAdmin().flush(table1);
+            String backupId1 = fullTableBackup(tables);
+            assertTrue(checkSucceeded(backupId1));
+            String backupId2 = fullTableBackup(tables);
+            assertTrue(checkSucceeded(backupId2));
+            LOG.info("backups complete");
+
+            Path root = new Path(BACKUP_ROOT_DIR);
+            FileSystem fs = root.getFileSystem(conf1);
+            Map<String, BackupHFileIndex.Entry> index = BackupHFileIndex.readIndex(fs, root, table1);
+            assertFalse(index.isEmpty());
+            // the second image shares the unchanged store files of the first one
+            List<BackupHFileIndex.Entry> shared =
+                    BackupHFileIndex.readSharedFiles(fs, root, backupId2, table1);
+            assertFalse(shared.isEmpty());
+            Map<String, BackupHFileIndex.Entry> image2 =
+                    BackupHFileIndex.readImage(conf1, fs, root, backupId2, table1);
+            for (BackupHFileIndex.Entry entry : shared) {
+                assertEquals(backupId1, entry.getBackupId());
+                assertTrue(index.containsKey(entry.getName()));
+                assertTrue(image2.containsKey(entry.getName()));
+                assertEquals(backupId1, image2.get(entry.getName()).getBackupId());
+                assertTrue(fs.exists(entry.getPath(root, table1)));
+            }
+            long copied1 = fs.getContentSummary(
+                    HBackupFileSystem.getTableBackupPath(table1, root, backupId1)).getLength();
+            long copied2 = fs.getContentSummary(
+                    HBackupFileSystem.getTableBackupPath(table1, root, backupId2)).getLength();
+            assertTrue("Second image copied " + copied2 + " bytes, first " + copied1,
+                    copied2 < copied1);
+
+            BackupAdmin client = getBackupAdmin();
+            assertEquals(1, client.deleteBackups(new String[]{backupId1}));
+
+            TableName[] tableset = new TableName[]{table1};
+            TableName[] tablemap = new TableName[]{table1_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId2, false,
+                    tableset, tablemap, false));
+            HBaseAdmin hba = TEST_UTIL.getHBaseAdmin();
+            assertTrue(hba.tableExists(table1_restore));
+            assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            TEST_UTIL.deleteTable(table1_restore);
+            hba.close();
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_FULL_DEDUP_ENABLED_KEY);
+        }
+    }
+
+    /**
+     * Verify that a table is restored from a differential full backup image.
+     *
+     * @throws Exception if doing the backups or restoring them fails
+     */
+    @Test
+    public void testFullRestoreDifferential() throws Exception {
+        LOG.info("test full restore of a differential full backup");
+
+        List<TableName> tables = Lists.newArrayList(table1);
+        String backupIdFull = fullTableBackup(tables);
+        assertTrue(checkSucceeded(backupIdFull));
+
+        Connection conn = TEST_UTIL.getConnection();
+        HTable t1 = insertIntoTable(conn, table1, famName, 1, NB_ROWS_IN_BATCH);
+        t1.close();
+        TEST_UTIL.getHBaseAdmin().flush(table1);
+
+        BackupAdmin client = getBackupAdmin();
+        BackupRequest request = new BackupRequest.Builder().withBackupType(BackupType.FULL)
+                .withTableList(tables).withTargetRootDir(BACKUP_ROOT_DIR).withDifferential(true)
+                .build();
+        String backupIdDiff = client.backupTables(request);
+        assertTrue(checkSucceeded(backupIdDiff));
+        LOG.info("backups complete");
+
+        // only the store files written since the base image are exported
+        Path root = new Path(BACKUP_ROOT_DIR);
+        FileSystem fs = root.getFileSystem(conf1);
+        Map<String, BackupHFileIndex.Entry> base =
+                BackupHFileIndex.readImage(conf1, fs, root, backupIdFull, table1);
+        Map<String, BackupHFileIndex.Entry> diff =
+                BackupHFileIndex.readImage(conf1, fs, root, backupIdDiff, table1);
+        assertFalse(base.isEmpty());
+        Set<String> shared = new HashSet<>();
+        for (BackupHFileIndex.Entry entry
+                : BackupHFileIndex.readSharedFiles(fs, root, backupIdDiff, table1)) {
+            assertEquals(backupIdFull, entry.getBackupId());
+            shared.add(entry.getName());
+        }
+        assertFalse(shared.isEmpty());
+        assertTrue(base.keySet().containsAll(shared));
+        Set<String> exported = new HashSet<>(diff.keySet());
+        exported.removeAll(shared);
+        assertFalse(exported.isEmpty());
+        for (String name : exported) {
+            assertFalse(base.containsKey(name));
+            assertEquals(backupIdDiff, diff.get(name).getBackupId());
+            assertTrue(fs.exists(diff.get(name).getPath(root, table1)));
+        }
+
+        TableName[] tableset = new TableName[]{table1};
+        TableName[] tablemap = new TableName[]{table1_restore};
+        client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdDiff, false,
+                tableset, tablemap, false));
+        HBaseAdmin hba = TEST_UTIL.getHBaseAdmin();
+        assertTrue(hba.tableExists(table1_restore));
+        assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+        TEST_UTIL.deleteTable(table1_restore);
+        hba.close();
+    }
+
     @Test
     public void testFullRestoreSingleCommand() throws Exception {
         LOG.info("test full restore on a single table empty table: command-line");
@@ -115,6 +481,103 @@ public class TestFullRestore extends TestBackupBase {
         assertFalse(hba.tableExists(table1_restore));
     }
 
+    /**
+     * Verify that multiple tables are restored to new tables concurrently.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreMultipleConcurrent() throws Exception {
+        LOG.info("test concurrent full restore of multiple tables");
+
+        List<TableName> tables = Lists.newArrayList(table2, table3);
+        String backupId = fullTableBackup(tables);
+        assertTrue(checkSucceeded(backupId));
+
+        TableName[] restore_tableset = new TableName[]{table2, table3};
+        TableName[] tablemap = new TableName[]{table2_restore, table3_restore};
+        conf1.setInt(BackupRestoreConstants.BACKUP_RESTORE_MAX_CONCURRENCY_KEY, 2);
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY, false);
+        conf1.setClass(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS,
+                ConcurrentRestoreJobForTest.class, RestoreJob.class);
+        try {
+            // every restore job waits for the other one
+            ConcurrentRestoreJobForTest.reset(null, 2);
+            RestoreTablesClient client = new RestoreTablesClient(TEST_UTIL.getConnection(),
+                    BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId, false,
+                            restore_tableset, tablemap, false));
+            client.execute();
+            assertEquals(2, ConcurrentRestoreJobForTest.MAX_RUNNING.get());
+            Map<TableName, TableRestoreStatus> status = client.getTableStatus();
+            assertEquals(TableRestoreStatus.SUCCEEDED, status.get(table2));
+            assertEquals(TableRestoreStatus.SUCCEEDED, status.get(table3));
+            assertEquals(TEST_UTIL.countRows(table2), TEST_UTIL.countRows(table2_restore));
+            assertEquals(TEST_UTIL.countRows(table3), TEST_UTIL.countRows(table3_restore));
+            TEST_UTIL.deleteTable(table2_restore);
+            TEST_UTIL.deleteTable(table3_restore);
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_MAX_CONCURRENCY_KEY);
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY);
+            conf1.unset(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS);
+        }
+    }
+
+    /**
+     * Verify that the failure of a table stops the restore of the next tables by default, and
+     * that the other tables are restored when the restore continues on failure.
+     *
+     * @throws Exception if doing the backup, restoring it or an operation on the tables fails
+     */
+    @Test
+    public void testFullRestoreMultipleFailure() throws Exception {
+        LOG.info("test full restore of multiple tables with a failing table");
+
+        List<TableName> tables = Lists.newArrayList(table2, table3);
+        String backupId = fullTableBackup(tables);
+        assertTrue(checkSucceeded(backupId));
+
+        TableName[] restore_tableset = new TableName[]{table2, table3};
+        TableName[] tablemap = new TableName[]{table2_restore, table3_restore};
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY, false);
+        conf1.setClass(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS,
+                ConcurrentRestoreJobForTest.class, RestoreJob.class);
+        try {
+            for (boolean continueOnFailure : new boolean[]{false, true}) {
+                conf1.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_CONTINUE_ON_FAILURE_KEY,
+                        continueOnFailure);
+                // a single thread restores table2 first
+                ConcurrentRestoreJobForTest.reset(table2_restore, 0);
+                RestoreTablesClient client = new RestoreTablesClient(TEST_UTIL.getConnection(),
+                        BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupId, false,
+                                restore_tableset, tablemap, false));
+                try {
+                    client.execute();
+                    fail("The restore of " + table2 + " must fail");
+                } catch (IOException e) {
+                    LOG.info("Expected restore failure", e);
+                }
+                Map<TableName, TableRestoreStatus> status = client.getTableStatus();
+                assertEquals(TableRestoreStatus.FAILED, status.get(table2));
+                HBaseAdmin hba = TEST_UTIL.getHBaseAdmin();
+                if (continueOnFailure) {
+                    assertEquals(TableRestoreStatus.SUCCEEDED, status.get(table3));
+                    assertEquals(TEST_UTIL.countRows(table3), TEST_UTIL.countRows(table3_restore));
+                    TEST_UTIL.deleteTable(table3_restore);
+                } else {
+                    assertEquals(TableRestoreStatus.SKIPPED, status.get(table3));
+                    assertFalse(hba.tableExists(table3_restore));
+                }
+                if (hba.tableExists(table2_restore)) {
+                    TEST_UTIL.deleteTable(table2_restore);
+                }
+            }
+        } finally {
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_CONTINUE_ON_FAILURE_KEY);
+            conf1.unset(BackupRestoreConstants.BACKUP_RESTORE_DIRECT_BULKLOAD_KEY);
+            conf1.unset(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS);
+        }
+    }
+
     /**
      * Verify that multiple tables are restored to new tables.
      *
@@ -352,4 +815,55 @@ public class TestFullRestore extends TestBackupBase {
         int ret = ToolRunner.run(conf1, new RestoreDriver(), args);
         assertTrue(ret != 0);
     }
+
+    /**
+     * Restore job counting its runs
+     */
+    public static class RestoreJobForTest extends MapReduceRestoreJob {
+        static final AtomicInteger RUNS = new AtomicInteger();
+
+        @Override
+        public void run(Path[] dirPaths, TableName[] tableNames, TableName[] newTableNames,
+                        boolean fullBackupRestore) throws IOException {
+            RUNS.incrementAndGet();
+            super.run(dirPaths, tableNames, newTableNames, fullBackupRestore);
+        }
+    }
+
+    /**
+     * Restore job waiting for a number of restore jobs to run at the same time, and failing the
+     * restore of a target table
+     */
+    public static class ConcurrentRestoreJobForTest extends MapReduceRestoreJob {
+        static final AtomicInteger RUNNING = new AtomicInteger();
+        static final AtomicInteger MAX_RUNNING = new AtomicInteger();
+        private static volatile TableName failTable;
+        private static volatile CountDownLatch started;
+
+        static void reset(TableName failTable, int concurrentJobs) {
+            ConcurrentRestoreJobForTest.failTable = failTable;
+            started = new CountDownLatch(concurrentJobs);
+            MAX_RUNNING.set(0);
+        }
+
+        @Override
+        public void run(Path[] dirPaths, TableName[] tableNames, TableName[] newTableNames,
+                        boolean fullBackupRestore) throws IOException {
+            MAX_RUNNING.accumulateAndGet(RUNNING.incrementAndGet(), Math::max);
+            try {
+                started.countDown();
+                try {
+                    started.await(60, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted waiting for the restore jobs");
+                }
+                if (Arrays.asList(newTableNames).contains(failTable)) {
+                    throw new IOException("Failing the restore of " + failTable);
+                }
+                super.run(dirPaths, tableNames, newTableNames, fullBackupRestore);
+            } finally {
+                RUNNING.decrementAndGet();
+            }
+        }
+    }
 }
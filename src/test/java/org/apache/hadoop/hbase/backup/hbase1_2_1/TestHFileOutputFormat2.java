@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.HFileOutputFormat2;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 1. Create a table split in five regions
+ * 2. Write rows of all the regions with the HFile output format
+ * 3. Check that every HFile fits in a single region
+ * <p>
+ * The region locations looked up by the writer are cached across the HFile rolls.
+ */
+@Category(LargeTests.class)
+public class TestHFileOutputFormat2 extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestHFileOutputFormat2.class);
+
+    private static final int NB_ROWS = 100;
+
+    @Test
+    public void testHFilesFitInRegions() throws Exception {
+        TableName table = TableName.valueOf("test-hfof-split");
+        byte[][] splitKeys = new byte[][]{Bytes.toBytes("row-2"), Bytes.toBytes("row-4"),
+                Bytes.toBytes("row-6"), Bytes.toBytes("row-8")};
+        TEST_UTIL.createTable(table, new byte[][]{famName}, splitKeys).close();
+
+        Path outputDir = TEST_UTIL.getDataTestDirOnTestFS("testHFilesFitInRegions");
+        Configuration conf = new Configuration(conf1);
+        conf.set("hbase.mapreduce.hfileoutputformat.table.name", table.getNameAsString());
+        conf.set(FileOutputFormat.OUTDIR, outputDir.toString());
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf,
+                new TaskAttemptID("test", 1, TaskType.REDUCE, 0, 0));
+        RecordWriter<ImmutableBytesWritable, Cell> writer =
+                new HFileOutputFormat2().getRecordWriter(context);
+        for (int i = 0; i < NB_ROWS; i++) {
+            byte[] row = Bytes.toBytes(String.format("row-%02d", i));
+            writer.write(new ImmutableBytesWritable(row),
+                    new KeyValue(row, famName, qualName, Bytes.toBytes("val" + i)));
+        }
+        writer.close(context);
+
+        List<Pair<byte[], byte[]>> regions = new ArrayList<>();
+        try (Connection conn = ConnectionFactory.createConnection(conf1);
+             RegionLocator locator = conn.getRegionLocator(table)) {
+            Pair<byte[][], byte[][]> keys = locator.getStartEndKeys();
+            for (int i = 0; i < keys.getFirst().length; i++) {
+                regions.add(new Pair<>(keys.getFirst()[i], keys.getSecond()[i]));
+            }
+        }
+        Assert.assertEquals(splitKeys.length + 1, regions.size());
+
+        FileSystem fs = outputDir.getFileSystem(conf);
+        Set<Pair<byte[], byte[]>> written = new HashSet<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(outputDir, true);
+        while (it.hasNext()) {
+            Path file = it.next().getPath();
+            if (file.getName().startsWith("_") || file.getName().startsWith(".")) {
+                continue;
+            }
+            HFile.Reader reader = HFile.createReader(fs, file, new CacheConfig(conf), conf);
+            try {
+                reader.loadFileInfo();
+                byte[] first = reader.getFirstRowKey();
+                byte[] last = reader.getLastRowKey();
+                Pair<byte[], byte[]> region = null;
+                for (Pair<byte[], byte[]> r : regions) {
+                    if (Bytes.compareTo(first, r.getFirst()) >= 0 && (r.getSecond().length == 0
+                            || Bytes.compareTo(first, r.getSecond()) < 0)) {
+                        region = r;
+                    }
+                }
+                Assert.assertNotNull(region);
+                Assert.assertTrue(file + " spans several regions: [" + Bytes.toString(first) + ", "
+                        + Bytes.toString(last) + "]", region.getSecond().length == 0
+                        || Bytes.compareTo(last, region.getSecond()) < 0);
+                written.add(region);
+            } finally {
+                reader.close();
+            }
+        }
+        // the rows of every region were written in their own HFiles
+        Assert.assertEquals(regions.size(), written.size());
+        TEST_UTIL.deleteTable(table);
+    }
+
+    @Test
+    public void testRegionLocationCachedAcrossRolls() throws Exception {
+        Path outputDir = TEST_UTIL.getDataTestDirOnTestFS("testRegionLocationCachedAcrossRolls");
+        Configuration conf = new Configuration(conf1);
+        conf.set("hbase.mapreduce.hfileoutputformat.table.name", table1.getNameAsString());
+        conf.set(FileOutputFormat.OUTDIR, outputDir.toString());
+        conf.setBoolean(HFileOutputFormat2.LOCALITY_SENSITIVE_CONF_KEY, true);
+        // every row rolls the HFile
+        conf.setLong(HConstants.HREGION_MAX_FILESIZE, 1);
+        final Counters counters = new Counters();
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf,
+                new TaskAttemptID("test", 1, TaskType.REDUCE, 0, 0), new StatusReporter() {
+            @Override
+            public Counter getCounter(Enum<?> name) {
+                return counters.findCounter(name);
+            }
+
+            @Override
+            public Counter getCounter(String group, String name) {
+                return counters.findCounter(group, name);
+            }
+
+            @Override
+            public void progress() {
+            }
+
+            @Override
+            public float getProgress() {
+                return 0;
+            }
+
+            @Override
+            public void setStatus(String status) {
+            }
+        });
+        RecordWriter<ImmutableBytesWritable, Cell> writer =
+                new HFileOutputFormat2().getRecordWriter(context);
+        for (int i = 0; i < NB_ROWS; i++) {
+            byte[] row = Bytes.toBytes(String.format("row-%02d", i));
+            writer.write(new ImmutableBytesWritable(row),
+                    new KeyValue(row, famName, qualName, Bytes.toBytes("val" + i)));
+        }
+        writer.close(context);
+
+        // table1 has a single region, located once for all the HFiles
+        Assert.assertEquals(1, counters.findCounter(
+                HFileOutputFormat2.WriterCounters.REGION_LOCATION_LOOKUPS).getValue());
+        Assert.assertEquals(NB_ROWS - 1, counters.findCounter(
+                HFileOutputFormat2.WriterCounters.REGION_LOCATION_CACHE_HITS).getValue());
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.AbstractFSWALProviderUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.CommonFSUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.MultiTableHFileOutputFormat;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALPartitionSampler;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALPlayer;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup t1, t2
+ * 2. Load data to t1, t2
+ * 3. Incremental backup t1, t2 with the reducers balanced by the sampled bytes per region
+ * 4. Restore the incremental backup
+ * <p>
+ * The partitions of a WALPlayer job over a table with a hot region and cold adjacent regions
+ * split the hot region and pack the cold ones.
+ */
+@Category(LargeTests.class)
+public class TestIncrementalBackupBalancedReducers extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestIncrementalBackupBalancedReducers.class);
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestIncrementalBackupBalancedReducers.class);
+
+    @Test
+    public void testIncBackupRestoreBalancedReducers() throws Exception {
+        Configuration conf = new Configuration(conf1);
+        conf.setBoolean(WALPlayer.BULK_BALANCE_CONF_KEY, true);
+        // small reducers and samples: the regions are split and the files partially sampled
+        conf.setLong(WALPlayer.BULK_BALANCE_REDUCER_BYTES_KEY, 8 * 1024);
+        conf.setLong(WALPartitionSampler.SAMPLE_BYTES_KEY, 32 * 1024);
+
+        List<TableName> tables = Lists.newArrayList(table1, table2);
+        try (Connection conn = ConnectionFactory.createConnection(conf)) {
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            try (Table t1 = conn.getTable(table1); Table t2 = conn.getTable(table2)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Put p = new Put(Bytes.toBytes("row-balanced" + i));
+                    p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                    t1.put(p);
+                    t2.put(p);
+                }
+            }
+            LOG.debug("written " + NB_ROWS_IN_BATCH + " rows to " + table1 + " and " + table2);
+
+            String backupIdInc = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc));
+
+            TableName[] tablesRestore = new TableName[]{table1, table2};
+            TableName[] tablesMap = new TableName[]{table1_restore, table2_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    tablesRestore, tablesMap, true));
+
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            Assert.assertEquals(TEST_UTIL.countRows(table2), TEST_UTIL.countRows(table2_restore));
+            TEST_UTIL.deleteTable(table1_restore);
+            TEST_UTIL.deleteTable(table2_restore);
+        }
+    }
+
+    @Test
+    public void testBalancedPartitions() throws Exception {
+        TableName table = TableName.valueOf("test-balanced-partitions");
+        byte[][] splitKeys = new byte[][]{Bytes.toBytes("b"), Bytes.toBytes("c"),
+                Bytes.toBytes("d"), Bytes.toBytes("e")};
+        TEST_UTIL.createTable(table, new byte[][]{famName}, splitKeys).close();
+
+        Configuration conf = new Configuration(conf1);
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             Admin admin = conn.getAdmin()) {
+            try (Table t = conn.getTable(table)) {
+                // about 200KB of edits for the first region, a small row for the others
+                byte[] value = new byte[1024];
+                for (int i = 0; i < 200; i++) {
+                    Put p = new Put(Bytes.toBytes(String.format("a-%03d", i)));
+                    p.addColumn(famName, qualName, value);
+                    t.put(p);
+                }
+                for (byte[] splitKey : splitKeys) {
+                    Put p = new Put(splitKey);
+                    p.addColumn(famName, qualName, Bytes.toBytes("val"));
+                    t.put(p);
+                }
+            }
+            long rollTime = System.currentTimeMillis();
+            for (JVMClusterUtil.RegionServerThread rst :
+                    TEST_UTIL.getHBaseCluster().getLiveRegionServerThreads()) {
+                admin.rollWALWriter(rst.getRegionServer().getServerName());
+            }
+            List<String> logFiles = new ArrayList<>();
+            Path logRoot = new Path(CommonFSUtils.getWALRootDir(conf),
+                    HConstants.HREGION_LOGDIR_NAME);
+            RemoteIterator<LocatedFileStatus> it =
+                    logRoot.getFileSystem(conf).listFiles(logRoot, true);
+            while (it.hasNext()) {
+                Path path = it.next().getPath();
+                if (!AbstractFSWALProviderUtils.isMetaFile(path)
+                        && BackupUtils.getCreationTime(path) < rollTime) {
+                    logFiles.add(path.toString());
+                }
+            }
+
+            conf.set(WALPlayer.BULK_OUTPUT_CONF_KEY,
+                    TEST_UTIL.getDataTestDirOnTestFS("testBalancedPartitions").toString());
+            conf.setBoolean(WALPlayer.MULTI_TABLES_SUPPORT, true);
+            conf.setBoolean(WALPlayer.BULK_BALANCE_CONF_KEY, true);
+            conf.setLong(WALPlayer.BULK_BALANCE_REDUCER_BYTES_KEY, 32 * 1024);
+            WALPlayer player = new WALPlayer();
+            player.setConf(conf);
+            Job job = player.createSubmittableJob(new String[]{String.join(",", logFiles),
+                    table.getNameAsString()});
+
+            List<byte[]> partitions = new ArrayList<>();
+            Path partitionFile = TotalOrderPartitioner.getPartitionFile(job.getConfiguration());
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(job.getConfiguration(),
+                    SequenceFile.Reader.file(partitionFile))) {
+                ImmutableBytesWritable key = new ImmutableBytesWritable();
+                while (reader.next(key, NullWritable.get())) {
+                    partitions.add(key.copyBytes());
+                }
+            }
+            LOG.debug(partitions.size() + " partitions for " + (splitKeys.length + 1) + " regions");
+
+            byte[] hotStart = MultiTableHFileOutputFormat.createCompositeKey(table.getName(),
+                    HConstants.EMPTY_BYTE_ARRAY);
+            byte[] hotEnd = MultiTableHFileOutputFormat.createCompositeKey(table.getName(),
+                    splitKeys[0]);
+            int hotSplits = 0;
+            for (byte[] partition : partitions) {
+                if (Bytes.compareTo(partition, hotStart) > 0
+                        && Bytes.compareTo(partition, hotEnd) < 0) {
+                    hotSplits++;
+                }
+            }
+            // the hot region is split across several reducers
+            Assert.assertTrue(hotSplits >= 2);
+            // the cold regions share a reducer: their start keys do not start a partition
+            for (int i = 1; i < splitKeys.length; i++) {
+                byte[] coldStart = MultiTableHFileOutputFormat.createCompositeKey(table.getName(),
+                        splitKeys[i]);
+                for (byte[] partition : partitions) {
+                    Assert.assertFalse(Bytes.equals(coldStart, partition));
+                }
+            }
+            Assert.assertEquals(partitions.size() + 1, job.getNumReduceTasks());
+            Assert.assertNotEquals(splitKeys.length + 1, job.getNumReduceTasks());
+        }
+        TEST_UTIL.deleteTable(table);
+    }
+}
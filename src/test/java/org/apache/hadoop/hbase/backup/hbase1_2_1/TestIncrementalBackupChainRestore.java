@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceHFileChainMergeJob;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.mapreduce.MapReduceRestoreJob;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.Tool;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup a table keeping a single version
+ * 2. Load data to the table, incremental backup
+ * 3. Overwrite the data, rewrite a cell with the same timestamp and delete a row, incremental
+ * backup
+ * 4. Restore the last incremental backup merging the chain of incremental images, and check
+ * that the chain merge job wrote every cell once, from the newest image, without the versions
+ * which can not be read, and kept the delete marker
+ */
+@Category(LargeTests.class)
+public class TestIncrementalBackupChainRestore extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestIncrementalBackupChainRestore.class);
+
+    private static final TableName TABLE = TableName.valueOf("test-chain-merge");
+    private static final TableName TABLE_RESTORE = TableName.valueOf("test-chain-merge-restore");
+    private static final byte[] ROW_FULL = Bytes.toBytes("row-full");
+    private static final byte[] ROW_DUP = Bytes.toBytes("row-dup");
+    private static final byte[] ROW_DEL = Bytes.toBytes("row-del");
+    private static final long DUP_TS = 1000L;
+
+    @Test
+    public void testIncBackupChainRestore() throws Exception {
+        Configuration conf = new Configuration(conf1);
+        conf.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_CHAIN_MERGE_KEY, true);
+        conf.setClass(BackupRestoreFactory.HBASE_INCR_RESTORE_IMPL_CLASS,
+                RestoreJobForTest.class, RestoreJob.class);
+
+        HTableDescriptor desc = new HTableDescriptor(TABLE);
+        HColumnDescriptor family = new HColumnDescriptor(famName);
+        family.setMaxVersions(1);
+        desc.addFamily(family);
+        List<TableName> tables = Lists.newArrayList(TABLE);
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             Admin admin = conn.getAdmin()) {
+            admin.createTable(desc);
+            try (Table t = conn.getTable(TABLE)) {
+                Put p = new Put(ROW_FULL);
+                p.addColumn(famName, qualName, Bytes.toBytes("full"));
+                t.put(p);
+            }
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull = client.backupTables(
+                    createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            String backupIdInc = null;
+            for (String value : new String[]{"old", "new"}) {
+                try (Table t = conn.getTable(TABLE)) {
+                    for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                        Put p = new Put(Bytes.toBytes("row-chain" + i));
+                        p.addColumn(famName, qualName, Bytes.toBytes(value + i));
+                        t.put(p);
+                    }
+                    // the same cell in both images
+                    Put p = new Put(ROW_DUP);
+                    p.addColumn(famName, qualName, DUP_TS, Bytes.toBytes(value));
+                    t.put(p);
+                    if (backupIdInc == null) {
+                        p = new Put(ROW_DEL);
+                        p.addColumn(famName, qualName, Bytes.toBytes("deleted"));
+                        t.put(p);
+                    } else {
+                        t.delete(new Delete(ROW_DEL));
+                    }
+                }
+                backupIdInc = client.backupTables(
+                        createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+                assertTrue(checkSucceeded(backupIdInc));
+            }
+
+            ChainMergeJobForTest.COUNTERS.clear();
+            ChainMergeJobForTest.CELLS.clear();
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    new TableName[]{TABLE}, new TableName[]{TABLE_RESTORE}, false));
+
+            // a single chain merge job ran, over both images
+            Assert.assertEquals(1, ChainMergeJobForTest.COUNTERS.size());
+            // the row-dup cell of the first image and the old versions of row-chain are dropped
+            Assert.assertEquals(NB_ROWS_IN_BATCH + 1, ChainMergeJobForTest.COUNTERS.get(0)
+                    .findCounter(MapReduceHFileChainMergeJob.COUNTER_GROUP,
+                            TABLE_RESTORE.getNameAsString()).getValue());
+            List<KeyValue> dup = getCells(ROW_DUP);
+            Assert.assertEquals(1, dup.size());
+            Assert.assertEquals(DUP_TS, dup.get(0).getTimestamp());
+            Assert.assertEquals("new", Bytes.toString(CellUtil.cloneValue(dup.get(0))));
+            for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                List<KeyValue> chain = getCells(Bytes.toBytes("row-chain" + i));
+                Assert.assertEquals(1, chain.size());
+                Assert.assertEquals("new" + i, Bytes.toString(CellUtil.cloneValue(chain.get(0))));
+            }
+            // the delete marker is written with the put it covers
+            boolean deleteFamily = false;
+            for (KeyValue kv : getCells(ROW_DEL)) {
+                deleteFamily |= kv.getTypeByte() == KeyValue.Type.DeleteFamily.getCode();
+            }
+            assertTrue(deleteFamily);
+
+            Assert.assertEquals(TEST_UTIL.countRows(TABLE), TEST_UTIL.countRows(TABLE_RESTORE));
+            try (Table restored = conn.getTable(TABLE_RESTORE)) {
+                Assert.assertTrue(restored.get(new Get(ROW_DEL)).isEmpty());
+                Assert.assertEquals("full", Bytes.toString(
+                        restored.get(new Get(ROW_FULL)).getValue(famName, qualName)));
+                Assert.assertEquals("new", Bytes.toString(
+                        restored.get(new Get(ROW_DUP)).getValue(famName, qualName)));
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Result r = restored.get(new Get(Bytes.toBytes("row-chain" + i)));
+                    Assert.assertEquals("new" + i, Bytes.toString(r.getValue(famName, qualName)));
+                }
+            }
+            TEST_UTIL.deleteTable(TABLE_RESTORE);
+            TEST_UTIL.deleteTable(TABLE);
+        }
+    }
+
+    /**
+     * @return cells of a row written by the chain merge job
+     */
+    private static List<KeyValue> getCells(byte[] row) {
+        List<KeyValue> cells = new ArrayList<>();
+        for (KeyValue kv : ChainMergeJobForTest.CELLS) {
+            if (CellUtil.matchingRow(kv, row)) {
+                cells.add(kv);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Restore job merging the incremental images with {@link ChainMergeJobForTest}
+     */
+    public static class RestoreJobForTest extends MapReduceRestoreJob {
+        @Override
+        protected Tool createPlayer(boolean chainMerge) {
+            return chainMerge ? new ChainMergeJobForTest() : super.createPlayer(false);
+        }
+    }
+
+    /**
+     * Chain merge job keeping its counters and the cells of the HFiles it wrote
+     */
+    public static class ChainMergeJobForTest extends MapReduceHFileChainMergeJob {
+        static final List<Counters> COUNTERS = Collections.synchronizedList(new ArrayList<>());
+        static final List<KeyValue> CELLS = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public int run(String[] args) throws Exception {
+            Job job = createSubmittableJob(args);
+            if (!job.waitForCompletion(true)) {
+                return 1;
+            }
+            COUNTERS.add(job.getCounters());
+            readCells(new Path(getConf().get(BULK_OUTPUT_CONF_KEY)));
+            return 0;
+        }
+
+        private void readCells(Path outputDir) throws IOException {
+            FileSystem fs = outputDir.getFileSystem(getConf());
+            RemoteIterator<LocatedFileStatus> it = fs.listFiles(outputDir, true);
+            while (it.hasNext()) {
+                Path path = it.next().getPath();
+                if (!HFile.isHFileFormat(fs, path)) {
+                    continue;
+                }
+                HFile.Reader reader = HFile.createReader(fs, path, getConf());
+                try {
+                    reader.loadFileInfo();
+                    HFileScanner scanner = reader.getScanner(false, false);
+                    if (scanner.seekTo()) {
+                        do {
+                            CELLS.add(KeyValueUtil.copyToNewKeyValue(scanner.getKeyValue()));
+                        } while (scanner.next());
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+}
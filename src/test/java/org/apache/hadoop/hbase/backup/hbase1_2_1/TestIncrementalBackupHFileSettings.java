@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupHFileSettings;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup t1
+ * 2. Load data to t1
+ * 3. Incremental backup t1 with backup specific HFile settings
+ * 4. Check the settings recorded with the backup and restore keeping them
+ */
+@Category(LargeTests.class)
+public class TestIncrementalBackupHFileSettings extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestIncrementalBackupHFileSettings.class);
+
+    @Test
+    public void testIncBackupRestoreHFileSettings() throws Exception {
+        Configuration conf = new Configuration(conf1);
+        String family = Bytes.toString(famName);
+        conf.set(BackupRestoreConstants.BACKUP_HFILE_COMPRESSION_KEY + "." + table1.getNameAsString()
+                + ";" + family, "GZ");
+        conf.set(BackupRestoreConstants.BACKUP_HFILE_DATABLOCK_ENCODING_KEY, "fast_diff");
+        conf.setInt(BackupRestoreConstants.BACKUP_HFILE_BLOCKSIZE_KEY, 16 * 1024);
+        conf.setBoolean(BackupRestoreConstants.BACKUP_RESTORE_KEEP_HFILE_SETTINGS_KEY, true);
+
+        List<TableName> tables = Lists.newArrayList(table1);
+        try (Connection conn = ConnectionFactory.createConnection(conf)) {
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            try (Table t1 = conn.getTable(table1)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Put p = new Put(Bytes.toBytes("row-settings" + i));
+                    p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                    t1.put(p);
+                }
+            }
+
+            String backupIdInc = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc));
+
+            BackupHFileSettings settings = HBackupFileSystem.getManifest(conf,
+                    new Path(BACKUP_ROOT_DIR), backupIdInc).getHFileSettings();
+            Assert.assertNotNull(settings);
+            Assert.assertEquals("gz", settings.getCompression(table1, family));
+            Assert.assertEquals("FAST_DIFF", settings.getDataBlockEncoding(table1, family));
+            Assert.assertEquals(String.valueOf(16 * 1024), settings.getBlockSize(table1, family));
+
+            TableName[] tablesRestore = new TableName[]{table1};
+            TableName[] tablesMap = new TableName[]{table1_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    tablesRestore, tablesMap, true));
+
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            TEST_UTIL.deleteTable(table1_restore);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.IncrementalTableBackupClient;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.TableBackupClient;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.LocalWALPlayer;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.Tool;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup t1, t2
+ * 2. Load data to t1, t2
+ * 3. Incremental backup t1, t2 with the WALs converted in process, sorted in a small buffer
+ * 4. Check that no WALPlayer job was submitted and that the sorted runs were spilled
+ * 5. Restore the incremental backup
+ */
+@Category(LargeTests.class)
+public class TestIncrementalBackupLocal extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestIncrementalBackupLocal.class);
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestIncrementalBackupLocal.class);
+
+    @Test
+    public void testIncBackupRestoreLocal() throws Exception {
+        Configuration conf = new Configuration(conf1);
+        conf.setLong(BackupRestoreConstants.BACKUP_INCREMENTAL_LOCAL_MAX_BYTES_KEY, Long.MAX_VALUE);
+        // force the sorted runs to spill
+        conf.setLong(LocalWALPlayer.SORT_BUFFER_BYTES_KEY, 1024);
+
+        List<TableName> tables = Lists.newArrayList(table1, table2);
+        try (Connection conn = ConnectionFactory.createConnection(conf)) {
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            try (Table t1 = conn.getTable(table1); Table t2 = conn.getTable(table2)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Put p = new Put(Bytes.toBytes("row-local" + i));
+                    p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                    t1.put(p);
+                    t2.put(p);
+                }
+            }
+            LOG.debug("written " + NB_ROWS_IN_BATCH + " rows to " + table1 + " and " + table2);
+
+            LocalBackupClientForTest.LOCAL_PLAYERS.clear();
+            LocalBackupClientForTest.WAL_PLAYERS.set(0);
+            Configuration incConf = new Configuration(conf);
+            incConf.set(TableBackupClient.BACKUP_CLIENT_IMPL_CLASS,
+                    LocalBackupClientForTest.class.getName());
+            String backupIdInc;
+            try (Connection incConn = ConnectionFactory.createConnection(incConf)) {
+                backupIdInc = new BackupAdminImpl(incConn).backupTables(
+                        createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            }
+            assertTrue(checkSucceeded(backupIdInc));
+            Assert.assertEquals(0, LocalBackupClientForTest.WAL_PLAYERS.get());
+            Assert.assertEquals(1, LocalBackupClientForTest.LOCAL_PLAYERS.size());
+            LocalWALPlayer player = LocalBackupClientForTest.LOCAL_PLAYERS.get(0);
+            Assert.assertTrue(player.getSpillCount() > 0);
+            Assert.assertTrue(player.getWrittenCells() >= 2 * NB_ROWS_IN_BATCH);
+
+            TableName[] tablesRestore = new TableName[]{table1, table2};
+            TableName[] tablesMap = new TableName[]{table1_restore, table2_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    tablesRestore, tablesMap, true));
+
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            Assert.assertEquals(TEST_UTIL.countRows(table2), TEST_UTIL.countRows(table2_restore));
+            TEST_UTIL.deleteTable(table1_restore);
+            TEST_UTIL.deleteTable(table2_restore);
+        }
+    }
+
+    /**
+     * Incremental backup client keeping the in process converters it runs and counting the
+     * WALPlayer jobs
+     */
+    public static class LocalBackupClientForTest extends IncrementalTableBackupClient {
+        static final List<LocalWALPlayer> LOCAL_PLAYERS =
+                Collections.synchronizedList(new ArrayList<>());
+        static final AtomicInteger WAL_PLAYERS = new AtomicInteger();
+
+        public LocalBackupClientForTest() {
+        }
+
+        @Override
+        protected LocalWALPlayer createLocalWALPlayer() {
+            LocalWALPlayer player = super.createLocalWALPlayer();
+            LOCAL_PLAYERS.add(player);
+            return player;
+        }
+
+        @Override
+        protected Tool createWALPlayer() {
+            WAL_PLAYERS.incrementAndGet();
+            return super.createWALPlayer();
+        }
+    }
+}
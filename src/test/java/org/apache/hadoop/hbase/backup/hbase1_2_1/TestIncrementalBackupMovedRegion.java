@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.regionserver.HRegionServer;
+import org.apache.hadoop.hbase.regionserver.wal.FSHLog;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup t1, then incremental backup t1, both rolling only the region server of t1
+ * 2. Load data to t1, move its regions to another region server, load data to t1
+ * 3. Incremental backup t1: the former region server of t1 is rolled too
+ * 4. Restore the last incremental backup
+ */
+@Category(LargeTests.class)
+public class TestIncrementalBackupMovedRegion extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestIncrementalBackupMovedRegion.class);
+
+    @Test
+    public void testIncBackupMovedRegion() throws Exception {
+        List<TableName> tables = Lists.newArrayList(table1);
+        try (Connection conn = ConnectionFactory.createConnection(conf1);
+             Admin admin = conn.getAdmin()) {
+            admin.setBalancerRunning(false, true);
+            HRegionServer former = TEST_UTIL.getHBaseCluster().getRegionServer(0);
+            JVMClusterUtil.RegionServerThread rst = TEST_UTIL.getHBaseCluster().startRegionServer();
+            rst.waitForServerOnline();
+            HRegionServer target = rst.getRegionServer();
+
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+            String backupIdInc1 = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc1));
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                Assert.assertNotNull(table.readTableLogRollBoundary(Sets.newHashSet(table1),
+                        BACKUP_ROOT_DIR));
+            }
+
+            loadRows(conn, "row-before-move");
+            ServerName targetName = target.getServerName();
+            for (HRegionInfo region : admin.getTableRegions(table1)) {
+                admin.move(region.getEncodedNameAsBytes(), Bytes.toBytes(targetName.getServerName()));
+            }
+            TEST_UTIL.waitUntilNoRegionsInTransition(60000);
+            Assert.assertTrue(former.getOnlineRegions(table1).isEmpty());
+            loadRows(conn, "row-after-move");
+
+            // the edits written before the move are in the current WAL of the former region server
+            long filenum = ((FSHLog) former.getWAL(null)).getFilenum();
+            String backupIdInc2 = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc2));
+            Assert.assertNotEquals(filenum, ((FSHLog) former.getWAL(null)).getFilenum());
+
+            TableName[] tablesRestore = new TableName[]{table1};
+            TableName[] tablesMap = new TableName[]{table1_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc2, false,
+                    tablesRestore, tablesMap, true));
+
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            try (Table restored = conn.getTable(table1_restore)) {
+                for (String prefix : new String[]{"row-before-move", "row-after-move"}) {
+                    for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                        Result r = restored.get(new Get(Bytes.toBytes(prefix + i)));
+                        Assert.assertEquals("val" + i, Bytes.toString(r.getValue(famName, qualName)));
+                    }
+                }
+            }
+            TEST_UTIL.deleteTable(table1_restore);
+            admin.setBalancerRunning(true, false);
+        }
+    }
+
+    private static void loadRows(Connection conn, String prefix) throws Exception {
+        try (Table t1 = conn.getTable(table1)) {
+            for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                Put p = new Put(Bytes.toBytes(prefix + i));
+                p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                t1.put(p);
+            }
+        }
+    }
+}
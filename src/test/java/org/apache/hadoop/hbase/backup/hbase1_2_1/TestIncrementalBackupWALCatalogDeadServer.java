@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupAdminImpl;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 1. Full backup t1 with the WAL catalog enabled
+ * 2. Start a region server dying before its first WAL catalog flush, move t1 to it
+ * 3. Load data to t1 and kill the region server
+ * 4. Incremental backup t1, the WALs of the dead region server are listed
+ * 5. Restore the incremental backup
+ */
+@Category(LargeTests.class)
+public class TestIncrementalBackupWALCatalogDeadServer extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestIncrementalBackupWALCatalogDeadServer.class);
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        conf1.setBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY, true);
+        conf1.setLong(BackupRestoreConstants.BACKUP_WAL_CATALOG_FLUSH_INTERVAL_MS_KEY, 500);
+    }
+
+    @Test
+    public void testIncBackupDeadServerNotInCatalog() throws Exception {
+        List<TableName> tables = Lists.newArrayList(table1);
+        try (Connection conn = ConnectionFactory.createConnection(conf1);
+             Admin admin = conn.getAdmin()) {
+            BackupAdminImpl client = new BackupAdminImpl(conn);
+            String backupIdFull =
+                    client.backupTables(createBackupRequest(BackupType.FULL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdFull));
+
+            // the region server never records its WALs, as if it died before its first flush
+            admin.setBalancerRunning(false, true);
+            JVMClusterUtil.RegionServerThread rst;
+            try {
+                conf1.setBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY, false);
+                rst = TEST_UTIL.getHBaseCluster().startRegionServer();
+                rst.waitForServerOnline();
+            } finally {
+                conf1.setBoolean(BackupRestoreConstants.BACKUP_WAL_CATALOG_ENABLED_KEY, true);
+            }
+            ServerName dying = rst.getRegionServer().getServerName();
+            for (HRegionInfo region : admin.getTableRegions(table1)) {
+                admin.move(region.getEncodedNameAsBytes(), Bytes.toBytes(dying.getServerName()));
+            }
+            TEST_UTIL.waitUntilNoRegionsInTransition(60000);
+
+            try (Table t1 = conn.getTable(table1)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Put p = new Put(Bytes.toBytes("row-dead" + i));
+                    p.addColumn(famName, qualName, Bytes.toBytes("val" + i));
+                    t1.put(p);
+                }
+            }
+            TEST_UTIL.getHBaseCluster().killRegionServer(dying);
+            TEST_UTIL.getHBaseCluster().waitForRegionServerToStop(dying, 60000);
+            TEST_UTIL.waitUntilAllRegionsAssigned(table1);
+            TEST_UTIL.waitUntilNoRegionsInTransition(60000);
+
+            try (BackupSystemTable table = new BackupSystemTable(conn)) {
+                Assert.assertFalse(table.readWALCatalogSince().containsKey(dying.getHostAndPort()));
+            }
+
+            String backupIdInc = client.backupTables(
+                    createBackupRequest(BackupType.INCREMENTAL, tables, BACKUP_ROOT_DIR));
+            assertTrue(checkSucceeded(backupIdInc));
+
+            TableName[] tablesRestore = new TableName[]{table1};
+            TableName[] tablesMap = new TableName[]{table1_restore};
+            client.restore(BackupUtils.createRestoreRequest(BACKUP_ROOT_DIR, backupIdInc, false,
+                    tablesRestore, tablesMap, true));
+
+            Assert.assertEquals(TEST_UTIL.countRows(table1), TEST_UTIL.countRows(table1_restore));
+            try (Table restored = conn.getTable(table1_restore)) {
+                for (int i = 0; i < NB_ROWS_IN_BATCH; i++) {
+                    Result r = restored.get(new Get(Bytes.toBytes("row-dead" + i)));
+                    Assert.assertEquals("val" + i, Bytes.toString(r.getValue(famName, qualName)));
+                }
+            }
+            TEST_UTIL.deleteTable(table1_restore);
+            admin.setBalancerRunning(true, false);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.apache.hadoop.hbase.util.Pair;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 1. Roll the WALs of all the region servers, asking for the roll results as barrier data
+ * 2. Check that every region server returned its result to the master, and that the master
+ * wrote these results and the roll boundary to the backup system table
+ * 3. Roll again without the barrier data and check that the region servers wrote the results
+ * themselves
+ */
+@Category(LargeTests.class)
+public class TestLogRollBarrierResults extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestLogRollBarrierResults.class);
+
+    @Test
+    public void testBarrierResults() throws Exception {
+        // no roll result was ever written under this root
+        String backupRoot = BACKUP_ROOT_DIR + "/barrier";
+        List<JVMClusterUtil.RegionServerThread> servers =
+                TEST_UTIL.getHBaseCluster().getLiveRegionServerThreads();
+        try (Connection conn = ConnectionFactory.createConnection(conf1);
+             Admin admin = conn.getAdmin();
+             BackupSystemTable table = new BackupSystemTable(conn)) {
+            Assert.assertTrue(table.readRegionServerLastLogRollResult(backupRoot).isEmpty());
+
+            Map<String, byte[]> rollResults = rollLogs(admin, backupRoot, true);
+            Assert.assertEquals(servers.size(), rollResults.size());
+            HashMap<String, Long> written = table.readRegionServerLastLogRollResult(backupRoot);
+            Assert.assertEquals(servers.size(), written.size());
+            for (JVMClusterUtil.RegionServerThread rst : servers) {
+                ServerName sn = rst.getRegionServer().getServerName();
+                byte[] result = rollResults.get(sn.toString());
+                Assert.assertNotNull(sn.toString(), result);
+                Assert.assertEquals(Bytes.toLong(result),
+                        (long) written.get(sn.getHostname() + ":" + sn.getPort()));
+            }
+            Pair<String, Long> boundary = table.readLogRollBoundary(backupRoot);
+            Assert.assertNotNull(boundary);
+            Assert.assertEquals(TEST_UTIL.getHBaseCluster().getMaster().getServerName().toString(),
+                    boundary.getFirst());
+
+            rollResults = rollLogs(admin, backupRoot, false);
+            Assert.assertEquals(servers.size(), rollResults.size());
+            for (byte[] result : rollResults.values()) {
+                Assert.assertTrue(result == null || result.length == 0);
+            }
+            HashMap<String, Long> rewritten = table.readRegionServerLastLogRollResult(backupRoot);
+            Assert.assertEquals(written.keySet(), rewritten.keySet());
+            for (Map.Entry<String, Long> entry : rewritten.entrySet()) {
+                Assert.assertTrue(entry.getKey(), entry.getValue() >= written.get(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Run the roll log procedure
+     * @return roll results returned to the master as barrier data, by region server
+     */
+    private static Map<String, byte[]> rollLogs(Admin admin, String backupRoot,
+                                                boolean barrierResult) throws Exception {
+        Map<String, String> props = new HashMap<>();
+        props.put(LogRollMasterProcedureManager.ROLLLOG_BACKUP_ROOT_PROP, backupRoot);
+        props.put(LogRollMasterProcedureManager.ROLLLOG_BARRIER_RESULT_PROP,
+                Boolean.toString(barrierResult));
+        admin.execProcedure(LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_SIGNATURE,
+                LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_NAME, props);
+        LogRollMasterProcedureManager manager = (LogRollMasterProcedureManager) TEST_UTIL
+                .getHBaseCluster().getMaster().getMasterProcedureManagerHost()
+                .getProcedureManager(LogRollMasterProcedureManager.ROLLLOG_PROCEDURE_SIGNATURE);
+        return manager.getLastRollResults();
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeepDeletedCells;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.AbstractFSWALProviderUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.BackupUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.util.CommonFSUtils;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALCellCombiner;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALPlayer;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.regionserver.HRegionServer;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 1. Prune the versions of a column beyond the maximum versions of the family
+ * 2. Keep the cells covered by a Delete, DeleteColumn or DeleteFamily marker with the marker
+ * 3. Keep all the cells of a family keeping the deleted cells
+ * 4. Replay the WALs of a table keeping a single version with the combiner and check the
+ * number of dropped cells counted for the table
+ */
+@Category(LargeTests.class)
+public class TestWALCellCombiner extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestWALCellCombiner.class);
+
+    private static final byte[] ROW = Bytes.toBytes("row");
+    private static final byte[] QUAL2 = Bytes.toBytes("q2");
+
+    @Test
+    public void testMaxVersionsPruning() {
+        List<KeyValue> cells = sorted(put(qualName, 3), put(qualName, 2), put(qualName, 1),
+                put(QUAL2, 1));
+        List<KeyValue> reachable = WALCellCombiner.getReachableCells(cells, 2);
+        Assert.assertEquals(Arrays.asList(put(qualName, 3), put(qualName, 2), put(QUAL2, 1)),
+                reachable);
+
+        // the cells of a same timestamp count as a single version
+        cells = sorted(put(qualName, 2), put(qualName, 2), put(qualName, 1));
+        Assert.assertEquals(2, WALCellCombiner.getReachableCells(cells, 1).size());
+    }
+
+    @Test
+    public void testDeleteMarkersKeepCoveredCells() {
+        for (KeyValue.Type type : new KeyValue.Type[]{KeyValue.Type.Delete,
+                KeyValue.Type.DeleteColumn}) {
+            List<KeyValue> cells = sorted(put(qualName, 3), delete(qualName, 2, type),
+                    put(qualName, 2), put(qualName, 1), put(QUAL2, 2), put(QUAL2, 1));
+            List<KeyValue> reachable = WALCellCombiner.getReachableCells(cells, 1);
+            // the marker and the cells of its column are kept, the other column is pruned
+            Assert.assertEquals(type.toString(), sorted(put(qualName, 3),
+                    delete(qualName, 2, type), put(qualName, 2), put(qualName, 1), put(QUAL2, 2)),
+                    reachable);
+        }
+
+        List<KeyValue> cells = sorted(delete(null, 2, KeyValue.Type.DeleteFamily),
+                put(qualName, 3), put(qualName, 2), put(qualName, 1), put(QUAL2, 2),
+                put(QUAL2, 1));
+        Assert.assertEquals(cells, WALCellCombiner.getReachableCells(cells, 1));
+    }
+
+    @Test
+    public void testKeepDeletedCells() {
+        HColumnDescriptor family = new HColumnDescriptor(famName);
+        family.setMaxVersions(1);
+        Assert.assertEquals(1, WALCellCombiner.getVersionsToKeep(family));
+        family.setKeepDeletedCells(KeepDeletedCells.TRUE);
+        int versions = WALCellCombiner.getVersionsToKeep(family);
+        Assert.assertEquals(0, versions);
+
+        List<KeyValue> cells = sorted(put(qualName, 3), put(qualName, 2), put(qualName, 1),
+                put(QUAL2, 2), put(QUAL2, 1));
+        Assert.assertEquals(cells, WALCellCombiner.getReachableCells(cells, versions));
+    }
+
+    @Test
+    public void testDroppedCellsCounter() throws Exception {
+        TableName table = TableName.valueOf("test-combiner");
+        HTableDescriptor desc = new HTableDescriptor(table);
+        HColumnDescriptor family = new HColumnDescriptor(famName);
+        family.setMaxVersions(1);
+        desc.addFamily(family);
+
+        Configuration conf = new Configuration(conf1);
+        try (Connection conn = ConnectionFactory.createConnection(conf);
+             Admin admin = conn.getAdmin()) {
+            admin.createTable(desc);
+            try (Table t = conn.getTable(table)) {
+                for (long ts = 1; ts <= 3; ts++) {
+                    Put p = new Put(ROW);
+                    p.addColumn(famName, qualName, ts, Bytes.toBytes("val" + ts));
+                    t.put(p);
+                }
+            }
+            // close the WALs holding the puts
+            long rollTime = System.currentTimeMillis();
+            for (JVMClusterUtil.RegionServerThread rst :
+                    TEST_UTIL.getHBaseCluster().getLiveRegionServerThreads()) {
+                HRegionServer rs = rst.getRegionServer();
+                admin.rollWALWriter(rs.getServerName());
+            }
+
+            Path outputDir = TEST_UTIL.getDataTestDirOnTestFS("testDroppedCellsCounter");
+            conf.set(WALPlayer.BULK_OUTPUT_CONF_KEY, outputDir.toString());
+            conf.setBoolean(WALPlayer.BULK_COMBINER_CONF_KEY, true);
+            conf.setBoolean(WALPlayer.MULTI_TABLES_SUPPORT, true);
+            WALPlayer player = new WALPlayer();
+            player.setConf(conf);
+            Job job = player.createSubmittableJob(new String[]{getClosedWALs(conf, rollTime),
+                    table.getNameAsString()});
+            Assert.assertTrue(job.waitForCompletion(true));
+
+            long dropped = 0;
+            for (Counter counter : job.getCounters().getGroup(WALCellCombiner.COUNTER_GROUP)) {
+                Assert.assertEquals(table.getNameAsString(), counter.getName());
+                dropped += counter.getValue();
+            }
+            Assert.assertEquals(2, dropped);
+            TEST_UTIL.deleteTable(table);
+        }
+    }
+
+    private static String getClosedWALs(Configuration conf, long rollTime) throws Exception {
+        Path logRoot = new Path(CommonFSUtils.getWALRootDir(conf), HConstants.HREGION_LOGDIR_NAME);
+        FileSystem fs = logRoot.getFileSystem(conf);
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(logRoot, true);
+        List<String> logFiles = new ArrayList<>();
+        while (it.hasNext()) {
+            Path path = it.next().getPath();
+            if (!AbstractFSWALProviderUtils.isMetaFile(path)
+                    && BackupUtils.getCreationTime(path) < rollTime) {
+                logFiles.add(path.toString());
+            }
+        }
+        Assert.assertFalse(logFiles.isEmpty());
+        return String.join(",", logFiles);
+    }
+
+    private static KeyValue put(byte[] qualifier, long ts) {
+        return new KeyValue(ROW, famName, qualifier, ts, Bytes.toBytes("val" + ts));
+    }
+
+    private static KeyValue delete(byte[] qualifier, long ts, KeyValue.Type type) {
+        return new KeyValue(ROW, famName, qualifier, ts, type);
+    }
+
+    private static List<KeyValue> sorted(KeyValue... kvs) {
+        List<KeyValue> cells = new ArrayList<>(Arrays.asList(kvs));
+        Collections.sort(cells, KeyValue.COMPARATOR);
+        return cells;
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALPlayer;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer.WALTableFilterInputFormat;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.testclassification.LargeTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.hadoop.hbase.wal.WALKey;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 1. Write a WAL file with the entries of another table only, and a WAL file with the entries of
+ * the backed up table and of another table
+ * 2. Read them with the table filter input format
+ * 3. Check that no entry of the first file reaches the mapper, and that only the entries of the
+ * backed up table of the second one do
+ */
+@Category(LargeTests.class)
+public class TestWALTableFilterInputFormat extends TestBackupBase {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestWALTableFilterInputFormat.class);
+
+    private static final TableName OTHER_TABLE = TableName.valueOf("test-wal-filter-other");
+
+    @Test
+    public void testTableFilter() throws Exception {
+        Path dir = TEST_UTIL.getDataTestDirOnTestFS("testTableFilter");
+        Configuration conf = new Configuration(conf1);
+        FileSystem fs = dir.getFileSystem(conf);
+        long now = System.currentTimeMillis();
+        Path otherOnly = new Path(dir, "wal-other." + now);
+        writeWAL(fs, conf, otherOnly, now, OTHER_TABLE, OTHER_TABLE);
+        Path mixed = new Path(dir, "wal-mixed." + now);
+        writeWAL(fs, conf, mixed, now, table1, OTHER_TABLE, table1);
+
+        conf.setStrings(WALPlayer.TABLES_KEY, table1.getNameAsString());
+        Counters counters = new Counters();
+        Assert.assertTrue(readTables(conf, otherOnly, counters).isEmpty());
+        Assert.assertEquals(2, counters.findCounter(
+                WALTableFilterInputFormat.Counters.SKIPPED_ENTRIES).getValue());
+
+        counters = new Counters();
+        List<TableName> tables = readTables(conf, mixed, counters);
+        Assert.assertEquals(2, tables.size());
+        for (TableName table : tables) {
+            Assert.assertEquals(table1, table);
+        }
+        Assert.assertEquals(1, counters.findCounter(
+                WALTableFilterInputFormat.Counters.SKIPPED_ENTRIES).getValue());
+        Assert.assertTrue(counters.findCounter(
+                WALTableFilterInputFormat.Counters.SKIPPED_BYTES).getValue() > 0);
+
+        // no table set, all the entries are kept
+        conf.unset(WALPlayer.TABLES_KEY);
+        Assert.assertEquals(3, readTables(conf, mixed, new Counters()).size());
+    }
+
+    private static void writeWAL(FileSystem fs, Configuration conf, Path path, long now,
+                                 TableName... tables) throws Exception {
+        WAL.Writer writer = WALFactory.createWALWriter(fs, path, conf);
+        try {
+            for (int i = 0; i < tables.length; i++) {
+                byte[] row = Bytes.toBytes("row" + i);
+                WALEdit edit = new WALEdit();
+                edit.add(new KeyValue(row, famName, qualName, now, Bytes.toBytes("val" + i)));
+                writer.append(new WAL.Entry(new WALKey(Bytes.toBytes("region"), tables[i], now),
+                        edit));
+            }
+            writer.sync();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Read a WAL file with the table filter input format
+     * @return tables of the entries handed to the mapper
+     */
+    private static List<TableName> readTables(Configuration conf, Path wal,
+                                              final Counters counters) throws Exception {
+        Configuration jobConf = new Configuration(conf);
+        jobConf.set(FileInputFormat.INPUT_DIR, wal.toString());
+        WALTableFilterInputFormat format = new WALTableFilterInputFormat();
+        TaskAttemptContext context = new TaskAttemptContextImpl(jobConf,
+                new TaskAttemptID("test", 1, TaskType.MAP, 0, 0), new StatusReporter() {
+            @Override
+            public Counter getCounter(Enum<?> name) {
+                return counters.findCounter(name);
+            }
+
+            @Override
+            public Counter getCounter(String group, String name) {
+                return counters.findCounter(group, name);
+            }
+
+            @Override
+            public void progress() {
+            }
+
+            @Override
+            public float getProgress() {
+                return 0;
+            }
+
+            @Override
+            public void setStatus(String status) {
+            }
+        });
+        List<TableName> tables = new ArrayList<>();
+        for (InputSplit split : format.getSplits(Job.getInstance(jobConf))) {
+            RecordReader<WALKey, WALEdit> reader = format.createRecordReader(split, context);
+            try {
+                reader.initialize(split, context);
+                while (reader.nextKeyValue()) {
+                    tables.add(reader.getCurrentKey().getTablename());
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return tables;
+    }
+}
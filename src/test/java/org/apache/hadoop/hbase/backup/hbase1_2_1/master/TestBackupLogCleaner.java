@@ -23,13 +23,13 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupRestoreConstants;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.BackupType;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.TestBackupBase;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.impl.BackupSystemTable;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.AbstractFSWALProviderUtils;
 import org.apache.hadoop.hbase.backup.hbase1_2_1.util.CommonFSUtils;
-import org.apache.hadoop.hbase.backup.master.BackupLogCleaner;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.HTable;
@@ -47,6 +47,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -75,7 +76,7 @@ public class TestBackupLogCleaner extends TestBackupBase {
 
             List<FileStatus> walFiles = getListOfWALFiles(TEST_UTIL.getConfiguration());
             List<String> swalFiles = convert(walFiles);
-            org.apache.hadoop.hbase.backup.master.BackupLogCleaner cleaner = new BackupLogCleaner();
+            BackupLogCleaner cleaner = new BackupLogCleaner();
             cleaner.setConf(TEST_UTIL.getConfiguration());
             //cleaner.init(null);
             cleaner.setConf(TEST_UTIL.getConfiguration());
@@ -94,6 +95,10 @@ public class TestBackupLogCleaner extends TestBackupBase {
             // We can delete wal files because they were saved into backup system table table
             size = Iterables.size(deletable);
             assertTrue(size == walFiles.size());
+            // the backed up files are remembered for the next runs
+            assertEquals(walFiles.size(), cleaner.getDeletableCacheSize());
+            assertEquals(2L * walFiles.size(), cleaner.getFilesCheckedCount());
+            assertEquals(2L * walFiles.size(), cleaner.getFilesDeletableCount());
 
             List<FileStatus> newWalFiles = getListOfWALFiles(TEST_UTIL.getConfiguration());
             LOG.debug("WAL list after full backup");
@@ -134,6 +139,31 @@ public class TestBackupLogCleaner extends TestBackupBase {
 
             assertTrue(Iterables.size(deletable) == newWalFiles.size());
 
+            // #4 - the deletable files are cached for the TTL only
+            Configuration ttlConf = new Configuration(TEST_UTIL.getConfiguration());
+            ttlConf.setLong(BackupRestoreConstants.BACKUP_LOG_CLEANER_CACHE_TTL_MS_KEY, 0);
+            BackupLogCleaner ttlCleaner = new BackupLogCleaner();
+            ttlCleaner.setConf(ttlConf);
+            deletable = ttlCleaner.getDeletableFiles(newWalFiles);
+            assertEquals(newWalFiles.size(), Iterables.size(deletable));
+            // nothing is cached without a TTL
+            assertEquals(0, ttlCleaner.getDeletableCacheSize());
+
+            ttlConf.setLong(BackupRestoreConstants.BACKUP_LOG_CLEANER_CACHE_TTL_MS_KEY, 60000);
+            deletable = ttlCleaner.getDeletableFiles(newWalFiles);
+            assertEquals(newWalFiles.size(), Iterables.size(deletable));
+            assertEquals(newWalFiles.size(), ttlCleaner.getDeletableCacheSize());
+            // a run before the TTL is over keeps the cached files
+            ttlCleaner.getDeletableFiles(new ArrayList<FileStatus>());
+            assertEquals(newWalFiles.size(), ttlCleaner.getDeletableCacheSize());
+
+            ttlConf.setLong(BackupRestoreConstants.BACKUP_LOG_CLEANER_CACHE_TTL_MS_KEY, 1);
+            Thread.sleep(10);
+            // a run after the TTL is over evicts the cached files
+            ttlCleaner.getDeletableFiles(new ArrayList<FileStatus>());
+            assertEquals(0, ttlCleaner.getDeletableCacheSize());
+            ttlCleaner.stop("test");
+
             conn.close();
         }
     }
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.backup.hbase1_2_1.walplayer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.backup.hbase1_2_1.rule.HBaseClassTestRule;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WALKey;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 1. Map WAL entries of two backed up tables, one of them with a long name and long rows, and of
+ * another table
+ * 2. Check that every cell of the backed up tables is written once, keyed by table;row in the
+ * multiple tables mode and by row otherwise, and that the other cells are dropped
+ * <p>
+ * The output is copied on write, as the map output collector does: the key buffer is reused
+ * across the cells.
+ */
+@Category(SmallTests.class)
+public class TestWALKeyValueMapper {
+
+    @ClassRule
+    public static final HBaseClassTestRule CLASS_RULE =
+            HBaseClassTestRule.forClass(TestWALKeyValueMapper.class);
+
+    private static final byte[] FAMILY = Bytes.toBytes("f");
+    private static final byte[] QUALIFIER = Bytes.toBytes("q");
+    private static final TableName SHORT_TABLE = TableName.valueOf("t");
+    private static final TableName LONG_TABLE =
+            TableName.valueOf("test-wal-mapper-" + StringUtils.repeat("x", 200));
+    private static final TableName OTHER_TABLE = TableName.valueOf("test-wal-mapper-other");
+
+    private final List<byte[]> keys = new ArrayList<>();
+    private final List<KeyValue> values = new ArrayList<>();
+
+    @Test
+    public void testMultipleTablesOutput() throws Exception {
+        List<KeyValue> expected = map(true);
+        Assert.assertEquals(expected.size(), keys.size());
+        for (int i = 0; i < expected.size(); i++) {
+            KeyValue kv = expected.get(i);
+            TableName table = i < 2 ? SHORT_TABLE : LONG_TABLE;
+            Assert.assertArrayEquals(Bytes.add(table.getName(),
+                    Bytes.toBytes(WALPlayer.tableSeparator), kv.getRow()), keys.get(i));
+            Assert.assertTrue(KeyValue.COMPARATOR.compare(kv, values.get(i)) == 0);
+            Assert.assertArrayEquals(kv.getValue(), values.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void testSingleTableOutput() throws Exception {
+        List<KeyValue> expected = map(false);
+        Assert.assertEquals(expected.size(), keys.size());
+        for (int i = 0; i < expected.size(); i++) {
+            KeyValue kv = expected.get(i);
+            Assert.assertArrayEquals(kv.getRow(), keys.get(i));
+            Assert.assertTrue(KeyValue.COMPARATOR.compare(kv, values.get(i)) == 0);
+            Assert.assertArrayEquals(kv.getValue(), values.get(i).getValue());
+        }
+    }
+
+    /**
+     * Map the WAL entries of the test tables
+     * @return the cells expected in the output, in order
+     */
+    private List<KeyValue> map(boolean multiTableSupport) throws Exception {
+        Configuration conf = HBaseConfiguration.create();
+        conf.setStrings(WALPlayer.TABLES_KEY, SHORT_TABLE.getNameAsString(),
+                LONG_TABLE.getNameAsString());
+        conf.setBoolean(WALPlayer.MULTI_TABLES_SUPPORT, multiTableSupport);
+        RecordWriter<ImmutableBytesWritable, Cell> writer =
+                new RecordWriter<ImmutableBytesWritable, Cell>() {
+            @Override
+            public void write(ImmutableBytesWritable key, Cell value) {
+                keys.add(key.copyBytes());
+                values.add(KeyValueUtil.copyToNewKeyValue(value));
+            }
+
+            @Override
+            public void close(TaskAttemptContext context) {
+            }
+        };
+        Mapper<WALKey, WALEdit, ImmutableBytesWritable, Cell>.Context context =
+                new WrappedMapper<WALKey, WALEdit, ImmutableBytesWritable, Cell>().getMapContext(
+                        new MapContextImpl<>(conf, new TaskAttemptID("test", 1, TaskType.MAP, 0, 0),
+                                null, writer, null, null, null));
+        WALPlayer.WALKeyValueMapper mapper = new WALPlayer.WALKeyValueMapper();
+        mapper.setup(context);
+
+        long now = System.currentTimeMillis();
+        List<KeyValue> expected = new ArrayList<>();
+        List<KeyValue> cells = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            cells.add(new KeyValue(Bytes.toBytes("row" + i), FAMILY, QUALIFIER, now,
+                    Bytes.toBytes("val" + i)));
+        }
+        expected.addAll(cells);
+        map(mapper, context, SHORT_TABLE, now, cells);
+
+        // longer than the initial key buffer
+        cells = new ArrayList<>();
+        cells.add(new KeyValue(Bytes.toBytes(StringUtils.repeat("r", 300)), FAMILY, QUALIFIER, now,
+                Bytes.toBytes("long")));
+        cells.add(new KeyValue(Bytes.toBytes("row"), FAMILY, QUALIFIER, now,
+                Bytes.toBytes("short")));
+        expected.addAll(cells);
+        // the meta edits are dropped
+        cells.add(new KeyValue(Bytes.toBytes("row"), WALEdit.METAFAMILY, Bytes.toBytes("meta"), now,
+                Bytes.toBytes("meta")));
+        map(mapper, context, LONG_TABLE, now, cells);
+
+        map(mapper, context, OTHER_TABLE, now, expected);
+        return expected;
+    }
+
+    private static void map(WALPlayer.WALKeyValueMapper mapper,
+                            Mapper<WALKey, WALEdit, ImmutableBytesWritable, Cell>.Context context,
+                            TableName table, long now, List<KeyValue> cells) throws Exception {
+        WALEdit edit = new WALEdit();
+        for (KeyValue kv : cells) {
+            edit.add(kv);
+        }
+        mapper.map(new WALKey(Bytes.toBytes("region"), table, now), edit, context);
+    }
+}